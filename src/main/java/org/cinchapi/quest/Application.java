@@ -1,17 +1,57 @@
 package org.cinchapi.quest;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cinchapi.quest.admin.AdminRouter;
+import org.cinchapi.quest.log.AccessLog;
+import org.cinchapi.quest.router.Bulkhead;
+import org.cinchapi.quest.router.Dispatcher;
+import org.cinchapi.quest.router.Drain;
+import org.cinchapi.quest.router.RouteTable;
 import org.cinchapi.quest.router.Router;
+import org.cinchapi.quest.router.RouterRegistry;
+import org.cinchapi.quest.router.ThreadMeter;
+import org.cinchapi.quest.router.Watchdog;
+import org.cinchapi.quest.server.ServerEngine;
+import org.cinchapi.quest.server.StaticFiles;
+import org.cinchapi.quest.trace.SpanExporter;
+import org.cinchapi.quest.trace.Tracer;
 import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import ch.qos.logback.classic.Level;
+import spark.Request;
+import spark.Response;
+import spark.Route;
 import spark.Spark;
+import spark.template.mustache.MustacheTemplateRoute;
 
 /**
  * This is the base class for all Quest applications. Each {@link Application}
@@ -35,14 +75,25 @@ import spark.Spark;
  * 
  * </p>
  * <p>
- * <em><strong>Warning:</strong> You can only run one Quest application at a time
- * within a single JVM process.</em>
+ * <em><strong>Warning:</strong> By default, an application runs on the web
+ * server that is embedded in Spark, so you can only run one Quest application
+ * at a time within a single JVM process. Give each application its own
+ * {@link #setServerEngine(ServerEngine) server engine} to run more than
+ * one.</em>
  * </p>
  * 
  * @author jnelson
  */
 public abstract class Application {
 
+    /**
+     * The system property that, when {@code true}, makes the application exit
+     * as soon as it has started and warmed up. This is used for a training
+     * run that records the classes an application loads, i.e. to create a
+     * class data sharing archive.
+     */
+    public static final String TRAINING_RUN_PROPERTY = "quest.trainingRun";
+
     /**
      * The default port for the application.
      */
@@ -60,6 +111,97 @@ public abstract class Application {
      */
     private boolean running = false;
 
+    /**
+     * The number of milliseconds that {@link #stop()} waits for in flight
+     * requests to complete before shutting down the web server. By default,
+     * the application stops immediately.
+     */
+    private long drainTimeout = 0;
+
+    /**
+     * The path of the file to which each request is logged or {@code null} if
+     * there is no access log.
+     */
+    private String accessLogPath = null;
+
+    /**
+     * A flag that indicates whether the {@link AdminRouter} is served.
+     */
+    private boolean admin = false;
+
+    /**
+     * The directory to which the {@link AdminRouter} writes flight recordings
+     * or {@code null} if recordings can't be started over HTTP.
+     */
+    @Nullable
+    private String recordingDirectory = null;
+
+    /**
+     * The token that a client must present to start or stop a recording or
+     * {@code null} if only clients on the loopback interface may do so.
+     */
+    @Nullable
+    private String adminToken = null;
+
+    /**
+     * The path at which the application reports whether it is ready to serve
+     * traffic or {@code null} if there is no readiness check.
+     */
+    private String readinessCheckPath = null;
+
+    /**
+     * A flag that indicates whether the application has finished starting,
+     * including any warm-up, and is ready to serve traffic.
+     */
+    private volatile boolean ready = false;
+
+    /**
+     * The number of times each warm-up request is served before the
+     * application is ready or {@code 0} if there is no warm-up phase.
+     */
+    private int warmupIterations = 0;
+
+    /**
+     * The number of milliseconds after which a request is considered slow and
+     * profiled by the {@link Watchdog} or {@code 0} if slow requests are not
+     * detected.
+     */
+    private long slowRequestThreshold = 0;
+
+    /**
+     * The path at which the application reports its health or {@code null} if
+     * there is no health check.
+     */
+    private String healthCheckPath = null;
+
+    /**
+     * Returns the default {@link Bulkhead} for each router namespace or
+     * {@code null} if namespaces are only isolated explicitly.
+     */
+    @Nullable
+    private Function<String, Bulkhead> bulkheads = null;
+
+    /**
+     * The web server that the application runs on or {@code null} if it runs
+     * on the one that is embedded in Spark.
+     */
+    @Nullable
+    private ServerEngine engine = null;
+
+    /**
+     * The exporter that receives the spans of sampled requests while the
+     * application runs or {@code null} if the application doesn't install
+     * one.
+     */
+    @Nullable
+    private SpanExporter spanExporter = null;
+
+    /**
+     * The live {@link RouteTable}, {@link Drain}, access log and slow request
+     * {@link Watchdog} of this application.
+     */
+    private final Dispatcher dispatcher = new Dispatcher();
+
     /**
      * Start the application. This method is typically called from a main method.
      */
@@ -71,40 +213,176 @@ public abstract class Application {
             Reflections.log = null; // turn off logging
 
             // Configure spark
-            Spark.setPort(port);
-            Spark.staticFileLocation("public");
+            if(engine == null) {
+                Spark.setPort(port);
+                Spark.staticFileLocation("public");
+            }
+            dispatcher.getDrain().reset();
+            dispatcher.setServerEngine(engine);
+            if(accessLogPath != null) {
+                dispatcher.setAccessLog(new AccessLog(accessLogPath));
+            }
+            if(spanExporter != null) {
+                Tracer.setExporter(spanExporter);
+            }
+            if(slowRequestThreshold > 0) {
+                ((ch.qos.logback.classic.Logger) LoggerFactory
+                        .getLogger(Watchdog.class)).setLevel(Level.WARN);
+                dispatcher.setWatchdog(new Watchdog(slowRequestThreshold,
+                        Math.max(10, slowRequestThreshold / 4),
+                        TimeUnit.MILLISECONDS, 20, 100));
+            }
+            if(healthCheckPath != null && engine == null) {
+                Spark.get(new Route(healthCheckPath) {
+
+                    @Override
+                    public Object handle(Request request, Response response) {
+                        return check(false, response.raw());
+                    }
+
+                });
+            }
+
+            if(readinessCheckPath != null && engine == null) {
+                Spark.get(new Route(readinessCheckPath) {
+
+                    @Override
+                    public Object handle(Request request, Response response) {
+                        return check(true, response.raw());
+                    }
+
+                });
+            }
 
             // Register all of the routers and listen for any requests
-            Reflections reflections = new Reflections();
-            Set<Class<? extends Router>> routers = reflections
-                    .getSubTypesOf(Router.class);
-            for (Class<? extends Router> router : routers) {
+            RouteTable table = compile(discover(null), bulkheads, dispatcher,
+                    recordingDirectory, adminToken);
+            if(warmupIterations > 0) {
+                table.warm(warmupIterations);
+            }
+            if(engine != null) {
+                dispatcher.activate(table);
                 try {
-                    System.out.println("Registering routes from " + router);
-                    router.newInstance().routes();
+                    engine.start(port, new ServerEngine.Handler() {
+
+                        @Override
+                        public boolean handle(HttpServletRequest request,
+                                HttpServletResponse response)
+                                throws IOException {
+                            return serve(request, response);
+                        }
+
+                    });
                 }
-                catch (Exception e) {
-                    continue;
+                catch (IOException e) {
+                    dispatcher.deactivate();
+                    throw Throwables.propagate(e);
                 }
             }
+            else {
+                table.publish(dispatcher);
+            }
             running = true;
+            ready = true;
+            if(Boolean.getBoolean(TRAINING_RUN_PROPERTY)) {
+                stop();
+                System.exit(0);
+            }
+        }
+    }
+
+    /**
+     * Replace the routes that are served by this running application with
+     * those defined by the {@link Router routers} that are visible to the
+     * {@code loader}. This is typically used with a fresh class loader in
+     * order to pick up changes to router classes without restarting the JVM.
+     * 
+     * @param loader
+     * @see #reload(Iterable)
+     */
+    public synchronized void reload(ClassLoader loader) {
+        reload(discover(loader));
+    }
+
+    /**
+     * Replace the routes that are served by this running application with
+     * those defined by the {@code routers}.
+     * <p>
+     * The new routes are compiled in full before they are atomically swapped
+     * in place of the old ones, so the web server, its worker threads and any
+     * warm caches are unaffected and requests that are already being served
+     * complete using the old routes. If there is a warm-up phase, the new
+     * routes are warmed up before they are swapped in.
+     * </p>
+     * 
+     * @param routers
+     */
+    public synchronized void reload(
+            Iterable<? extends Class<? extends Router>> routers) {
+        Preconditions.checkState(running,
+                "Cannot reload an application that is not running");
+        RouteTable table = compile(routers, bulkheads, dispatcher,
+                recordingDirectory, adminToken);
+        if(warmupIterations > 0) {
+            table.warm(warmupIterations);
+        }
+        if(engine != null) {
+            dispatcher.activate(table);
+        }
+        else {
+            table.publish(dispatcher);
         }
     }
 
     /**
      * Stop the application from running.
+     * <p>
+     * If a {@link #setDrainTimeout(long, TimeUnit) drain timeout} is set, the
+     * application first stops accepting new requests, reports that it is
+     * unhealthy and waits for the requests that are in flight to complete.
+     * The web server is shut down once those requests are done or the timeout
+     * passes, whichever comes first. The outcome is recorded in the
+     * {@link Drain} counters. Other applications in the same JVM are not
+     * affected.
+     * </p>
      */
     public synchronized void stop() {
         if(running) {
+            if(drainTimeout > 0) {
+                dispatcher.getDrain().begin();
+                try {
+                    dispatcher.getDrain().await(drainTimeout,
+                            TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
             try {
-                Method stop = Spark.class.getDeclaredMethod("stop");
-                Method clearRoutes = Spark.class
-                        .getDeclaredMethod("clearRoutes");
-                stop.setAccessible(true);
-                clearRoutes.setAccessible(true);
-                stop.invoke(null);
-                clearRoutes.invoke(null);
+                if(engine != null) {
+                    engine.stop();
+                }
+                else {
+                    Method stop = Spark.class.getDeclaredMethod("stop");
+                    Method clearRoutes = Spark.class
+                            .getDeclaredMethod("clearRoutes");
+                    stop.setAccessible(true);
+                    clearRoutes.setAccessible(true);
+                    stop.invoke(null);
+                    clearRoutes.invoke(null);
+                    RouteTable.retract();
+                }
+                dispatcher.deactivate();
+                dispatcher.setAccessLog(null);
+                dispatcher.setWatchdog(null);
+                if(spanExporter != null) {
+                    if(Tracer.getExporter() == spanExporter) {
+                        Tracer.setExporter(null);
+                    }
+                    spanExporter.close();
+                }
                 running = false;
+                ready = false;
             }
             catch (ReflectiveOperationException e) {
                 throw Throwables.propagate(e);
@@ -112,6 +390,432 @@ public abstract class Application {
         }
     }
 
+    /**
+     * Instantiate each of the {@code routers}, have them define their routes
+     * and compile the result. Any router that cannot be instantiated is
+     * skipped and recorded as a {@link RouteTable#failures() failure}.
+     * <p>
+     * Routers often do real work in their constructors, so they are
+     * instantiated in parallel. The time it took to load each router is
+     * reported in a deterministic order once all of them are done and the
+     * {@link RouteTable} orders their routes independently of how the loading
+     * was scheduled.
+     * </p>
+     * 
+     * @param routers
+     * @param bulkheads the default bulkhead for each namespace or
+     *            {@code null}
+     * @param dispatcher the dispatcher that the {@link AdminRouter} reports
+     *            on
+     * @param recordingDirectory the directory to which the
+     *            {@link AdminRouter} writes recordings or {@code null}
+     * @param adminToken the token that the {@link AdminRouter} requires to
+     *            start or stop a recording or {@code null}
+     * @return the compiled {@link RouteTable}
+     */
+    private static RouteTable compile(
+            Iterable<? extends Class<? extends Router>> routers,
+            @Nullable Function<String, Bulkhead> bulkheads,
+            final Dispatcher dispatcher,
+            @Nullable final String recordingDirectory,
+            @Nullable final String adminToken) {
+        long start = System.nanoTime();
+        List<Class<? extends Router>> classes = Lists.newArrayList();
+        for (Class<? extends Router> router : routers) {
+            if(!Modifier.isAbstract(router.getModifiers())) {
+                classes.add(router);
+            }
+        }
+        final long[] elapsed = new long[classes.size()];
+        List<Future<Router>> futures = Lists.newArrayList();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(classes.size(), Runtime.getRuntime()
+                        .availableProcessors())), new ThreadFactoryBuilder()
+                        .setDaemon(true).setNameFormat("quest-router-loader-%d")
+                        .build());
+        try {
+            for (int i = 0; i < classes.size(); ++i) {
+                final int index = i;
+                final Class<? extends Router> router = classes.get(i);
+                futures.add(executor.submit(new Callable<Router>() {
+
+                    @Override
+                    public Router call() throws Exception {
+                        long start = System.nanoTime();
+                        try {
+                            Router instance = router == AdminRouter.class
+                                    ? new AdminRouter(dispatcher,
+                                            recordingDirectory, adminToken)
+                                    : router.getDeclaredConstructor()
+                                            .newInstance();
+                            instance.routes();
+                            return instance;
+                        }
+                        catch (InvocationTargetException e) {
+                            // Record what the constructor threw rather than
+                            // the reflective wrapper
+                            Throwables.propagateIfPossible(e.getCause(),
+                                    Exception.class);
+                            throw e;
+                        }
+                        finally {
+                            elapsed[index] = System.nanoTime() - start;
+                        }
+                    }
+
+                }));
+            }
+            List<Router> instances = Lists.newArrayList();
+            Map<Class<? extends Router>, Exception> failures = Maps
+                    .newLinkedHashMap();
+            for (int i = 0; i < classes.size(); ++i) {
+                Class<? extends Router> router = classes.get(i);
+                try {
+                    instances.add(futures.get(i).get());
+                    System.out.println("Registered routes from " + router
+                            + " in "
+                            + TimeUnit.NANOSECONDS.toMillis(elapsed[i]) + " ms");
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    Throwables.propagateIfInstanceOf(cause, Error.class);
+                    System.err.println("Could not register routes from "
+                            + router + ": " + cause);
+                    failures.put(router,
+                            cause instanceof Exception ? (Exception) cause
+                                    : new RuntimeException(cause));
+                }
+            }
+            System.out.println("Loaded " + instances.size() + " routers in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    + " ms");
+            return RouteTable.compile(instances, failures, bulkheads);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the {@link Router} classes that are visible to the
+     * {@code loader}. If the application was built with a
+     * {@link RouterRegistry}, the routers are read from it, otherwise the
+     * classpath is scanned. The {@link AdminRouter} is only included if it is
+     * {@link #setAdminEnabled(boolean) enabled}.
+     * 
+     * @param loader the class loader or {@code null} for the default
+     * @return the routers to load
+     */
+    private Set<Class<? extends Router>> discover(@Nullable ClassLoader loader) {
+        Set<Class<? extends Router>> routers = RouterRegistry
+                .load(loader != null ? loader : Thread.currentThread()
+                        .getContextClassLoader());
+        if(routers == null) {
+            Reflections reflections = loader != null ? new Reflections(loader)
+                    : new Reflections();
+            routers = Sets.newLinkedHashSet(reflections
+                    .getSubTypesOf(Router.class));
+        }
+        routers.remove(AdminRouter.class);
+        if(admin) {
+            routers.add(AdminRouter.class);
+        }
+        return routers;
+    }
+
+    /**
+     * Return {@code true} if the {@code path} of a request is the
+     * {@code route} of a health or readiness check.
+     * 
+     * @param route the configured path or {@code null}
+     * @param path
+     * @return {@code true} if the path matches the route
+     */
+    private static boolean matches(@Nullable String route, String path) {
+        return route != null
+                && (route.startsWith("/") ? route : "/" + route).equals(path);
+    }
+
+    /**
+     * Report the health of the application or, if {@code readiness} is
+     * {@code true}, whether it is ready to serve traffic. The outcome is
+     * reported in the status of the {@code response} and the returned body.
+     * 
+     * @param readiness
+     * @param response
+     * @return the body of the response
+     */
+    private String check(boolean readiness, HttpServletResponse response) {
+        if(readiness) {
+            if(ready && !dispatcher.getDrain().isDraining()) {
+                return "ready";
+            }
+            else {
+                response.setStatus(503);
+                return ready ? "draining" : "warming";
+            }
+        }
+        else if(dispatcher.getDrain().isDraining()) {
+            response.setStatus(503);
+            return "draining";
+        }
+        else {
+            return "ok";
+        }
+    }
+
+    /**
+     * Serve a {@code request} that was received by the {@link #engine} using
+     * the health and readiness checks, the routes in the live table of the
+     * {@link #dispatcher} and the static files in the {@code public} folder,
+     * in that order.
+     * 
+     * @param request
+     * @param response
+     * @return {@code true} if the request was served
+     * @throws IOException
+     */
+    private boolean serve(HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String path = request.getRequestURI();
+        if("GET".equals(request.getMethod())) {
+            boolean health = matches(healthCheckPath, path);
+            if(health || matches(readinessCheckPath, path)) {
+                byte[] body = check(!health, response).getBytes(
+                        Charsets.UTF_8);
+                response.setContentType("text/plain; charset=utf-8");
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+                return true;
+            }
+        }
+        return dispatcher.serve(request, response)
+                || StaticFiles.serve("public", request, response);
+    }
+
+    /**
+     * Log each request that is served to the file at {@code path}. The
+     * {@link AccessLog} writes in the background, so logging adds very little
+     * latency to each request. This must be called <strong>before</strong>
+     * calling {@link #start()}.
+     * 
+     * @param path
+     */
+    public void setAccessLog(String path) {
+        this.accessLogPath = path;
+    }
+
+    /**
+     * Serve the {@link AdminRouter admin routes}, which report the route
+     * table and runtime statistics. This must be called
+     * <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param enabled
+     */
+    public void setAdminEnabled(boolean enabled) {
+        this.admin = enabled;
+    }
+
+    /**
+     * Require clients to present the {@code token}, as an
+     * {@code Authorization: Bearer} header, in order to start or stop a
+     * recording using the {@link AdminRouter admin routes}. Without a token,
+     * only clients on the loopback interface may do so, which offers no
+     * protection if the application runs behind a local proxy. This must be
+     * called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param token the token or {@code null} to only allow local clients
+     */
+    public void setAdminToken(@Nullable String token) {
+        Preconditions.checkArgument(token == null || !token.isEmpty(),
+                "The token must not be empty");
+        this.adminToken = token;
+    }
+
+    /**
+     * Isolate each {@link Router} namespace within its own {@link Bulkhead},
+     * so that a slow namespace can't starve the others of web server threads.
+     * Each namespace may serve up to {@code maxConcurrent} requests at once
+     * and queue up to {@code maxQueued} more for up to {@code maxWait}, after
+     * which requests are rejected with a 503. A router that
+     * {@link Router#bulkhead(Bulkhead) assigns} its own bulkhead keeps it.
+     * The bulkheads survive a {@link #reload(Iterable) reload}. This must be
+     * called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param maxConcurrent
+     * @param maxQueued
+     * @param maxWait
+     * @param unit
+     */
+    public void setBulkheads(final int maxConcurrent, final int maxQueued,
+            final long maxWait, final TimeUnit unit) {
+        final ConcurrentMap<String, Bulkhead> bulkheads = Maps
+                .newConcurrentMap();
+        this.bulkheads = new Function<String, Bulkhead>() {
+
+            @Override
+            public Bulkhead apply(String namespace) {
+                Bulkhead bulkhead = bulkheads.get(namespace);
+                if(bulkhead == null) {
+                    bulkhead = new Bulkhead(maxConcurrent, maxQueued, maxWait,
+                            unit);
+                    Bulkhead existing = bulkheads.putIfAbsent(namespace,
+                            bulkhead);
+                    bulkhead = existing != null ? existing : bulkhead;
+                }
+                return bulkhead;
+            }
+
+        };
+    }
+
+    /**
+     * Measure the CPU time and memory that each request uses on the thread
+     * that serves it and account for them per route, so that the routes that
+     * drive CPU usage and garbage collection can be found in the
+     * {@link AdminRouter admin} route table. This uses the JVM's thread
+     * counters, so it depends on what the platform supports.
+     * 
+     * @param enabled
+     * @see ThreadMeter
+     */
+    public void setCostAccountingEnabled(boolean enabled) {
+        ThreadMeter.setEnabled(enabled);
+    }
+
+    /**
+     * Set the amount of time that {@link #stop()} waits for in flight requests
+     * to complete before shutting down the web server. By default, the
+     * application does not wait at all.
+     * 
+     * @param timeout
+     * @param unit
+     */
+    public void setDrainTimeout(long timeout, TimeUnit unit) {
+        this.drainTimeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Set the path at which the application reports its health, so that a load
+     * balancer can stop sending traffic while the application drains. The
+     * health check responds with a 200 while the application is serving
+     * requests and a 503 once it begins to {@link #stop()}. This must be
+     * called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param path
+     */
+    public void setHealthCheckPath(String path) {
+        this.healthCheckPath = path;
+    }
+
+    /**
+     * Set the path at which the application reports whether it is ready to
+     * serve traffic, so that a load balancer only sends traffic once the
+     * application has started and finished {@link #setWarmupIterations(int)
+     * warming up}. The readiness check responds with a 503 until then and
+     * again once the application begins to {@link #stop()}. This must be
+     * called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param path
+     */
+    public void setReadinessCheckPath(String path) {
+        this.readinessCheckPath = path;
+    }
+
+    /**
+     * Allow flight recordings to be started and stopped using the
+     * {@link AdminRouter admin routes} and write them to the
+     * {@code directory}. Recordings can't be started over HTTP unless this is
+     * called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param directory the directory or {@code null} to turn the recording
+     *            routes off
+     */
+    public void setRecordingDirectory(@Nullable String directory) {
+        this.recordingDirectory = directory;
+    }
+
+    /**
+     * Run the application on its own {@link ServerEngine} instead of the web
+     * server that is embedded in Spark, so that the server can be tuned and
+     * several applications can run in the same JVM. Requests are routed to
+     * the health and readiness checks, then to the routers and finally to the
+     * static files in the {@code public} folder. This must be called
+     * <strong>before</strong> calling {@link #start()}.
+     * <p>
+     * Each application has its own {@link Dispatcher}, so the route table,
+     * {@link Drain}, access log and slow request {@link Watchdog} of an
+     * application that runs on an engine are not shared with any other
+     * application in the JVM. There is only one embedded web server, so only
+     * one application at a time can run without an engine.
+     * </p>
+     * 
+     * @param engine the engine or {@code null} to use the embedded server
+     */
+    public void setServerEngine(@Nullable ServerEngine engine) {
+        Preconditions.checkState(!running,
+                "Cannot change the engine of a running application");
+        this.engine = engine;
+    }
+
+    /**
+     * Detect requests that take longer than {@code threshold} and log a
+     * {@link Watchdog.Report report}, with stack samples, for each of them.
+     * This must be called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param threshold
+     * @param unit
+     */
+    public void setSlowRequestThreshold(long threshold, TimeUnit unit) {
+        this.slowRequestThreshold = unit.toMillis(threshold);
+    }
+
+    /**
+     * Install the {@code exporter} as the
+     * {@link Tracer#setExporter(SpanExporter) tracer's exporter} when the
+     * application starts and close it when the application stops, so that the
+     * spans it has queued are written before the JVM exits. This must be
+     * called <strong>before</strong> calling {@link #start()}.
+     * 
+     * @param exporter
+     */
+    public void setSpanExporter(@Nullable SpanExporter exporter) {
+        Preconditions.checkState(!running,
+                "Cannot change the exporter of a running application");
+        this.spanExporter = exporter;
+    }
+
+    /**
+     * Set the maximum number of threads on which the
+     * {@link java.util.concurrent.Callable} values that views pass to their
+     * templates are resolved. By default, there are four threads per
+     * processor. Once every thread is busy, values are resolved on the thread
+     * that serves the request.
+     * 
+     * @param threads
+     */
+    public void setTemplateThreads(int threads) {
+        MustacheTemplateRoute.setExecutorThreads(threads);
+    }
+
+    /**
+     * Warm up the application before it reports that it is ready. During the
+     * warm-up phase, every view template is compiled and each
+     * {@link Router#warmup(org.cinchapi.quest.router.Verb, String) warm-up
+     * request} that the routers declare is served in-process
+     * {@code iterations} times. This must be called <strong>before</strong>
+     * calling {@link #start()}.
+     * 
+     * @param iterations
+     */
+    public void setWarmupIterations(int iterations) {
+        this.warmupIterations = iterations;
+    }
+
     /**
      * Set the listener port for this application. By default, the application
      * will try to use port {@value #DEFAULT_PORT}, however you can change that
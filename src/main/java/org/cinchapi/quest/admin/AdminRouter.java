@@ -0,0 +1,474 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.admin;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.cinchapi.quest.log.AccessLog;
+import org.cinchapi.quest.router.Bulkhead;
+import org.cinchapi.quest.router.Dispatcher;
+import org.cinchapi.quest.router.Drain;
+import org.cinchapi.quest.router.FragmentCache;
+import org.cinchapi.quest.router.RouteTable;
+import org.cinchapi.quest.router.RouteTable.Entry;
+import org.cinchapi.quest.router.Router;
+import org.cinchapi.quest.router.Endpoint;
+import org.cinchapi.quest.router.Watchdog;
+import org.cinchapi.quest.server.EmbeddedServer;
+import org.cinchapi.quest.server.ServerEngine;
+import org.cinchapi.quest.trace.FlightRecorder;
+import org.cinchapi.quest.util.Exceptions;
+
+import spark.template.mustache.MustacheTemplateRoute;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The {@link AdminRouter} exposes what the application is serving and how it
+ * is doing, under the {@code /admin} namespace:
+ * <ul>
+ * <li>{@code /admin/routes} - the route table, with the verb, namespaced path,
+ * owning router, request counts and, if cost accounting is enabled, CPU time
+ * and allocated bytes of each route, and the routers that could not be
+ * loaded</li>
+ * <li>{@code /admin/stats} - template cache, request, serving thread pool,
+ * bulkhead and JVM statistics</li>
+ * <li>{@code POST /admin/recording/start} - start a {@link FlightRecorder}
+ * recording in the recording directory that keeps at most {@code maxSize}
+ * bytes and {@code maxAge} seconds of data</li>
+ * <li>{@code POST /admin/recording/stop} - stop the recording and write it to
+ * its file</li>
+ * </ul>
+ * <p>
+ * The recording routes are only served if a recording directory is
+ * {@link org.cinchapi.quest.Application#setRecordingDirectory(String) set}.
+ * If an {@link org.cinchapi.quest.Application#setAdminToken(String) admin
+ * token} is set, a client must present it as an
+ * {@code Authorization: Bearer} header to use them; otherwise, only clients
+ * on the loopback interface may use them.
+ * </p>
+ * <p>
+ * Each document is a {@link Snapshot} that is recomputed at most once per
+ * second, so it is cheap to poll. The router is only served if it is enabled
+ * using {@link org.cinchapi.quest.Application#setAdminEnabled(boolean)}.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public class AdminRouter extends Router {
+
+    /**
+     * The number of milliseconds for which each snapshot is served.
+     */
+    private static final long REFRESH_INTERVAL = 1000;
+
+    /**
+     * The number of bytes that a recording keeps, by default.
+     */
+    private static final long DEFAULT_RECORDING_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of seconds of data that a recording keeps, by default.
+     */
+    private static final long DEFAULT_RECORDING_AGE = 600;
+
+    /**
+     * The scheme of the {@code Authorization} header that carries the admin
+     * token.
+     */
+    private static final String BEARER = "Bearer ";
+
+    /**
+     * Return the value of a {@code param} that must be a positive number or
+     * the {@code defaultValue} if it is not provided.
+     * 
+     * @param param
+     * @param name
+     * @param defaultValue
+     * @return the value
+     */
+    private static long parsePositive(String param, String name,
+            long defaultValue) {
+        if(param == null) {
+            return defaultValue;
+        }
+        else {
+            long value = Long.parseLong(param);
+            Preconditions.checkArgument(value > 0, "%s must be positive",
+                    name);
+            return value;
+        }
+    }
+
+    /**
+     * Return the state of a {@code bulkhead} as JSON.
+     * 
+     * @param bulkhead
+     * @return the JSON
+     */
+    private static JsonObject toJson(Bulkhead bulkhead) {
+        JsonObject json = new JsonObject();
+        json.addProperty("active", bulkhead.getActiveCount());
+        json.addProperty("maxConcurrent", bulkhead.getMaxConcurrent());
+        json.addProperty("queued", bulkhead.getQueueDepth());
+        json.addProperty("peakQueued", bulkhead.getPeakQueueDepth());
+        json.addProperty("maxQueued", bulkhead.getMaxQueued());
+        json.addProperty("admitted", bulkhead.getAdmittedCount());
+        json.addProperty("rejected", bulkhead.getRejectedCount());
+        json.addProperty("queueMillis",
+                bulkhead.getQueueTime(TimeUnit.MILLISECONDS));
+        return json;
+    }
+
+    /**
+     * Return the {@code usage} of a memory pool as JSON.
+     * 
+     * @param usage
+     * @return the JSON
+     */
+    private static JsonObject toJson(MemoryUsage usage) {
+        JsonObject json = new JsonObject();
+        json.addProperty("used", usage.getUsed());
+        json.addProperty("committed", usage.getCommitted());
+        json.addProperty("max", usage.getMax());
+        return json;
+    }
+
+    /**
+     * The dispatcher of the application on which this router reports.
+     */
+    private final Dispatcher dispatcher;
+
+    /**
+     * The directory to which recordings are written or {@code null} if the
+     * recording routes are not served.
+     */
+    @Nullable
+    private final File recordingDirectory;
+
+    /**
+     * The token that a client must present to use the recording routes or
+     * {@code null} if only clients on the loopback interface may use them.
+     */
+    @Nullable
+    private final byte[] token;
+
+    /**
+     * Construct a new instance that doesn't serve the recording routes.
+     * 
+     * @param dispatcher the dispatcher of the application on which to report
+     */
+    public AdminRouter(Dispatcher dispatcher) {
+        this(dispatcher, null, null);
+    }
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param dispatcher the dispatcher of the application on which to report
+     * @param recordingDirectory the directory to which recordings are written
+     *            or {@code null} to not serve the recording routes
+     * @param token the token that a client must present to use the recording
+     *            routes or {@code null} to only allow clients on the loopback
+     *            interface
+     */
+    public AdminRouter(Dispatcher dispatcher,
+            @Nullable String recordingDirectory, @Nullable String token) {
+        this.dispatcher = dispatcher;
+        this.recordingDirectory = recordingDirectory != null ? new File(
+                recordingDirectory).getAbsoluteFile() : null;
+        this.token = token != null ? token.getBytes(Charsets.UTF_8) : null;
+    }
+
+    @Override
+    public void routes() {
+
+        get(new Snapshot("/routes", REFRESH_INTERVAL, TimeUnit.MILLISECONDS) {
+
+            @Override
+            protected JsonElement compute() {
+                JsonObject json = new JsonObject();
+                JsonArray routes = new JsonArray();
+                JsonArray failures = new JsonArray();
+                RouteTable table = dispatcher.getRouteTable();
+                if(table != null) {
+                    for (Entry entry : table.entries()) {
+                        JsonObject route = new JsonObject();
+                        route.addProperty("verb", entry.getVerb().name());
+                        route.addProperty("path", entry.getPath());
+                        route.addProperty("owner", entry.getOwner().getName());
+                        route.addProperty("inFlight", entry.getInFlightCount());
+                        route.addProperty("served", entry.getServedCount());
+                        if(entry.getMeteredCount() > 0) {
+                            route.addProperty("metered",
+                                    entry.getMeteredCount());
+                            route.addProperty("cpuMicros", entry
+                                    .getCpuTime(TimeUnit.MICROSECONDS));
+                            route.addProperty("allocatedBytes",
+                                    entry.getAllocatedBytes());
+                        }
+                        routes.add(route);
+                    }
+                    for (Map.Entry<Class<? extends Router>, Exception> failure : table
+                            .failures().entrySet()) {
+                        JsonObject router = new JsonObject();
+                        router.addProperty("router", failure.getKey()
+                                .getName());
+                        router.addProperty("error", failure.getValue()
+                                .getClass().getName());
+                        router.addProperty("message",
+                                Exceptions.getMessage(failure.getValue()));
+                        failures.add(router);
+                    }
+                }
+                json.add("routes", routes);
+                json.add("failures", failures);
+                return json;
+            }
+
+        });
+
+        get(new Snapshot("/stats", REFRESH_INTERVAL, TimeUnit.MILLISECONDS) {
+
+            @Override
+            protected JsonElement compute() {
+                JsonObject json = new JsonObject();
+
+                JsonObject templates = new JsonObject();
+                templates.addProperty("lookups",
+                        MustacheTemplateRoute.getTemplateLookupCount());
+                templates.addProperty("compiles",
+                        MustacheTemplateRoute.getTemplateCompileCount());
+                templates.addProperty("compileMillis", TimeUnit.NANOSECONDS
+                        .toMillis(MustacheTemplateRoute
+                                .getTemplateCompileTime()));
+                json.add("templates", templates);
+
+                JsonObject fragments = new JsonObject();
+                fragments.addProperty("size", FragmentCache.size());
+                fragments.addProperty("hits", FragmentCache.getHitCount());
+                fragments.addProperty("misses", FragmentCache.getMissCount());
+                json.add("fragments", fragments);
+
+                JsonObject requests = new JsonObject();
+                Drain drain = dispatcher.getDrain();
+                requests.addProperty("inFlight", drain.getInFlightCount());
+                requests.addProperty("draining", drain.isDraining());
+                AccessLog log = dispatcher.getAccessLog();
+                if(log != null) {
+                    requests.addProperty("accessLogDropped",
+                            log.getDroppedCount());
+                }
+                Watchdog watchdog = dispatcher.getWatchdog();
+                if(watchdog != null) {
+                    requests.addProperty("slow", watchdog.getReports().size());
+                    requests.addProperty("slowInFlight", watchdog
+                            .getInFlightReports().size());
+                }
+                requests.addProperty("recording", FlightRecorder.isRecording());
+                json.add("requests", requests);
+
+                JsonObject bulkheads = new JsonObject();
+                RouteTable table = dispatcher.getRouteTable();
+                if(table != null) {
+                    Set<String> seen = Sets.newHashSet();
+                    for (Entry entry : table.entries()) {
+                        Bulkhead bulkhead = entry.getBulkhead();
+                        if(bulkhead != null
+                                && seen.add(entry.getNamespace())) {
+                            bulkheads.add("/" + entry.getNamespace(),
+                                    toJson(bulkhead));
+                        }
+                    }
+                }
+                json.add("bulkheads", bulkheads);
+
+                JsonObject server = new JsonObject();
+                ServerEngine engine = dispatcher.getServerEngine();
+                if(engine != null) {
+                    server.addProperty("engine", engine.getClass()
+                            .getSimpleName());
+                    server.addProperty("active",
+                            engine.getActiveThreadCount());
+                    server.addProperty("idle", engine.getIdleThreadCount());
+                    server.addProperty("queued",
+                            engine.getQueuedRequestCount());
+                }
+                else {
+                    server.addProperty("engine", "embedded");
+                    server.addProperty("active",
+                            EmbeddedServer.getActiveThreadCount());
+                    server.addProperty("idle",
+                            EmbeddedServer.getIdleThreadCount());
+                    server.addProperty("queued",
+                            EmbeddedServer.getQueuedRequestCount());
+                }
+                json.add("server", server);
+
+                JsonObject jvm = new JsonObject();
+                RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+                jvm.addProperty("uptime", runtime.getUptime());
+                jvm.addProperty("processors", Runtime.getRuntime()
+                        .availableProcessors());
+                jvm.addProperty("loadAverage", ManagementFactory
+                        .getOperatingSystemMXBean().getSystemLoadAverage());
+                jvm.add("heap", toJson(ManagementFactory.getMemoryMXBean()
+                        .getHeapMemoryUsage()));
+                jvm.add("nonHeap", toJson(ManagementFactory.getMemoryMXBean()
+                        .getNonHeapMemoryUsage()));
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                JsonObject thread = new JsonObject();
+                thread.addProperty("live", threads.getThreadCount());
+                thread.addProperty("daemon", threads.getDaemonThreadCount());
+                thread.addProperty("peak", threads.getPeakThreadCount());
+                jvm.add("threads", thread);
+                JsonArray gcs = new JsonArray();
+                for (GarbageCollectorMXBean collector : ManagementFactory
+                        .getGarbageCollectorMXBeans()) {
+                    JsonObject gc = new JsonObject();
+                    gc.addProperty("name", collector.getName());
+                    gc.addProperty("count", collector.getCollectionCount());
+                    gc.addProperty("millis", collector.getCollectionTime());
+                    gcs.add(gc);
+                }
+                jvm.add("gc", gcs);
+                json.add("jvm", jvm);
+                return json;
+            }
+
+        });
+
+        if(recordingDirectory == null) {
+            return;
+        }
+
+        post(new RecordingEndpoint("/recording/start") {
+
+            @Override
+            protected JsonElement record() throws Exception {
+                File file = FlightRecorder.start(new File(recordingDirectory,
+                        "quest-" + System.currentTimeMillis() + ".jfr")
+                        .getPath(), parsePositive(getParamValue("maxSize"),
+                        "maxSize", DEFAULT_RECORDING_SIZE), parsePositive(
+                        getParamValue("maxAge"), "maxAge",
+                        DEFAULT_RECORDING_AGE), TimeUnit.SECONDS);
+                JsonObject json = new JsonObject();
+                json.addProperty("file", file.getPath());
+                return json;
+            }
+
+        });
+
+        post(new RecordingEndpoint("/recording/stop") {
+
+            @Override
+            protected JsonElement record() throws Exception {
+                JsonObject json = new JsonObject();
+                json.addProperty("file", FlightRecorder.stop().getPath());
+                return json;
+            }
+
+        });
+    }
+
+    /**
+     * An {@link Endpoint} that starts or stops a recording, which is only
+     * served to clients that are allowed to.
+     * 
+     * @author jnelson
+     */
+    private abstract class RecordingEndpoint extends Endpoint {
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param path
+         */
+        protected RecordingEndpoint(String path) {
+            super(path);
+        }
+
+        /**
+         * Start or stop the recording and return the payload of the response.
+         * 
+         * @return the payload
+         * @throws Exception
+         */
+        protected abstract JsonElement record() throws Exception;
+
+        @Override
+        protected final JsonElement serve() throws Exception {
+            if(token != null) {
+                String authorization = request.headers("Authorization");
+                if(authorization == null
+                        || !authorization.startsWith(BEARER)
+                        || !MessageDigest.isEqual(token, authorization
+                                .substring(BEARER.length()).trim()
+                                .getBytes(Charsets.UTF_8))) {
+                    response.header("WWW-Authenticate", "Bearer");
+                    halt(401, "A valid admin token is required");
+                }
+            }
+            else if(!isLoopback(request.ip())) {
+                halt(403, "Recordings can only be controlled locally");
+            }
+            return record();
+        }
+
+        /**
+         * Return {@code true} if the {@code ip} address is on the loopback
+         * interface.
+         * 
+         * @param ip
+         * @return {@code true} if the address is a loopback address
+         */
+        private boolean isLoopback(@Nullable String ip) {
+            try {
+                return ip != null
+                        && InetAddresses.forString(ip).isLoopbackAddress();
+            }
+            catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+    }
+
+}
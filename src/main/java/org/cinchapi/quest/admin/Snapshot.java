@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.admin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.cinchapi.quest.router.AbstractRewritableRoute;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A {@link Snapshot} is a route that serves a JSON document which is
+ * computed at most once per refresh interval, regardless of how often the
+ * route is polled.
+ * <p>
+ * When the document is stale, the first request to notice recomputes it while
+ * any concurrent requests keep getting the previous document, so polling a
+ * snapshot never piles up work.
+ * </p>
+ * 
+ * @author jnelson
+ */
+abstract class Snapshot extends AbstractRewritableRoute {
+
+    /**
+     * The number of nanoseconds for which a computed document is served.
+     */
+    private final long interval;
+
+    /**
+     * A flag that is set while the document is being recomputed.
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    /**
+     * The serialized document or {@code null} if it hasn't been computed yet.
+     */
+    private volatile String document = null;
+
+    /**
+     * The {@link System#nanoTime()} at which the {@link #document} was
+     * computed.
+     */
+    private volatile long computedAt = 0;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param relativePath
+     * @param interval
+     * @param unit
+     */
+    protected Snapshot(String relativePath, long interval, TimeUnit unit) {
+        super(relativePath);
+        this.interval = unit.toNanos(interval);
+    }
+
+    @Override
+    public final Object handle() {
+        String document = this.document;
+        if(document == null || System.nanoTime() - computedAt >= interval) {
+            if(refreshing.compareAndSet(false, true)) {
+                try {
+                    document = compute().toString();
+                    this.document = document;
+                    this.computedAt = System.nanoTime();
+                }
+                finally {
+                    refreshing.set(false);
+                }
+            }
+            else if(document == null) {
+                document = compute().toString();
+            }
+        }
+        this.response.type("application/json");
+        return document;
+    }
+
+    /**
+     * Compute the document that is served.
+     * 
+     * @return the document
+     */
+    protected abstract JsonElement compute();
+
+}
@@ -0,0 +1,472 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link AccessLog} records one structured line for each request that is
+ * served.
+ * <p>
+ * Logging a request only copies a handful of values into a pre-allocated slot
+ * of a lock-free ring buffer, so it costs the request thread almost nothing. A
+ * background thread drains the buffer in batches, formats each record as a
+ * line of JSON and writes it through a buffered writer, rotating the file once
+ * it grows beyond a maximum size. If the writer falls so far behind that the
+ * buffer fills up, new records are dropped and counted rather than blocking
+ * requests. If the file can't be written, the failure is logged, the records
+ * that were lost are counted as dropped and the file is reopened after a
+ * pause.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class AccessLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessLog.class);
+
+    /**
+     * The default number of records that the ring buffer can hold.
+     */
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The default size, in bytes, after which the log file is rotated.
+     */
+    private static final long DEFAULT_MAX_FILE_SIZE = 100 * 1024 * 1024;
+
+    /**
+     * The default number of rotated files that are kept.
+     */
+    private static final int DEFAULT_MAX_BACKUPS = 5;
+
+    /**
+     * The number of milliseconds to wait before reopening the file after it
+     * could not be written.
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The path of the log file.
+     */
+    private final String path;
+
+    /**
+     * The size, in bytes, after which the log file is rotated.
+     */
+    private final long maxFileSize;
+
+    /**
+     * The number of rotated files that are kept.
+     */
+    private final int maxBackups;
+
+    /**
+     * The slots of the ring buffer.
+     */
+    private final Record[] ring;
+
+    /**
+     * The mask that maps a sequence to its slot in the {@link #ring}.
+     */
+    private final int mask;
+
+    /**
+     * The sequence of the next slot to be claimed by a request thread.
+     */
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * The sequence of the next slot to be read by the writer thread.
+     */
+    private volatile long head = 0;
+
+    /**
+     * The number of records that were dropped because the ring was full or
+     * the file could not be written.
+     */
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * The background thread that writes records to the file.
+     */
+    private final Thread writer;
+
+    /**
+     * A flag that indicates whether this log has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Construct a new instance that writes to the file at {@code path}.
+     * 
+     * @param path
+     */
+    public AccessLog(String path) {
+        this(path, DEFAULT_CAPACITY, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_BACKUPS);
+    }
+
+    /**
+     * Construct a new instance that writes to the file at {@code path}.
+     * 
+     * @param path
+     * @param capacity the number of records that can be buffered, which must
+     *            be a power of two
+     * @param maxFileSize the size, in bytes, after which the file is rotated
+     * @param maxBackups the number of rotated files to keep
+     */
+    public AccessLog(String path, int capacity, long maxFileSize,
+            int maxBackups) {
+        Preconditions.checkArgument(capacity > 0
+                && (capacity & (capacity - 1)) == 0,
+                "The capacity must be a power of two");
+        this.path = path;
+        this.maxFileSize = maxFileSize;
+        this.maxBackups = maxBackups;
+        this.ring = new Record[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            ring[i] = new Record();
+        }
+        this.mask = capacity - 1;
+        this.writer = new Thread(new Flusher(), "quest-access-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Stop accepting records and wait for the ones that are buffered to be
+     * written.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Return the number of records that were dropped because the writer could
+     * not keep up or the file could not be written.
+     * 
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Record a request.
+     * 
+     * @param method the HTTP method
+     * @param route the namespaced route template that served the request
+     * @param status the response status
+     * @param bytes the size of the response body
+     * @param latency the number of nanoseconds it took to serve the request
+     * @param client the client IP address
+     */
+    public void log(String method, String route, int status, long bytes,
+            long latency, String client) {
+        if(closed) {
+            return;
+        }
+        long sequence;
+        for (;;) {
+            sequence = tail.get();
+            if(sequence - head >= ring.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+            else if(tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        Record record = ring[(int) (sequence & mask)];
+        record.timestamp = System.currentTimeMillis();
+        record.method = method;
+        record.route = route;
+        record.status = status;
+        record.bytes = bytes;
+        record.latency = latency;
+        record.client = client;
+        record.published.lazySet(sequence + 1);
+    }
+
+    /**
+     * A slot in the ring buffer. Slots are reused, so they are mutable.
+     * 
+     * @author jnelson
+     */
+    private static final class Record {
+
+        /**
+         * One more than the sequence of the record that was last published to
+         * this slot, which signals that the record is ready to be written.
+         */
+        final AtomicLong published = new AtomicLong(0);
+
+        /**
+         * The wall clock time, in milliseconds, at which the request ended.
+         */
+        long timestamp;
+
+        /**
+         * The HTTP method.
+         */
+        String method;
+
+        /**
+         * The namespaced route template.
+         */
+        String route;
+
+        /**
+         * The response status.
+         */
+        int status;
+
+        /**
+         * The size of the response body.
+         */
+        long bytes;
+
+        /**
+         * The number of nanoseconds it took to serve the request.
+         */
+        long latency;
+
+        /**
+         * The client IP address.
+         */
+        String client;
+    }
+
+    /**
+     * The task that drains the ring buffer to the file.
+     * 
+     * @author jnelson
+     */
+    private final class Flusher implements Runnable {
+
+        /**
+         * The builder that is reused to format each line.
+         */
+        private final StringBuilder line = new StringBuilder(256);
+
+        /**
+         * The writer for the current file.
+         */
+        private Writer out;
+
+        /**
+         * The number of bytes in the current file.
+         */
+        private long size;
+
+        @Override
+        public void run() {
+            for (;;) {
+                int written = 0;
+                try {
+                    if(out == null) {
+                        open();
+                    }
+                    Record record;
+                    while ((record = ring[(int) (head & mask)]).published.get() == head + 1) {
+                        format(record);
+                        record.route = null;
+                        record.client = null;
+                        head = head + 1;
+                        ++written;
+                        out.append(line);
+                        size += encodedLength(line);
+                        if(size >= maxFileSize) {
+                            rotate();
+                            written = 0;
+                        }
+                    }
+                    if(written > 0) {
+                        out.flush();
+                    }
+                    else if(closed) {
+                        out.close();
+                        break;
+                    }
+                    else {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS
+                                .toNanos(10));
+                    }
+                }
+                catch (IOException e) {
+                    dropped.addAndGet(written);
+                    log.error("Cannot write the access log to {}", path, e);
+                    discard();
+                    if(closed) {
+                        break;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS
+                            .toNanos(RETRY_DELAY));
+                }
+            }
+        }
+
+        /**
+         * Close the writer for the current file after it failed, so that the
+         * file is reopened on the next attempt.
+         */
+        private void discard() {
+            if(out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {/* the writer is already broken */}
+                out = null;
+            }
+        }
+
+        /**
+         * Return the number of bytes in the UTF-8 encoding of the
+         * {@code chars}, which is how the {@link #size} of the file is
+         * counted.
+         * 
+         * @param chars
+         * @return the encoded length
+         */
+        private long encodedLength(CharSequence chars) {
+            long length = chars.length();
+            for (int i = 0; i < chars.length(); ++i) {
+                char c = chars.charAt(i);
+                if(c >= 0x800 && !Character.isSurrogate(c)) {
+                    length += 2;
+                }
+                else if(c >= 0x80) {
+                    // A surrogate pair is 4 bytes, so each half adds 1
+                    length += 1;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * Format the {@code record} into the {@link #line}.
+         * 
+         * @param record
+         */
+        private void format(Record record) {
+            line.setLength(0);
+            line.append("{\"time\":").append(record.timestamp);
+            line.append(",\"method\":\"").append(record.method);
+            line.append("\",\"route\":\"");
+            escape(record.route);
+            line.append("\",\"status\":").append(record.status);
+            line.append(",\"bytes\":").append(record.bytes);
+            line.append(",\"latency\":").append(
+                    TimeUnit.NANOSECONDS.toMicros(record.latency));
+            line.append(",\"client\":\"");
+            escape(record.client);
+            line.append("\"}\n");
+        }
+
+        /**
+         * Append the {@code value} to the {@link #line}, escaped for use
+         * within a JSON string.
+         * 
+         * @param value
+         */
+        private void escape(@Nullable String value) {
+            if(value == null) {
+                return;
+            }
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                if(c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                }
+                else if(c < 0x20) {
+                    line.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    line.append(c);
+                }
+            }
+        }
+
+        /**
+         * Open the log file for appending.
+         * 
+         * @throws IOException
+         */
+        private void open() throws IOException {
+            File file = new File(path);
+            size = file.length();
+            out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), Charsets.UTF_8),
+                    64 * 1024);
+        }
+
+        /**
+         * Move the current log file aside, discarding the oldest backup, and
+         * start a new one.
+         * 
+         * @throws IOException
+         */
+        private void rotate() throws IOException {
+            out.close();
+            new File(path + "." + maxBackups).delete();
+            for (int i = maxBackups - 1; i > 0; --i) {
+                File backup = new File(path + "." + i);
+                if(backup.exists()) {
+                    backup.renameTo(new File(path + "." + (i + 1)));
+                }
+            }
+            if(maxBackups > 0) {
+                new File(path).renameTo(new File(path + ".1"));
+            }
+            else {
+                new File(path).delete();
+            }
+            open();
+        }
+    }
+
+}
@@ -5,6 +5,8 @@ import java.util.List;
 
 import javax.annotation.Nullable;
 
+import org.cinchapi.quest.trace.Span;
+import org.cinchapi.quest.trace.Trace;
 import org.cinchapi.quest.util.Objects;
 
 import com.google.common.collect.Lists;
@@ -25,6 +27,17 @@ import spark.Response;
  * variables are all non-empty before continuing in the route, halting if the
  * check fails.</li>
  * </ul>
+ * <h2>Request Scoped Values</h2>
+ * <ul>
+ * <li>Use the {@link #getAttribute(RequestLocal)} and
+ * {@link #setAttribute(RequestLocal, Object)} methods to share typed values
+ * between the routines and the route that serve the same request.</li>
+ * </ul>
+ * <h2>Tracing</h2>
+ * <ul>
+ * <li>Use the {@link #startSpan(String)} method to time custom work within
+ * the request's {@link #getTrace() trace}.</li>
+ * </ul>
  * <h2>Redirection</h2>
  * <ul>
  * <li>Use the {@link Response#redirect(String) response.redirect(String)}
@@ -42,6 +55,18 @@ public abstract class AbstractRewritableRoute extends RewritableRoute {
     private static List<String> EMPTY_STRING_COLLECTION = Lists
             .newArrayList("");
 
+    /**
+     * The {@link Trace} that records each request.
+     */
+    static final RequestLocal<Trace> TRACE = new RequestLocal<Trace>() {
+
+        @Override
+        protected Trace initialValue(Request request) {
+            return Trace.NOOP;
+        }
+
+    };
+
     /**
      * Check to ensure that none of the specified {@link params} is {@code null}
      * or an empty string or an empty collection. If so, halt
@@ -66,6 +91,39 @@ public abstract class AbstractRewritableRoute extends RewritableRoute {
         super(relativePath);
     }
 
+    /**
+     * Return the value of the {@code attribute} for the request being
+     * processed, computing it if necessary.
+     * 
+     * @param attribute
+     * @return the value of the attribute
+     */
+    @Nullable
+    protected final <T> T getAttribute(RequestLocal<T> attribute) {
+        return attribute.get(request);
+    }
+
+    /**
+     * Return the {@link Deadline} by which the request being processed must be
+     * served.
+     * 
+     * @return the deadline
+     */
+    protected final Deadline getDeadline() {
+        return Deadline.CURRENT.get(request);
+    }
+
+    /**
+     * Return the {@link Trace} that records the request being processed. Use
+     * {@link Trace#getTraceparent()} to propagate the trace to downstream
+     * calls.
+     * 
+     * @return the trace
+     */
+    protected final Trace getTrace() {
+        return TRACE.get(request);
+    }
+
     /**
      * Return the list of values mapped from a parameter associated with the
      * request being processed. This method is only appropriate for query
@@ -111,6 +169,28 @@ public abstract class AbstractRewritableRoute extends RewritableRoute {
                 .queryParams(param);
     }
 
+    /**
+     * Set the value of the {@code attribute} for the request being processed.
+     * 
+     * @param attribute
+     * @param value
+     */
+    protected final <T> void setAttribute(RequestLocal<T> attribute, T value) {
+        attribute.set(request, value);
+    }
+
+    /**
+     * Open a {@link Span} with the {@code name} to time some custom work
+     * within the request being processed. The span must be closed once the
+     * work is done, preferably using a try-with-resources statement.
+     * 
+     * @param name
+     * @return the span
+     */
+    protected final Span startSpan(String name) {
+        return TRACE.get(request).startSpan(name);
+    }
+
     /**
      * Handle the request that has been made to the path that corresponds to
      * this {@link Route}.
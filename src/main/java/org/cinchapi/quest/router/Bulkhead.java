@@ -0,0 +1,285 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link Bulkhead} isolates the routes of a {@link Router} namespace from
+ * the rest of the application by bounding the number of its requests that
+ * are served concurrently, so that a slow namespace can't tie up every
+ * thread of the web server and starve the others.
+ * <p>
+ * A request that arrives while the bulkhead is full waits in a bounded queue
+ * for up to the maximum wait time and is served in arrival order once a
+ * permit is given back. When the queue is also full or the wait times out,
+ * the request is rejected with a 503. Unlike a {@link ConcurrencyLimiter},
+ * which sheds excess requests immediately, a bulkhead absorbs short bursts.
+ * </p>
+ * <p>
+ * A bulkhead is assigned to a namespace in {@link Router#routes()} using
+ * {@link Router#bulkhead(Bulkhead)} or to every namespace at once using
+ * {@link org.cinchapi.quest.Application#setBulkheads(int, int, long, TimeUnit)
+ * Application#setBulkheads}.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Bulkhead {
+
+    /**
+     * The number of seconds that a rejected client is asked to wait before
+     * retrying, by default.
+     */
+    private static final int DEFAULT_RETRY_AFTER = 1;
+
+    /**
+     * The permits for the requests that are being served, which are handed
+     * out in arrival order.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The maximum number of requests that are served concurrently.
+     */
+    private final int maxConcurrent;
+
+    /**
+     * The maximum number of requests that wait for a permit.
+     */
+    private final int maxQueued;
+
+    /**
+     * The maximum number of nanoseconds that a request waits for a permit.
+     */
+    private final long maxWait;
+
+    /**
+     * The number of requests that are waiting for a permit.
+     */
+    private final AtomicInteger queued = new AtomicInteger(0);
+
+    /**
+     * The largest number of requests that have waited for a permit at once.
+     */
+    private final AtomicInteger peakQueued = new AtomicInteger(0);
+
+    /**
+     * The number of requests that have been admitted.
+     */
+    private final AtomicLong admitted = new AtomicLong(0);
+
+    /**
+     * The number of requests that have been rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    /**
+     * The total number of nanoseconds that requests have waited for a permit.
+     */
+    private final AtomicLong queueTime = new AtomicLong(0);
+
+    /**
+     * The number of seconds that a rejected client is asked to wait before
+     * retrying.
+     */
+    private volatile int retryAfter = DEFAULT_RETRY_AFTER;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param maxConcurrent the maximum number of requests that are served
+     *            concurrently
+     * @param maxQueued the maximum number of requests that wait for a permit
+     * @param maxWait the maximum amount of time that a request waits
+     * @param unit
+     */
+    public Bulkhead(int maxConcurrent, int maxQueued, long maxWait,
+            TimeUnit unit) {
+        Preconditions.checkArgument(maxConcurrent > 0 && maxQueued >= 0
+                && maxWait >= 0,
+                "The bulkhead must satisfy maxConcurrent > 0, maxQueued >= 0 "
+                        + "and maxWait >= 0");
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWait = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Return the number of requests that are currently being served.
+     * 
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * Return the number of requests that have been admitted.
+     * 
+     * @return the admitted count
+     */
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    /**
+     * Return the maximum number of requests that are served concurrently.
+     * 
+     * @return the concurrency limit
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Return the maximum number of requests that wait for a permit.
+     * 
+     * @return the queue limit
+     */
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Return the largest number of requests that have waited for a permit at
+     * the same time.
+     * 
+     * @return the peak queue depth
+     */
+    public int getPeakQueueDepth() {
+        return peakQueued.get();
+    }
+
+    /**
+     * Return the number of requests that are currently waiting for a permit.
+     * 
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Return the total amount of time that requests have waited for a permit.
+     * 
+     * @param unit
+     * @return the queue time
+     */
+    public long getQueueTime(TimeUnit unit) {
+        return unit.convert(queueTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the number of requests that have been rejected.
+     * 
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Return the number of seconds that a rejected client is asked to wait
+     * before retrying.
+     * 
+     * @return the retry after value
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Set the number of seconds that a rejected client is asked to wait before
+     * retrying, using the {@code Retry-After} header.
+     * 
+     * @param seconds
+     */
+    public void setRetryAfter(int seconds) {
+        this.retryAfter = seconds;
+    }
+
+    /**
+     * Acquire a permit for a request, waiting in the queue if the bulkhead is
+     * full. If this method returns {@code true}, {@link #exit()} must be
+     * called once the request has been served.
+     * 
+     * @return {@code true} if the request may be served
+     */
+    boolean enter() {
+        try {
+            // A timed acquire honors the fairness of the semaphore, so a
+            // request never jumps ahead of those that are already queued
+            if(permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+            int depth = queued.incrementAndGet();
+            if(depth > maxQueued) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            int peak;
+            while (depth > (peak = peakQueued.get())
+                    && !peakQueued.compareAndSet(peak, depth)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                if(permits.tryAcquire(maxWait, TimeUnit.NANOSECONDS)) {
+                    admitted.incrementAndGet();
+                    return true;
+                }
+                else {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+            }
+            finally {
+                queued.decrementAndGet();
+                queueTime.addAndGet(System.nanoTime() - start);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Give back the permit of a request that was allowed to {@link #enter()}.
+     */
+    void exit() {
+        permits.release();
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link ConcurrencyLimiter} bounds the number of requests that are served
+ * concurrently and sheds any excess requests immediately instead of letting
+ * them queue up in the web server.
+ * <p>
+ * The limit adapts to the measured latency of the requests that are served
+ * using an additive-increase/multiplicative-decrease (AIMD) scheme: whenever a
+ * request takes longer than the latency target, the limit is cut by the
+ * backoff ratio and whenever a request completes within the target while the
+ * limiter is being put to use, the limit grows by one. The limit never leaves
+ * the range between the minimum and maximum limit.
+ * </p>
+ * <p>
+ * Requests are admitted according to their {@link Priority}, so that lower
+ * priority requests are shed before the limiter is exhausted and higher
+ * priority requests keep getting through.
+ * </p>
+ * <p>
+ * A limiter is applied to routes in {@link Router#routes()} using
+ * {@link Router#limit(String, ConcurrencyLimiter, Priority)}. The same limiter
+ * can be applied to several paths, even across routers, to share a single
+ * limit.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class ConcurrencyLimiter {
+
+    /**
+     * The factor by which the limit is multiplied when a request exceeds the
+     * latency target.
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * The number of seconds that a rejected client is asked to wait before
+     * retrying, by default.
+     */
+    private static final int DEFAULT_RETRY_AFTER = 1;
+
+    /**
+     * The current limit.
+     */
+    private final AtomicInteger limit;
+
+    /**
+     * The smallest the {@link #limit} can be.
+     */
+    private final int minLimit;
+
+    /**
+     * The largest the {@link #limit} can be.
+     */
+    private final int maxLimit;
+
+    /**
+     * The latency, in nanoseconds, above which the {@link #limit} is
+     * decreased.
+     */
+    private final long latencyTarget;
+
+    /**
+     * The number of requests that currently hold a permit.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * The number of requests that have been rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    /**
+     * The number of seconds that a rejected client is asked to wait before
+     * retrying.
+     */
+    private volatile int retryAfter = DEFAULT_RETRY_AFTER;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     * @param latencyTarget
+     * @param unit
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+            long latencyTarget, TimeUnit unit) {
+        Preconditions.checkArgument(minLimit > 0 && minLimit <= initialLimit
+                && initialLimit <= maxLimit,
+                "The limits must satisfy 0 < min <= initial <= max");
+        this.limit = new AtomicInteger(initialLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTarget = unit.toNanos(latencyTarget);
+    }
+
+    /**
+     * Return the number of requests that currently hold a permit.
+     * 
+     * @return the in flight count
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Return the current limit.
+     * 
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit.get();
+    }
+
+    /**
+     * Return the number of requests that have been rejected.
+     * 
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Return the number of seconds that a rejected client is asked to wait
+     * before retrying.
+     * 
+     * @return the retry after value
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Set the number of seconds that a rejected client is asked to wait before
+     * retrying, using the {@code Retry-After} header.
+     * 
+     * @param seconds
+     */
+    public void setRetryAfter(int seconds) {
+        this.retryAfter = seconds;
+    }
+
+    /**
+     * Give back a permit without using the request to adjust the limit. This
+     * is used when a request acquired a permit but was never served.
+     */
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Give back a permit for a request that was served in {@code latency}
+     * nanoseconds and adjust the limit accordingly.
+     * 
+     * @param latency
+     */
+    void release(long latency) {
+        int running = inFlight.getAndDecrement();
+        int current = limit.get();
+        if(latency > latencyTarget) {
+            limit.compareAndSet(current,
+                    Math.max(minLimit, (int) (current * BACKOFF_RATIO)));
+        }
+        else if(running * 2 >= current && current < maxLimit) {
+            // Only grow the limit when it is actually being put to use,
+            // otherwise a lightly loaded limiter would grow without bound
+            limit.compareAndSet(current, current + 1);
+        }
+    }
+
+    /**
+     * Try to acquire a permit for a request with the {@code priority}.
+     * 
+     * @param priority
+     * @return {@code true} if the request may be served
+     */
+    boolean tryAcquire(Priority priority) {
+        int allowed = Math.max(1, (int) (limit.get() * priority.share));
+        for (;;) {
+            int running = inFlight.get();
+            if(running >= allowed) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            else if(inFlight.compareAndSet(running, running + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The priority classes for requests that go through a
+     * {@link ConcurrencyLimiter}. Each priority may only use a share of the
+     * limit, so lower priority requests are shed first as load increases.
+     * 
+     * @author jnelson
+     */
+    public enum Priority {
+        /**
+         * Requests that may use the entire limit.
+         */
+        CRITICAL(1.0),
+
+        /**
+         * Requests that may use most of the limit.
+         */
+        NORMAL(0.9),
+
+        /**
+         * Requests that are the first to be shed.
+         */
+        SHEDDABLE(0.5);
+
+        /**
+         * The share of the limit that requests with this priority may use.
+         */
+        private final double share;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param share
+         */
+        private Priority(double share) {
+            this.share = share;
+        }
+    }
+
+}
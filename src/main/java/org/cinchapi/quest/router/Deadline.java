@@ -0,0 +1,224 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import spark.Request;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link Deadline} is the point in time by which a request must be served.
+ * <p>
+ * A request gets a deadline if a timeout is applied to its route using
+ * {@link Router#timeout(String, long, TimeUnit)} or if the client specifies
+ * the number of milliseconds it is willing to wait in the {@value #HEADER}
+ * header, in which case the earlier of the two wins.
+ * </p>
+ * <p>
+ * Use {@link #remaining(TimeUnit)} to budget the time given to downstream
+ * calls and {@link #isExpired()} or {@link #check()} to stop working once the
+ * client is no longer waiting. When the deadline passes while an
+ * {@link Endpoint} is being served, the serving thread is interrupted and the
+ * response reports that the request timed out.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Deadline {
+
+    /**
+     * The header in which a client can specify the number of milliseconds it
+     * is willing to wait for a response.
+     */
+    public static final String HEADER = "X-Request-Timeout";
+
+    /**
+     * A {@link Deadline} that never passes.
+     */
+    private static final Deadline NONE = new Deadline(false, 0);
+
+    /**
+     * The {@link Deadline} that applies to each request.
+     */
+    static final RequestLocal<Deadline> CURRENT = new RequestLocal<Deadline>() {
+
+        @Override
+        protected Deadline initialValue(Request request) {
+            return NONE;
+        }
+
+    };
+
+    /**
+     * The timer that fires when deadlines pass.
+     */
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("quest-deadline-timer").build());
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Return a {@link Deadline} that passes {@code timeout} nanoseconds from
+     * now.
+     * 
+     * @param timeout
+     * @return the deadline
+     */
+    static Deadline after(long timeout) {
+        return new Deadline(true, System.nanoTime() + timeout);
+    }
+
+    /**
+     * A flag that indicates whether this {@link Deadline} ever passes.
+     */
+    private final boolean bounded;
+
+    /**
+     * The {@link System#nanoTime()} at which this {@link Deadline} passes.
+     */
+    private final long expiresAt;
+
+    /**
+     * The thread that is interrupted if this {@link Deadline} passes while it
+     * is {@link #arm() armed}.
+     */
+    @Nullable
+    private Thread thread = null;
+
+    /**
+     * The timer task that fires when this {@link Deadline} passes.
+     */
+    @Nullable
+    private ScheduledFuture<?> alarm = null;
+
+    /**
+     * A flag that indicates whether the {@link #alarm} fired.
+     */
+    private volatile boolean fired = false;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param bounded
+     * @param expiresAt
+     */
+    private Deadline(boolean bounded, long expiresAt) {
+        this.bounded = bounded;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Throw a {@link DeadlineExceededException} if this {@link Deadline} has
+     * passed.
+     */
+    public void check() {
+        if(isExpired()) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    /**
+     * Return {@code true} if this {@link Deadline} has passed and the client is
+     * no longer waiting for a response.
+     * 
+     * @return {@code true} if the deadline has passed
+     */
+    public boolean isExpired() {
+        return fired || (bounded && System.nanoTime() - expiresAt >= 0);
+    }
+
+    /**
+     * Return the amount of time that remains before this {@link Deadline}
+     * passes or {@link Long#MAX_VALUE} if there is no deadline.
+     * 
+     * @param unit
+     * @return the remaining time
+     */
+    public long remaining(TimeUnit unit) {
+        if(bounded) {
+            return unit.convert(Math.max(0, expiresAt - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+        }
+        else {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Interrupt the current thread if this {@link Deadline} passes before it
+     * is {@link #disarm() disarmed}.
+     */
+    synchronized void arm() {
+        if(bounded) {
+            thread = Thread.currentThread();
+            alarm = timer.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    expire();
+                }
+
+            }, Math.max(0, expiresAt - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stop this {@link Deadline} from interrupting the thread that
+     * {@link #arm() armed} it and clear the interrupt if it already happened,
+     * so that the thread can be safely returned to the web server.
+     */
+    synchronized void disarm() {
+        if(alarm != null) {
+            alarm.cancel(false);
+            alarm = null;
+        }
+        if(thread != null) {
+            thread = null;
+            if(fired) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Mark this {@link Deadline} as passed and interrupt the armed thread, if
+     * any.
+     */
+    private synchronized void expire() {
+        fired = true;
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+
+}
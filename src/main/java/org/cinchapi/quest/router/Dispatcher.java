@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cinchapi.quest.log.AccessLog;
+import org.cinchapi.quest.server.ServerEngine;
+
+/**
+ * A {@link Dispatcher} holds the state with which an application serves
+ * requests: the {@link RouteTable} that is live, the {@link Drain} and the
+ * {@link AccessLog} and slow request {@link Watchdog}, if they are on.
+ * <p>
+ * Each application has its own dispatcher, so applications that run in the
+ * same JVM on their own {@link org.cinchapi.quest.server.ServerEngine
+ * engines} are reloaded, drained, logged and stopped independently of each
+ * other. A table is made live either by {@link #activate(RouteTable)
+ * activating} it, after which requests are routed to it using
+ * {@link #serve(HttpServletRequest, HttpServletResponse)}, or by
+ * {@link RouteTable#publish(Dispatcher) publishing} it with the web server
+ * that is embedded in Spark.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Dispatcher {
+
+    /**
+     * The drain that tracks the requests that are in flight.
+     */
+    private final Drain drain = new Drain();
+
+    /**
+     * The log that requests are recorded to or {@code null} if access logging
+     * is off.
+     */
+    @Nullable
+    private volatile AccessLog accessLog = null;
+
+    /**
+     * The engine that the application runs on or {@code null} if it runs on
+     * the web server that is embedded in Spark.
+     */
+    @Nullable
+    private volatile ServerEngine engine = null;
+
+    /**
+     * The table that is currently serving requests.
+     */
+    @Nullable
+    private volatile RouteTable table = null;
+
+    /**
+     * The watchdog that tracks requests or {@code null} if there is none.
+     */
+    @Nullable
+    private volatile Watchdog watchdog = null;
+
+    /**
+     * Make the {@code table} the {@link #getRouteTable() live} table. Requests
+     * that are already in flight complete against the table in which they
+     * started.
+     * 
+     * @param table
+     */
+    public void activate(RouteTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Stop serving requests from the live table, if there is one.
+     */
+    public void deactivate() {
+        this.table = null;
+    }
+
+    /**
+     * Return the {@link AccessLog} that requests are recorded to or
+     * {@code null} if access logging is off.
+     * 
+     * @return the access log
+     */
+    @Nullable
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    /**
+     * Return the {@link Drain} that tracks the requests that are in flight.
+     * 
+     * @return the drain
+     */
+    public Drain getDrain() {
+        return drain;
+    }
+
+    /**
+     * Return the {@link ServerEngine} that the application runs on or
+     * {@code null} if it runs on the web server that is embedded in Spark.
+     * 
+     * @return the engine
+     */
+    @Nullable
+    public ServerEngine getServerEngine() {
+        return engine;
+    }
+
+    /**
+     * Return the {@link RouteTable} that is currently serving requests or
+     * {@code null} if none has been activated.
+     * 
+     * @return the live table
+     */
+    @Nullable
+    public RouteTable getRouteTable() {
+        return table;
+    }
+
+    /**
+     * Return the {@link Watchdog} that tracks requests or {@code null} if
+     * there is none.
+     * 
+     * @return the watchdog
+     */
+    @Nullable
+    public Watchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Serve the {@code request} using the route in the live table that
+     * matches its verb and path.
+     * 
+     * @param request
+     * @param response
+     * @return {@code true} if the request was served, or {@code false} if
+     *         there is no live table or no route in it matches the request
+     * @throws IOException
+     */
+    public boolean serve(HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        RouteTable table = this.table;
+        return table != null && table.serve(this, request, response);
+    }
+
+    /**
+     * Record requests to the {@code log} or pass {@code null} to turn access
+     * logging off. The previous log, if any, is closed.
+     * 
+     * @param log
+     */
+    public synchronized void setAccessLog(@Nullable AccessLog log) {
+        AccessLog previous = accessLog;
+        accessLog = log;
+        if(previous != null && previous != log) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Record that the application runs on the {@code engine} or pass
+     * {@code null} if it runs on the web server that is embedded in Spark.
+     * 
+     * @param engine
+     */
+    public void setServerEngine(@Nullable ServerEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Track requests using the {@code watchdog} or pass {@code null} to stop
+     * tracking requests. The previous watchdog, if any, is closed.
+     * 
+     * @param watchdog
+     */
+    public synchronized void setWatchdog(@Nullable Watchdog watchdog) {
+        Watchdog previous = this.watchdog;
+        this.watchdog = watchdog;
+        if(previous != null && previous != watchdog) {
+            previous.close();
+        }
+    }
+
+}
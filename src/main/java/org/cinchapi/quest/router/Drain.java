@@ -0,0 +1,201 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link Drain} keeps track of the requests that are being served by a
+ * {@link Dispatcher} so that the application can stop gracefully.
+ * <p>
+ * Once the drain {@link #begin() begins}, new requests are turned away with
+ * a 503 while the requests that are already in flight are allowed to
+ * complete. The application can {@link #await(long, TimeUnit) wait} for
+ * those requests up to some deadline before it shuts down the web server, at
+ * which point any requests that are still running are counted as aborted.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Drain {
+
+    /**
+     * The number of requests that are currently being served.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * The number of requests that completed after the drain began.
+     */
+    private final AtomicLong drained = new AtomicLong(0);
+
+    /**
+     * The number of requests that were still running when the drain deadline
+     * passed.
+     */
+    private final AtomicLong aborted = new AtomicLong(0);
+
+    /**
+     * The monitor that is notified when the last in flight request completes
+     * during a drain.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * A flag that indicates whether the drain has begun.
+     */
+    private volatile boolean draining = false;
+
+    /**
+     * Construct a new instance.
+     */
+    Drain() {/* noop */}
+
+    /**
+     * Wait up to {@code timeout} for all the in flight requests to complete.
+     * Any requests that are still running when the deadline passes are
+     * counted as aborted.
+     * 
+     * @param timeout
+     * @param unit
+     * @return {@code true} if all the in flight requests completed before the
+     *         deadline
+     * @throws InterruptedException
+     */
+    public boolean await(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            long remaining;
+            while (inFlight.get() > 0
+                    && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+        int running = inFlight.get();
+        aborted.addAndGet(running);
+        return running == 0;
+    }
+
+    /**
+     * Begin draining, so that new requests are rejected.
+     */
+    public void begin() {
+        draining = true;
+    }
+
+    /**
+     * Return the number of requests that were still running when a drain
+     * deadline passed.
+     * 
+     * @return the number of aborted requests
+     */
+    public long getAbortedCount() {
+        return aborted.get();
+    }
+
+    /**
+     * Return the number of requests that completed after the drain began.
+     * 
+     * @return the number of drained requests
+     */
+    public long getDrainedCount() {
+        return drained.get();
+    }
+
+    /**
+     * Return the number of requests that are currently being served.
+     * 
+     * @return the number of in flight requests
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Return {@code true} if the drain has begun and new requests are being
+     * rejected.
+     * 
+     * @return {@code true} if draining
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Stop draining and reset all the counters so that requests can be served
+     * again.
+     */
+    public void reset() {
+        draining = false;
+        drained.set(0);
+        aborted.set(0);
+    }
+
+    /**
+     * Record that a request has started. If this method returns
+     * {@code false}, the request must be rejected and {@link #exit()} must not
+     * be called.
+     * 
+     * @return {@code true} if the request may be served
+     */
+    boolean enter() {
+        inFlight.incrementAndGet();
+        if(draining) {
+            if(inFlight.decrementAndGet() == 0) {
+                signal();
+            }
+            return false;
+        }
+        else {
+            return true;
+        }
+    }
+
+    /**
+     * Record that a request that was allowed to {@link #enter()} has
+     * completed.
+     */
+    void exit() {
+        int running = inFlight.decrementAndGet();
+        if(draining) {
+            drained.incrementAndGet();
+            if(running == 0) {
+                signal();
+            }
+        }
+    }
+
+    /**
+     * Wake up any thread that is waiting for the drain to complete.
+     */
+    private void signal() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+}
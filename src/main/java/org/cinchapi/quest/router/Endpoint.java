@@ -23,13 +23,32 @@
  */
 package org.cinchapi.quest.router;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+
+import javax.annotation.Nullable;
+
+import org.cinchapi.quest.trace.Span;
+import org.cinchapi.quest.util.Cbor;
 import org.cinchapi.quest.util.Exceptions;
 
 import spark.HaltException;
+import spark.Request;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * An {@link Endpoint} is processed by a {@link Router} in order to return a
@@ -44,6 +63,17 @@ import com.google.gson.JsonObject;
  * </li>
  * </ul>
  * </p>
+ * <p>
+ * Clients that prefer {@value Cbor#MEDIA_TYPE} in their {@code Accept} header
+ * get the same response encoded as CBOR instead, which is more compact and
+ * cheaper to parse. Likewise, {@link #getRequestBody()} decodes a request
+ * body that is sent as CBOR.
+ * </p>
+ * <p>
+ * Clients can ask for only part of the payload using the
+ * {@value Projection#PARAM} query parameter, which is described by the
+ * {@link Projection}.
+ * </p>
  * 
  * @author jnelson
  */
@@ -65,6 +95,197 @@ public abstract class Endpoint extends AbstractRewritableRoute {
      */
     private static String STATUS_FAILED = "failed";
 
+    /**
+     * The encoded start of the response for a request that succeeded, up to
+     * the payload.
+     */
+    static final byte[] SUCCESS_PREFIX = ("{\"status\":\""
+            + STATUS_SUCCESS + "\",\"payload\":").getBytes(Charsets.UTF_8);
+
+    /**
+     * The encoded start of the response for a request that failed, up to the
+     * payload.
+     */
+    static final byte[] FAILED_PREFIX = ("{\"status\":\""
+            + STATUS_FAILED + "\",\"payload\":").getBytes(Charsets.UTF_8);
+
+    /**
+     * The encoded end of every JSON response.
+     */
+    private static final int SUFFIX = '}';
+
+    /**
+     * The CBOR encoded start of the response for a request that succeeded, up
+     * to the payload.
+     */
+    private static final byte[] CBOR_SUCCESS_PREFIX = cborPrefix(STATUS_SUCCESS);
+
+    /**
+     * The CBOR encoded start of the response for a request that failed, up to
+     * the payload.
+     */
+    private static final byte[] CBOR_FAILED_PREFIX = cborPrefix(STATUS_FAILED);
+
+    /**
+     * The media type for JSON.
+     */
+    private static final String JSON_MEDIA_TYPE = "application/json";
+
+    /**
+     * The decoded body of each request, which is read at most once.
+     */
+    private static final RequestLocal<JsonElement> BODY = new RequestLocal<JsonElement>() {
+
+        @Override
+        protected JsonElement initialValue(Request request) {
+            String type = request.contentType();
+            try {
+                PushbackInputStream in = new PushbackInputStream(request
+                        .raw().getInputStream());
+                int first = in.read();
+                if(first < 0) {
+                    return NO_DATA;
+                }
+                in.unread(first);
+                if(type != null
+                        && mediaType(type).equalsIgnoreCase(Cbor.MEDIA_TYPE)) {
+                    return Cbor.read(in);
+                }
+                else {
+                    JsonElement body = new JsonParser()
+                            .parse(new InputStreamReader(in, Charsets.UTF_8));
+                    return body.isJsonNull() ? NO_DATA : body;
+                }
+            }
+            catch (JsonParseException | EOFException e) {
+                halt(400, "The request body is malformed: "
+                        + Exceptions.getMessage(e));
+                return null;
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+    };
+
+    /**
+     * The {@link Projection} that each request asked for.
+     */
+    private static final RequestLocal<Projection> PROJECTION = new RequestLocal<Projection>() {
+
+        @Override
+        protected Projection initialValue(Request request) {
+            return Projection.parse(request.queryParams(Projection.PARAM));
+        }
+
+    };
+
+    /**
+     * Return {@code true} if the {@code accept} header prefers CBOR over JSON.
+     * The quality of each media type comes from the most specific range that
+     * matches it and, at equal quality, a type that is named explicitly wins
+     * over one that only matches a wildcard. JSON is preferred otherwise.
+     * 
+     * @param accept
+     * @return {@code true} if the response should be encoded as CBOR
+     */
+    static boolean prefersCbor(@Nullable String accept) {
+        if(accept == null || !mentionsCbor(accept)) {
+            return false;
+        }
+        float jsonQuality = 0, cborQuality = 0;
+        int jsonSpecificity = -1, cborSpecificity = -1;
+        for (String range : accept.split(",")) {
+            String type = mediaType(range).toLowerCase();
+            float quality = 1;
+            for (String param : range.split(";")) {
+                param = param.trim();
+                if(param.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(param.substring(2));
+                    }
+                    catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            int specificity = type.equals("*/*") ? 0 : type
+                    .equals("application/*") ? 1 : 2;
+            if((specificity < 2 || type.equals(JSON_MEDIA_TYPE))
+                    && specificity > jsonSpecificity) {
+                jsonSpecificity = specificity;
+                jsonQuality = quality;
+            }
+            if((specificity < 2 || type.equals(Cbor.MEDIA_TYPE))
+                    && specificity > cborSpecificity) {
+                cborSpecificity = specificity;
+                cborQuality = quality;
+            }
+        }
+        return cborQuality > 0
+                && (cborQuality > jsonQuality || (cborQuality == jsonQuality
+                        && cborSpecificity > jsonSpecificity));
+    }
+
+    /**
+     * Return the encoded start of a CBOR response with the {@code status}, up
+     * to the payload.
+     * 
+     * @param status
+     * @return the prefix
+     */
+    private static byte[] cborPrefix(String status) {
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        try {
+            prefix.write(0xa2); // a map with two pairs
+            Cbor.writeText("status", prefix);
+            Cbor.writeText(status, prefix);
+            Cbor.writeText("payload", prefix);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return prefix.toByteArray();
+    }
+
+    /**
+     * Return the media type in a content type or media range, without any
+     * parameters.
+     * 
+     * @param value
+     * @return the media type
+     */
+    private static String mediaType(String value) {
+        int semicolon = value.indexOf(';');
+        return (semicolon < 0 ? value : value.substring(0, semicolon)).trim();
+    }
+
+    /**
+     * Return {@code true} if any media range in the {@code accept} header has
+     * the {@code cbor} subtype, ignoring case, without allocating anything.
+     * This lets {@link #prefersCbor(String)} skip parsing the header of a
+     * request that can't prefer CBOR.
+     * 
+     * @param accept
+     * @return {@code true} if CBOR is mentioned
+     */
+    private static boolean mentionsCbor(String accept) {
+        for (int i = accept.indexOf('/'); i >= 0; i = accept.indexOf('/',
+                i + 1)) {
+            if(accept.regionMatches(true, i + 1, "cbor", 0, 4)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serializes payloads exactly like {@link JsonElement#toString()} does.
+     */
+    private static final Gson GSON = new GsonBuilder().serializeNulls()
+            .disableHtmlEscaping().create();
+
     /**
      * Construct a new instance.
      * 
@@ -76,21 +297,126 @@ public abstract class Endpoint extends AbstractRewritableRoute {
 
     @Override
     public final Object handle() {
-        JsonObject json = new JsonObject();
+        boolean cbor = prefersCbor(request.headers("Accept"));
+        byte[] prefix;
+        JsonElement payload;
+        Projection projection = Projection.ALL;
+        Deadline deadline = getDeadline();
         try {
-            json.addProperty("status", STATUS_SUCCESS);
-            json.add("payload", serve());
+            deadline.check();
+            Span span = startSpan("serve");
+            deadline.arm();
+            try {
+                payload = serve();
+            }
+            finally {
+                deadline.disarm();
+                span.close();
+            }
+            deadline.check();
+            prefix = cbor ? CBOR_SUCCESS_PREFIX : SUCCESS_PREFIX;
+            projection = getProjection();
         }
         catch (HaltException e) {
             throw e;
         }
         catch (Exception e) {
+            if(deadline.isExpired()) {
+                e = new DeadlineExceededException();
+                this.response.status(504);
+            }
+            prefix = cbor ? CBOR_FAILED_PREFIX : FAILED_PREFIX;
+            payload = new JsonPrimitive(Exceptions.getMessage(e));
+        }
+        this.response.type(cbor ? Cbor.MEDIA_TYPE : JSON_MEDIA_TYPE);
+        this.response.header("Vary", "Accept");
+        Span span = startSpan("serialize");
+        try {
+            return cbor ? serializeCbor(prefix, payload, projection)
+                    : serialize(prefix, payload, projection);
+        }
+        finally {
+            span.close();
+        }
+    }
 
-            json.addProperty("status", STATUS_FAILED);
-            json.addProperty("payload", Exceptions.getMessage(e));
+    /**
+     * Return the encoded response that wraps the {@code payload}. The
+     * constant parts of the response are copied from pre-encoded fragments,
+     * so only the payload is actually serialized. The result is byte for
+     * byte the same as serializing a {@link JsonObject} with
+     * {@code status} and {@code payload} members.
+     * 
+     * @param prefix
+     * @param payload
+     * @param projection
+     * @return the response body
+     */
+    static ResponseBody serialize(byte[] prefix,
+            @Nullable JsonElement payload, Projection projection) {
+        ResponseBody body = ResponseBody.acquire();
+        body.write(prefix, 0, prefix.length);
+        JsonWriter writer = new JsonWriter(body.writer());
+        try {
+            projection.writeJson(payload != null ? payload
+                    : JsonNull.INSTANCE, writer, GSON);
+            writer.flush();
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e); // never happens
+        }
+        body.write(SUFFIX);
+        return body;
+    }
+
+    /**
+     * Return the CBOR encoded response that wraps the {@code payload}. Like
+     * {@link #serialize(byte[], JsonElement, Projection)}, the constant parts of the
+     * response are copied from pre-encoded fragments and the payload is
+     * encoded straight from the {@link JsonElement}.
+     * 
+     * @param prefix
+     * @param payload
+     * @param projection
+     * @return the response body
+     */
+    private static ResponseBody serializeCbor(byte[] prefix,
+            @Nullable JsonElement payload, Projection projection) {
+        ResponseBody body = ResponseBody.acquire();
+        body.write(prefix, 0, prefix.length);
+        try {
+            projection.writeCbor(payload, body);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e); // never happens
         }
-        this.response.type("application/json");
-        return json;
+        return body;
+    }
+
+    /**
+     * Return the {@link Projection} that the client asked for using the
+     * {@value Projection#PARAM} query parameter. The projection is applied to
+     * the payload that {@link #serve()} returns, but it can also be used to
+     * skip computing data that won't be returned (i.e.
+     * {@code getProjection().includes("comments")}).
+     * 
+     * @return the projection
+     */
+    protected final Projection getProjection() {
+        return PROJECTION.get(request);
+    }
+
+    /**
+     * Return the body of the request being processed, decoded from CBOR if
+     * the request has the {@value Cbor#MEDIA_TYPE} content type and from JSON
+     * otherwise. The body is only read once, so this method returns the same
+     * element each time it is called for a request. If the body is
+     * malformed, the request is halted with a 400.
+     * 
+     * @return the request body or {@link #NO_DATA} if it is empty
+     */
+    protected final JsonElement getRequestBody() {
+        return BODY.get(request);
     }
 
     /**
@@ -101,6 +427,12 @@ public abstract class Endpoint extends AbstractRewritableRoute {
      * an Exception and the Router will wrap that in the appropriate response to
      * the caller.
      * </p>
+     * <p>
+     * If the request has a {@link #getDeadline() deadline}, the thread that
+     * calls this method is interrupted when the deadline passes and the
+     * caller is told that the request timed out, regardless of what this
+     * method eventually returns.
+     * </p>
      * 
      * @return the payload
      * @throws Exception
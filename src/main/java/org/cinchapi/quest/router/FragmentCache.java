@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * The {@link FragmentCache} holds rendered fragments of {@link View} pages,
+ * like navigation, footers or product cards, that are identical across many
+ * requests, so that only the dynamic parts of a page are rendered for each
+ * request.
+ * <p>
+ * Fragments are cached under a key that is provided by the view, which must
+ * capture everything that makes the fragment differ (i.e.
+ * {@code "product-card:" + id}), and expire after a time-to-live that is set
+ * for each fragment. The cache is bounded by the total size of the fragments
+ * it holds and evicts the least recently used ones when it is full. Use
+ * {@link View#fragment(String, long, java.util.concurrent.TimeUnit, String, Callable)}
+ * to cache part of a page.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class FragmentCache {
+
+    /**
+     * The default maximum size, in bytes, of all the cached fragments.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * The cache that holds the fragments.
+     */
+    private static volatile Cache<String, Fragment> cache = build(DEFAULT_MAXIMUM_SIZE);
+
+    /**
+     * The number of times a cached fragment was used.
+     */
+    private static final AtomicLong hits = new AtomicLong(0);
+
+    /**
+     * The number of times a fragment had to be rendered.
+     */
+    private static final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Return the number of times a cached fragment was used.
+     * 
+     * @return the hit count
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of times a fragment had to be rendered.
+     * 
+     * @return the miss count
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Remove the fragment with the {@code key} from the cache, so that it is
+     * rendered again the next time it is needed.
+     * 
+     * @param key
+     */
+    public static void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Remove all the fragments from the cache.
+     */
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Replace the cache with an empty one that holds at most {@code bytes}
+     * worth of fragments.
+     * 
+     * @param bytes
+     */
+    public static void setMaximumSize(long bytes) {
+        cache = build(bytes);
+    }
+
+    /**
+     * Return the number of fragments in the cache.
+     * 
+     * @return the size
+     */
+    public static long size() {
+        return cache.size();
+    }
+
+    /**
+     * Return the fragment with the {@code key}, using the {@code renderer} to
+     * render and cache it for {@code ttl} nanoseconds if it is not cached or
+     * has expired. Concurrent requests for the same missing fragment wait for
+     * a single rendering.
+     * 
+     * @param key
+     * @param ttl
+     * @param renderer
+     * @return the fragment
+     */
+    static String get(String key, final long ttl,
+            final Callable<String> renderer) {
+        Cache<String, Fragment> cache = FragmentCache.cache;
+        Fragment fragment = cache.asMap().get(key);
+        if(fragment != null && fragment.isExpired()) {
+            cache.asMap().remove(key, fragment);
+        }
+        try {
+            return cache.get(key, new Callable<Fragment>() {
+
+                @Override
+                public Fragment call() throws Exception {
+                    misses.incrementAndGet();
+                    return new Fragment(renderer.call(), System.nanoTime()
+                            + ttl);
+                }
+
+            }).content;
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Return the fragment with the {@code key} if it is cached and has not
+     * expired.
+     * 
+     * @param key
+     * @return the fragment or {@code null}
+     */
+    @Nullable
+    static String getIfPresent(String key) {
+        Fragment fragment = cache.asMap().get(key);
+        if(fragment != null && !fragment.isExpired()) {
+            hits.incrementAndGet();
+            return fragment.content;
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Return a new cache that holds at most {@code bytes} worth of
+     * fragments.
+     * 
+     * @param bytes
+     * @return the cache
+     */
+    private static Cache<String, Fragment> build(long bytes) {
+        return CacheBuilder.newBuilder().maximumWeight(bytes)
+                .weigher(new Weigher<String, Fragment>() {
+
+                    @Override
+                    public int weigh(String key, Fragment fragment) {
+                        return 2 * (key.length() + fragment.content.length());
+                    }
+
+                }).build();
+    }
+
+    private FragmentCache() {/* noop */}
+
+    /**
+     * A rendered fragment and the time at which it expires.
+     * 
+     * @author jnelson
+     */
+    private static final class Fragment {
+
+        /**
+         * The rendered content.
+         */
+        final String content;
+
+        /**
+         * The {@link System#nanoTime()} at which the fragment expires.
+         */
+        final long expiresAt;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param content
+         * @param expiresAt
+         */
+        Fragment(String content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Return {@code true} if this fragment has expired.
+         * 
+         * @return {@code true} if expired
+         */
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.cinchapi.quest.util.Cbor;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A {@link Projection} selects the parts of an {@link Endpoint} payload that a
+ * client asked for using the {@value #PARAM} query parameter, so that clients
+ * which only use a few fields of a large payload don't have to receive the
+ * rest.
+ * <p>
+ * The parameter is a comma separated list of paths, where each path is a
+ * sequence of member names separated by {@code /} like a JSON pointer (with
+ * {@code ~1} for {@code /} and {@code ~0} for {@code ~} within a name). A path
+ * that starts with {@code -} is excluded. If any path is included, only the
+ * included paths are returned, otherwise everything but the excluded paths
+ * is returned. Paths pass through arrays, so {@code items/name} selects the
+ * name of each item:
+ * 
+ * <pre>
+ * /api/orders?fields=id,items/name,items/price
+ * /api/orders?fields=-items/history
+ * </pre>
+ * 
+ * </p>
+ * <p>
+ * The projection is applied while the payload is serialized, so excluded
+ * members are skipped without building a filtered copy of the payload. Use
+ * {@link Endpoint#getProjection()} and {@link #includes(String)} in
+ * {@link Endpoint#serve()} to avoid computing data that won't be returned at
+ * all.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Projection {
+
+    /**
+     * The query parameter that specifies the projection.
+     */
+    public static final String PARAM = "fields";
+
+    /**
+     * The {@link Projection} that includes everything.
+     */
+    public static final Projection ALL = new Projection(false);
+
+    /**
+     * Splits the paths in the {@value #PARAM} parameter.
+     */
+    private static final Splitter PATHS = Splitter.on(',').trimResults()
+            .omitEmptyStrings();
+
+    /**
+     * Splits the names in a path.
+     */
+    private static final Splitter NAMES = Splitter.on('/').omitEmptyStrings();
+
+    /**
+     * Return the {@link Projection} that is described by the value of the
+     * {@value #PARAM} parameter.
+     * 
+     * @param fields
+     * @return the projection
+     */
+    public static Projection parse(@Nullable String fields) {
+        if(fields == null || fields.trim().isEmpty()) {
+            return ALL;
+        }
+        Iterable<String> paths = PATHS.split(fields);
+        Projection root = new Projection(false);
+        for (String path : paths) {
+            if(!path.startsWith("-")) {
+                root.select = true;
+                root.include(NAMES.split(path).iterator());
+            }
+        }
+        for (String path : paths) {
+            if(path.startsWith("-")) {
+                root.exclude(NAMES.split(path.substring(1)).iterator());
+            }
+        }
+        return root.select || !root.children.isEmpty() ? root : ALL;
+    }
+
+    /**
+     * Return the member name in a path segment, with any escapes replaced.
+     * 
+     * @param segment
+     * @return the name
+     */
+    private static String unescape(String segment) {
+        return segment.indexOf('~') < 0 ? segment : segment.replace("~1",
+                "/").replace("~0", "~");
+    }
+
+    /**
+     * A flag that indicates whether only the {@link #children} are included,
+     * as opposed to every member except the excluded ones.
+     */
+    private boolean select;
+
+    /**
+     * A flag that indicates whether this member is excluded.
+     */
+    private boolean excluded = false;
+
+    /**
+     * The projections of the members that were named in a path.
+     */
+    private Map<String, Projection> children = Collections.emptyMap();
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param select
+     */
+    private Projection(boolean select) {
+        this.select = select;
+    }
+
+    /**
+     * Return {@code true} if any part of the member at {@code path}, which is
+     * a sequence of names separated by {@code /}, is included in the
+     * projection. Arrays are transparent, so a path never contains an index.
+     * 
+     * @param path
+     * @return {@code true} if the member is included
+     */
+    public boolean includes(String path) {
+        Projection projection = this;
+        for (String name : NAMES.split(path)) {
+            projection = projection.child(unescape(name));
+            if(projection == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return {@code true} if this projection includes everything.
+     * 
+     * @return {@code true} if nothing is filtered out
+     */
+    public boolean isAll() {
+        return !select && children.isEmpty();
+    }
+
+    /**
+     * Return the projection of the member with the {@code name} or
+     * {@code null} if the member is not included.
+     * 
+     * @param name
+     * @return the member's projection or {@code null}
+     */
+    @Nullable
+    Projection child(String name) {
+        Projection child = children.get(name);
+        if(child == null) {
+            return select ? null : ALL;
+        }
+        else {
+            return child.excluded ? null : child;
+        }
+    }
+
+    /**
+     * Write the {@code element}, as projected, to the {@code out} stream as
+     * CBOR.
+     * 
+     * @param element
+     * @param out
+     * @throws IOException
+     */
+    void writeCbor(@Nullable JsonElement element, OutputStream out)
+            throws IOException {
+        if(isAll() || element == null) {
+            Cbor.write(element, out);
+        }
+        else if(element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            int size = 0;
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                if(child(entry.getKey()) != null) {
+                    ++size;
+                }
+            }
+            Cbor.writeMapHeader(size, out);
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                Projection child = child(entry.getKey());
+                if(child != null) {
+                    Cbor.writeText(entry.getKey(), out);
+                    child.writeCbor(entry.getValue(), out);
+                }
+            }
+        }
+        else if(element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            Cbor.writeArrayHeader(array.size(), out);
+            for (JsonElement item : array) {
+                writeCbor(item, out);
+            }
+        }
+        else {
+            Cbor.write(element, out);
+        }
+    }
+
+    /**
+     * Write the {@code element}, as projected, to the {@code writer} using
+     * {@code gson} for the parts that are included in full.
+     * 
+     * @param element
+     * @param writer
+     * @param gson
+     * @throws IOException
+     */
+    void writeJson(JsonElement element, JsonWriter writer, Gson gson)
+            throws IOException {
+        if(isAll()) {
+            gson.toJson(element, writer);
+        }
+        else if(element.isJsonObject()) {
+            writer.beginObject();
+            for (Map.Entry<String, JsonElement> entry : element
+                    .getAsJsonObject().entrySet()) {
+                Projection child = child(entry.getKey());
+                if(child != null) {
+                    writer.name(entry.getKey());
+                    child.writeJson(entry.getValue(), writer, gson);
+                }
+            }
+            writer.endObject();
+        }
+        else if(element.isJsonArray()) {
+            writer.beginArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                writeJson(item, writer, gson);
+            }
+            writer.endArray();
+        }
+        else {
+            gson.toJson(element, writer);
+        }
+    }
+
+    /**
+     * Return the projection of the member with the {@code name}, creating it
+     * if necessary.
+     * 
+     * @param name
+     * @param select
+     * @return the member's projection
+     */
+    private Projection create(String name, boolean select) {
+        if(children.isEmpty()) {
+            children = Maps.newHashMap();
+        }
+        Projection child = children.get(name);
+        if(child == null) {
+            child = new Projection(select);
+            children.put(name, child);
+        }
+        return child;
+    }
+
+    /**
+     * Exclude the member at the path with the remaining {@code names}.
+     * 
+     * @param names
+     */
+    private void exclude(Iterator<String> names) {
+        Projection projection = this;
+        while (names.hasNext()) {
+            String name = unescape(names.next());
+            if(projection.select && !projection.children.containsKey(name)) {
+                return; // the member isn't included anyway
+            }
+            projection = projection.create(name, false);
+        }
+        if(projection != this) {
+            projection.excluded = true;
+        }
+    }
+
+    /**
+     * Include the member at the path with the remaining {@code names} in
+     * full.
+     * 
+     * @param names
+     */
+    private void include(Iterator<String> names) {
+        Projection projection = this;
+        while (names.hasNext()) {
+            if(!projection.select) {
+                return; // an enclosing member is already included in full
+            }
+            projection = projection.create(unescape(names.next()), true);
+        }
+        projection.select = false;
+        projection.children = Collections.emptyMap();
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import spark.Request;
+
+/**
+ * A {@link RequestLocal} is a type-safe key for a value that is scoped to a
+ * single request. It is the request analog of a {@link ThreadLocal}: each
+ * request sees its own value and that value is discarded when the request
+ * ends.
+ * <p>
+ * Values are typically shared between a {@link Routine} and the
+ * {@link Endpoint} or {@link View} that serves the request. Override
+ * {@link #initialValue(Request)} to lazily derive a value the first time it
+ * is requested, in which case the derivation runs at most once per request
+ * regardless of how many stages ask for it:
+ * 
+ * <pre>
+ * public static final RequestLocal&lt;String&gt; FINGERPRINT = new RequestLocal&lt;String&gt;() {
+ * 
+ *     protected String initialValue(Request request) {
+ *         return Requests.getClientFingerprint(request);
+ *     }
+ * 
+ * };
+ * </pre>
+ * 
+ * </p>
+ * 
+ * @author jnelson
+ */
+public class RequestLocal<T> {
+
+    /**
+     * The name of the request attribute that holds the values for every
+     * {@link RequestLocal}.
+     */
+    private static final String STORE_ATTRIBUTE = RequestLocal.class
+            .getName();
+
+    /**
+     * A placeholder that is stored when a {@link RequestLocal} has a
+     * {@code null} value so that it isn't computed again.
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * Make sure that the {@code request} has storage for request local
+     * values. This is called before any stage of the request runs, so that
+     * later stages never race to create the storage.
+     * 
+     * @param request
+     */
+    static void attach(Request request) {
+        store(request);
+    }
+
+    /**
+     * Return the storage for the request local values of the {@code request},
+     * creating it if necessary.
+     * 
+     * @param request
+     * @return the storage
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<RequestLocal<?>, Object> store(Request request) {
+        Map<RequestLocal<?>, Object> store = (Map<RequestLocal<?>, Object>) request
+                .raw().getAttribute(STORE_ATTRIBUTE);
+        if(store == null) {
+            store = new IdentityHashMap<RequestLocal<?>, Object>();
+            request.raw().setAttribute(STORE_ATTRIBUTE, store);
+        }
+        return store;
+    }
+
+    /**
+     * Return the value of this {@link RequestLocal} for the {@code request}.
+     * If no value has been {@link #set(Request, Object) set}, it is computed
+     * using {@link #initialValue(Request)}.
+     * 
+     * @param request
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    public T get(Request request) {
+        Map<RequestLocal<?>, Object> store = store(request);
+        synchronized (store) {
+            Object value = store.get(this);
+            if(value == null) {
+                value = initialValue(request);
+                store.put(this, value == null ? NULL : value);
+            }
+            return value == NULL ? null : (T) value;
+        }
+    }
+
+    /**
+     * Remove the value of this {@link RequestLocal} for the {@code request},
+     * so that it is computed again if it is subsequently requested.
+     * 
+     * @param request
+     */
+    public void remove(Request request) {
+        Map<RequestLocal<?>, Object> store = store(request);
+        synchronized (store) {
+            store.remove(this);
+        }
+    }
+
+    /**
+     * Set the value of this {@link RequestLocal} for the {@code request}.
+     * 
+     * @param request
+     * @param value
+     */
+    public void set(Request request, T value) {
+        Map<RequestLocal<?>, Object> store = store(request);
+        synchronized (store) {
+            store.put(this, value == null ? NULL : value);
+        }
+    }
+
+    /**
+     * Return the value of this {@link RequestLocal} for a {@code request} that
+     * has not {@link #set(Request, Object) set} one. By default, this method
+     * returns {@code null}.
+     * 
+     * @param request
+     * @return the initial value
+     */
+    protected T initialValue(Request request) {
+        return null;
+    }
+
+}
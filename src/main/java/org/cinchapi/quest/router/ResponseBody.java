@@ -0,0 +1,275 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Throwables;
+
+/**
+ * A {@link ResponseBody} holds content that has already been encoded as UTF-8,
+ * so that it can be written to the response without being copied into a
+ * {@link String} and encoded again.
+ * <p>
+ * A route returns a body instead of a {@link String} and the
+ * {@link RouteTable} writes it to the response once all the routines have
+ * run.
+ * </p>
+ * <p>
+ * Bodies are pooled per thread: a body is {@link #acquire() acquired} by the
+ * thread that serves a request and {@link #release() released} once it has
+ * been written, so that steady state request handling reuses the same
+ * buffer. A buffer that grew beyond {@value #MAX_RETAINED_CAPACITY} bytes to
+ * hold a large response is dropped on release instead of being retained
+ * forever.
+ * </p>
+ * 
+ * @author jnelson
+ */
+final class ResponseBody extends ByteArrayOutputStream {
+
+    /**
+     * The number of bytes that are initially allocated for each body.
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * The largest buffer that is retained for reuse when a body is released.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    /**
+     * The body that each thread can reuse or {@code null} if it is in use.
+     */
+    private static final ThreadLocal<ResponseBody> pool = new ThreadLocal<ResponseBody>();
+
+    /**
+     * Return an empty body for the current thread to fill, reusing a
+     * previously {@link #release() released} one if possible.
+     * 
+     * @return the body
+     */
+    static ResponseBody acquire() {
+        ResponseBody body = pool.get();
+        if(body != null) {
+            pool.set(null);
+            return body;
+        }
+        else {
+            return new ResponseBody();
+        }
+    }
+
+    /**
+     * Construct a new instance.
+     */
+    private ResponseBody() {
+        super(INITIAL_CAPACITY);
+    }
+
+    /**
+     * The writer that encodes characters into this body or {@code null} if
+     * it hasn't been created.
+     */
+    @Nullable
+    private Writer writer = null;
+
+    /**
+     * A high surrogate that was written without its low surrogate, which is
+     * expected to be the next character written.
+     */
+    private char pendingHighSurrogate = 0;
+
+    /**
+     * Return the number of bytes in this body.
+     * 
+     * @return the length
+     */
+    int length() {
+        return count;
+    }
+
+    /**
+     * Return the decoded content of this body.
+     * 
+     * @return the content
+     */
+    @Override
+    public synchronized String toString() {
+        try {
+            return toString("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Empty this body and make it available for reuse by the current thread.
+     * The body must not be used after it is released.
+     */
+    void release() {
+        reset();
+        pendingHighSurrogate = 0;
+        if(buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[INITIAL_CAPACITY];
+        }
+        pool.set(this);
+    }
+
+    /**
+     * Return a {@link Writer} that encodes characters as UTF-8 directly into
+     * this body. Unlike an {@link java.io.OutputStreamWriter}, the writer
+     * does not need an intermediate buffer, so it does not allocate anything
+     * beyond the growth of this body.
+     * 
+     * @return the writer
+     */
+    Writer writer() {
+        if(writer == null) {
+            writer = new Writer() {
+
+                @Override
+                public void close() {}
+
+                @Override
+                public void flush() {}
+
+                @Override
+                public void write(char[] chars, int offset, int length) {
+                    ensureCapacity(count + 3 * length + 1);
+                    for (int i = offset; i < offset + length; ++i) {
+                        encode(chars[i]);
+                    }
+                }
+
+                @Override
+                public void write(int c) {
+                    ensureCapacity(count + 4);
+                    encode((char) c);
+                }
+
+                @Override
+                public void write(String string, int offset, int length) {
+                    encode(string, offset, length);
+                }
+
+            };
+        }
+        return writer;
+    }
+
+    /**
+     * Write this body to the {@code response}.
+     * 
+     * @param response
+     */
+    void writeTo(HttpServletResponse response) {
+        try {
+            response.setContentLength(count);
+            response.getOutputStream().write(buf, 0, count);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Encode {@code length} characters from {@code chars}, starting at
+     * {@code offset}, into this body.
+     * 
+     * @param chars
+     * @param offset
+     * @param length
+     */
+    private void encode(String chars, int offset, int length) {
+        // Each char takes at most 3 bytes, except for a pending high surrogate
+        // that takes 4 along with its low surrogate
+        ensureCapacity(count + 3 * length + 1);
+        for (int i = offset; i < offset + length; ++i) {
+            encode(chars.charAt(i));
+        }
+    }
+
+    /**
+     * Encode the character {@code c} into this body, which must have enough
+     * capacity.
+     * 
+     * @param c
+     */
+    private void encode(char c) {
+        if(pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if(Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            else {
+                buf[count++] = '?';
+            }
+        }
+        if(c < 0x80) {
+            buf[count++] = (byte) c;
+        }
+        else if(c < 0x800) {
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+        else if(Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        }
+        else if(Character.isLowSurrogate(c)) {
+            buf[count++] = '?';
+        }
+        else {
+            buf[count++] = (byte) (0xE0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Make sure that this body can hold at least {@code capacity} bytes.
+     * 
+     * @param capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if(capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+        }
+    }
+
+}
@@ -23,11 +23,7 @@
  */
 package org.cinchapi.quest.router;
 
-import java.lang.reflect.Field;
-
-import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.google.common.base.Throwables;
 
 import spark.Response;
 import spark.Request;
@@ -52,6 +48,26 @@ import spark.template.mustache.MustacheTemplateRoute;
 // classes.
 public abstract class RewritableRoute extends MustacheTemplateRoute {
 
+    /**
+     * Return the {@code path} that results from prepending the
+     * {@code namespace}. The {@code path} is returned as is if the
+     * {@code namespace} is empty or the index.
+     * 
+     * @param namespace
+     * @param path
+     * @return the rewritten path
+     */
+    static String rewrite(String namespace, String path) {
+        if(!Strings.isNullOrEmpty(namespace)
+                && !namespace.equalsIgnoreCase("index")) {
+            path = path.startsWith("/") ? path : "/" + path;
+            return namespace.toLowerCase() + path;
+        }
+        else {
+            return path;
+        }
+    }
+
     /**
      * The {@link Request} object that is associated with this {@link Route}.
      * While this object is accessible to subclasses, caution should be
@@ -66,6 +82,14 @@ public abstract class RewritableRoute extends MustacheTemplateRoute {
      */
     protected Response response;
 
+    /**
+     * The path that describes this route, which starts out as the relative
+     * path and is {@link #prepend(String) rewritten} by the {@link Router}.
+     * The {@link RouteTable} registers routes using this path, so the path
+     * that is held by the underlying {@link Route} is never consulted.
+     */
+    private String path;
+
     /**
      * Construct a new instance.
      * 
@@ -73,6 +97,7 @@ public abstract class RewritableRoute extends MustacheTemplateRoute {
      */
     protected RewritableRoute(String relativePath) {
         super(relativePath);
+        this.path = relativePath;
     }
 
     /**
@@ -81,24 +106,7 @@ public abstract class RewritableRoute extends MustacheTemplateRoute {
      * @return the path
      */
     protected String getRoutePath() {
-        try {
-            Class<?> parent = this.getClass().getSuperclass();
-            Field field = null;
-            while (field == null && parent != Object.class) {
-                try {
-                    field = parent.getDeclaredField("path");
-                }
-                catch (NoSuchFieldException e) {
-                    parent = parent.getSuperclass();
-                }
-            }
-            Preconditions.checkState(field != null);
-            field.setAccessible(true);
-            return (String) field.get(this);
-        }
-        catch (ReflectiveOperationException e) {
-            throw Throwables.propagate(e);
-        }
+        return path;
     }
 
     /**
@@ -108,31 +116,6 @@ public abstract class RewritableRoute extends MustacheTemplateRoute {
      * @param namespace
      */
     protected void prepend(String namespace) {
-        if(!Strings.isNullOrEmpty(namespace)
-                && !namespace.equalsIgnoreCase("index")) {
-            namespace = namespace.toLowerCase();
-            try {
-                Class<?> parent = this.getClass().getSuperclass();
-                Field field = null;
-                while (field == null && parent != Object.class) {
-                    try {
-                        field = parent.getDeclaredField("path");
-                    }
-                    catch (NoSuchFieldException e) {
-                        parent = parent.getSuperclass();
-                    }
-                }
-                Preconditions.checkState(field != null);
-                field.setAccessible(true);
-                String path = (String) field.get(this);
-                path = path.startsWith("/") ? path : "/" + path;
-                path = namespace + path;
-                field.set(this, path);
-            }
-            catch (ReflectiveOperationException e) {
-                throw Throwables.propagate(e);
-            }
-        }
-
+        path = rewrite(namespace, path);
     }
 }
@@ -0,0 +1,1387 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cinchapi.quest.log.AccessLog;
+import org.cinchapi.quest.router.Router.Binding;
+import org.cinchapi.quest.router.Router.Hook;
+import org.cinchapi.quest.router.Router.Limit;
+import org.cinchapi.quest.router.Router.Timeout;
+import org.cinchapi.quest.router.Router.Warmup;
+import org.cinchapi.quest.trace.FlightRecorder;
+import org.cinchapi.quest.trace.Span;
+import org.cinchapi.quest.trace.Trace;
+import org.cinchapi.quest.trace.Tracer;
+import org.cinchapi.quest.util.Requests;
+import org.cinchapi.quest.util.Utf8;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.HaltException;
+import spark.Request;
+import spark.RequestResponseFactory;
+import spark.Response;
+import spark.Route;
+import spark.Spark;
+import spark.route.HttpMethod;
+import spark.route.RouteMatch;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A {@link RouteTable} is the compiled form of all the routes and
+ * {@link Routine routines} that are defined across a collection of
+ * {@link Router routers}.
+ * <p>
+ * When the table is compiled, each route is resolved against every routine
+ * so that it holds an ordered array of the before and after routines that
+ * apply to it. As a result, serving a request never requires pattern matching
+ * routines against the request path and only the routines that actually apply
+ * to the route are run.
+ * </p>
+ * <h2>Ordering</h2>
+ * <p>
+ * Routines with a higher priority run before those with a lower priority.
+ * Routines with the same priority run in the order they were defined, and
+ * routines from different routers are ordered by the name of the router class
+ * so that the order never depends on classpath scanning.
+ * </p>
+ * <h2>Publishing</h2>
+ * <p>
+ * The embedded web server only ever sees a thin dispatch route for each
+ * distinct verb and path, followed by a catch-all dispatch route for each
+ * verb. Those dispatch routes resolve their {@link Entry} from the live table
+ * of the application's {@link Dispatcher} on each request, so a newly
+ * compiled table can be {@link #publish(Dispatcher) published} with a single
+ * volatile swap while the server socket, worker threads and any warm caches
+ * stay intact. A request whose dispatch route is not in the live table,
+ * because a reload changed or added a path, is matched against the table's
+ * paths instead. Requests that are already in flight complete against the
+ * table in which they started.
+ * </p>
+ * <p>
+ * A table can also be {@link Dispatcher#activate(RouteTable) activated} and
+ * {@link Dispatcher#serve(HttpServletRequest, HttpServletResponse) served}
+ * directly by any web server, without going through the embedded one, which
+ * is how an application runs on its own
+ * {@link org.cinchapi.quest.server.ServerEngine ServerEngine}.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class RouteTable {
+
+    /**
+     * Compile the routes and routines that were defined in each of the
+     * {@code routers} into a {@link RouteTable}. Each router must already have
+     * had its {@link Router#routes()} method called.
+     * 
+     * @param routers
+     * @return the compiled {@link RouteTable}
+     */
+    public static RouteTable compile(Collection<? extends Router> routers) {
+        return compile(routers,
+                Collections.<Class<? extends Router>, Exception> emptyMap(),
+                null);
+    }
+
+    /**
+     * Compile the routes and routines defined in each of the {@code routers}
+     * into a new {@link RouteTable}, remembering the {@code failures} of any
+     * routers that could not be loaded so that they can be reported.
+     * <p>
+     * The routes in each namespace are served within the {@link Bulkhead}
+     * that a router in the namespace assigned or, if there is none, the one
+     * that {@code bulkheads} returns for the namespace.
+     * </p>
+     * 
+     * @param routers
+     * @param failures
+     * @param bulkheads the default bulkhead for each namespace or {@code null}
+     *            if namespaces are only isolated explicitly
+     * @return the route table
+     */
+    public static RouteTable compile(Collection<? extends Router> routers,
+            Map<Class<? extends Router>, Exception> failures,
+            @Nullable Function<String, Bulkhead> bulkheads) {
+        List<Router> sorted = Lists.newArrayList(routers);
+        Collections.sort(sorted, ROUTER_ORDER);
+        List<Hook> befores = Lists.newArrayList();
+        List<Hook> afters = Lists.newArrayList();
+        List<Limit> limits = Lists.newArrayList();
+        List<Timeout> timeouts = Lists.newArrayList();
+        List<Warmup> warmups = Lists.newArrayList();
+        Map<String, Bulkhead> isolated = Maps.newHashMap();
+        for (Router router : sorted) {
+            if(router.getBulkhead() != null
+                    && !isolated.containsKey(router.namespace())) {
+                isolated.put(router.namespace(), router.getBulkhead());
+            }
+            befores.addAll(router.befores());
+            afters.addAll(router.afters());
+            limits.addAll(router.limits());
+            timeouts.addAll(router.timeouts());
+            warmups.addAll(router.warmups());
+        }
+        // Collections#sort is stable, so routines with the same priority stay
+        // in definition order
+        Collections.sort(befores, HOOK_ORDER);
+        Collections.sort(afters, HOOK_ORDER);
+        ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+        for (Router router : sorted) {
+            Bulkhead bulkhead = isolated.get(router.namespace());
+            if(bulkhead == null && bulkheads != null) {
+                bulkhead = bulkheads.apply(router.namespace());
+                isolated.put(router.namespace(), bulkhead);
+            }
+            for (Binding binding : router.bindings()) {
+                String path = binding.route.getRoutePath();
+                entries.add(new Entry(binding.verb, path, binding.route,
+                        router.getClass(), router.namespace(), select(
+                                befores, path), select(afters, path),
+                        restrict(limits, path), bulkhead, shortest(timeouts,
+                                path)));
+            }
+        }
+        return new RouteTable(entries.build(), ImmutableMap.copyOf(failures),
+                ImmutableList.copyOf(warmups));
+    }
+
+    /**
+     * Forget about the dispatch routes that have been registered with the
+     * embedded web server and the {@link Dispatcher} that they serve. This
+     * must be called whenever the web server's routes are cleared.
+     */
+    public static void retract() {
+        synchronized (dispatched) {
+            dispatched.clear();
+            publisher = null;
+        }
+    }
+
+    /**
+     * Return {@code true} if a routine with the {@code scope} applies to every
+     * request that can be served by a route with the {@code path} template.
+     * <p>
+     * A {@code *} segment at the end of the {@code scope} matches zero or more
+     * remaining segments and a {@code *} or {@code :variable} segment
+     * elsewhere matches any single segment. A literal segment in the
+     * {@code scope} never covers a variable segment in the {@code path}
+     * because that cannot be decided until a request is made.
+     * </p>
+     * 
+     * @param scope
+     * @param path
+     * @return {@code true} if the {@code scope} covers the {@code path}
+     */
+    static boolean covers(String scope, String path) {
+        List<String> expected = Lists.newArrayList(SEGMENT_SPLITTER
+                .split(scope));
+        List<String> actual = Lists.newArrayList(SEGMENT_SPLITTER.split(path));
+        for (int i = 0; i < expected.size(); ++i) {
+            String segment = expected.get(i);
+            if(segment.equals("*") && i == expected.size() - 1) {
+                return true;
+            }
+            else if(i >= actual.size()) {
+                return false;
+            }
+            else if(segment.equals("*") || segment.startsWith(":")) {
+                continue;
+            }
+            else if(!segment.equals(actual.get(i))) {
+                return false;
+            }
+        }
+        return expected.size() == actual.size();
+    }
+
+    /**
+     * Return a {@link Request} for the {@code request} to the {@code uri},
+     * whose path parameters are bound to the path of the {@code entry}.
+     * 
+     * @param entry
+     * @param uri
+     * @param request
+     * @return the bound request
+     */
+    private static Request bind(Entry entry, String uri,
+            HttpServletRequest request) {
+        RouteMatch match = new RouteMatch(HttpMethod.valueOf(entry.verb.name()
+                .toLowerCase()), null, entry.path.startsWith("/") ? entry.path
+                : "/" + entry.path, uri, "*/*");
+        return RequestResponseFactory.create(match, request);
+    }
+
+    /**
+     * Return the key under which the route for {@code verb} and {@code path}
+     * is indexed.
+     * 
+     * @param verb
+     * @param path
+     * @return the key
+     */
+    private static String key(Verb verb, String path) {
+        return verb.name() + " " + path;
+    }
+
+    /**
+     * Register the {@code dispatch} route with the embedded web server.
+     * 
+     * @param dispatch
+     */
+    private static void register(Dispatch dispatch) {
+        switch (dispatch.verb) {
+        case GET:
+            Spark.get(dispatch);
+            break;
+        case POST:
+            Spark.post(dispatch);
+            break;
+        case PUT:
+            Spark.put(dispatch);
+            break;
+        case DELETE:
+            Spark.delete(dispatch);
+            break;
+        }
+    }
+
+    /**
+     * Return the concurrency limits from {@code limits} whose scope covers the
+     * {@code path}, preserving their order. If a limiter applies more than
+     * once, only its first application is kept.
+     * 
+     * @param limits
+     * @param path
+     * @return the applicable limits
+     */
+    private static Limit[] restrict(List<Limit> limits, String path) {
+        List<Limit> selected = Lists.newArrayList();
+        Set<ConcurrencyLimiter> seen = Sets.newIdentityHashSet();
+        for (Limit limit : limits) {
+            if(covers(limit.scope, path) && seen.add(limit.limiter)) {
+                selected.add(limit);
+            }
+        }
+        return selected.toArray(new Limit[selected.size()]);
+    }
+
+    /**
+     * Return the shortest of the {@code timeouts} whose scope covers the
+     * {@code path} or {@code 0} if none of them do.
+     * 
+     * @param timeouts
+     * @param path
+     * @return the timeout in nanoseconds
+     */
+    private static long shortest(List<Timeout> timeouts, String path) {
+        long shortest = 0;
+        for (Timeout timeout : timeouts) {
+            if(covers(timeout.scope, path)
+                    && (shortest == 0 || timeout.nanos < shortest)) {
+                shortest = timeout.nanos;
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * Return the routines from {@code hooks} whose scope covers the
+     * {@code path}, preserving their order.
+     * 
+     * @param hooks
+     * @param path
+     * @return the applicable routines
+     */
+    private static Routine[] select(List<Hook> hooks, String path) {
+        List<Routine> selected = Lists.newArrayList();
+        for (Hook hook : hooks) {
+            if(covers(hook.routine.getRoutePath(), path)) {
+                selected.add(hook.routine);
+            }
+        }
+        return selected.toArray(new Routine[selected.size()]);
+    }
+
+    /**
+     * Write the {@code body} to the {@code response} as UTF-8.
+     * 
+     * @param body
+     * @param response
+     * @throws IOException
+     */
+    private static void write(@Nullable String body,
+            HttpServletResponse response) throws IOException {
+        if(body != null && !body.isEmpty()) {
+            if(response.getContentType() == null) {
+                response.setContentType(DEFAULT_CONTENT_TYPE);
+            }
+            response.getOutputStream().write(body.getBytes(Charsets.UTF_8));
+        }
+    }
+
+    /**
+     * Orders routines by descending priority.
+     */
+    private static final Comparator<Hook> HOOK_ORDER = new Comparator<Hook>() {
+
+        @Override
+        public int compare(Hook o1, Hook o2) {
+            return Integer.compare(o2.priority, o1.priority);
+        }
+
+    };
+
+    /**
+     * Orders routers by the name of their class.
+     */
+    private static final Comparator<Router> ROUTER_ORDER = new Comparator<Router>() {
+
+        @Override
+        public int compare(Router o1, Router o2) {
+            return o1.getClass().getName().compareTo(o2.getClass().getName());
+        }
+
+    };
+
+    /**
+     * The path of the dispatch route that is registered for each verb after
+     * the ones for specific paths, so that paths which are added when a table
+     * is {@link #publish() published} later can still be served.
+     */
+    private static final String CATCH_ALL = "*";
+
+    /**
+     * The content type of a body that doesn't specify one, which is the same
+     * one that the embedded web server uses.
+     */
+    private static final String DEFAULT_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    /**
+     * The body of a response to a request that failed unexpectedly, which is
+     * the same one that the embedded web server uses.
+     */
+    private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+
+    /**
+     * Splits paths into their non-empty segments.
+     */
+    private static final Splitter SEGMENT_SPLITTER = Splitter.on('/')
+            .omitEmptyStrings();
+
+    /**
+     * The keys of the verbs and paths for which a {@link Dispatch} route has
+     * been registered with the embedded web server. This also serves as the
+     * lock that serializes {@link #publish(Dispatcher) publishing}.
+     */
+    private static final Set<String> dispatched = Sets.newHashSet();
+
+    /**
+     * Logs requests that could not be {@link #serve(Dispatcher,
+     * HttpServletRequest, HttpServletResponse) served}.
+     */
+    private static final Logger log = LoggerFactory.getLogger(RouteTable.class);
+
+    /**
+     * The {@link Dispatcher} that the dispatch routes which are registered
+     * with the embedded web server serve or {@code null} if there is none.
+     */
+    @Nullable
+    private static Dispatcher publisher = null;
+
+    /**
+     * The compiled entries, in router and definition order.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * The entries indexed by {@link #key(Verb, String) key}. If multiple
+     * entries share a key, the first one wins, just like the embedded web
+     * server would do.
+     */
+    private final Map<String, Entry> index;
+
+    /**
+     * The roots of the trees of path segments that {@link #match(Verb,
+     * String) match} concrete paths to entries, one for each verb that has
+     * any entries.
+     */
+    private final Map<Verb, Segment> segments;
+
+    /**
+     * The routers that could not be loaded, along with the reason why.
+     */
+    private final Map<Class<? extends Router>, Exception> failures;
+
+    /**
+     * The requests that are made to {@link #warm(int) warm} up the routes.
+     */
+    private final List<Warmup> warmups;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param entries
+     * @param failures
+     * @param warmups
+     */
+    private RouteTable(List<Entry> entries,
+            Map<Class<? extends Router>, Exception> failures,
+            List<Warmup> warmups) {
+        this.entries = entries;
+        this.failures = failures;
+        this.warmups = warmups;
+        Map<String, Entry> index = Maps.newHashMap();
+        for (Entry entry : entries) {
+            if(!index.containsKey(entry.key)) {
+                index.put(entry.key, entry);
+            }
+        }
+        this.index = ImmutableMap.copyOf(index);
+        Map<Verb, Segment> segments = Maps.newEnumMap(Verb.class);
+        for (int i = 0; i < entries.size(); ++i) {
+            Entry entry = entries.get(i);
+            Segment root = segments.get(entry.verb);
+            if(root == null) {
+                root = new Segment();
+                segments.put(entry.verb, root);
+            }
+            root.add(SEGMENT_SPLITTER.split(entry.path).iterator(), i);
+        }
+        this.segments = segments;
+    }
+
+    /**
+     * Return the compiled entries in this table.
+     * 
+     * @return the entries
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Return the routers that could not be loaded when this table was
+     * compiled, along with the reason why.
+     * 
+     * @return the failures
+     */
+    public Map<Class<? extends Router>, Exception> failures() {
+        return failures;
+    }
+
+    /**
+     * Make this the live table of the {@code dispatcher} and serve it with the
+     * web server that is embedded in Spark. Dispatch routes are registered
+     * with the embedded web server for any verbs and paths that haven't been
+     * seen before, followed by a catch-all dispatch route for each verb, and
+     * then this table atomically replaces the previous one. Once the
+     * catch-all routes are registered, the paths that are added by later
+     * tables are served through them. Any paths that are not defined in this
+     * table are left to the embedded web server, which serves the static
+     * files or responds with a 404.
+     * <p>
+     * There is only one embedded web server, so only one {@code dispatcher}
+     * can publish to it until the routes are {@link #retract() retracted}.
+     * </p>
+     * 
+     * @param dispatcher
+     */
+    public void publish(Dispatcher dispatcher) {
+        synchronized (dispatched) {
+            Preconditions.checkState(publisher == null
+                    || publisher == dispatcher, "Another application is "
+                    + "already served by the embedded web server");
+            publisher = dispatcher;
+            for (Entry entry : entries) {
+                if(!dispatched.contains(key(entry.verb, CATCH_ALL))
+                        && dispatched.add(key(entry.verb, entry.path))) {
+                    register(new Dispatch(dispatcher, entry.verb, entry.path));
+                }
+            }
+            for (Verb verb : Verb.values()) {
+                if(dispatched.add(key(verb, CATCH_ALL))) {
+                    register(new Dispatch(dispatcher, verb, CATCH_ALL));
+                }
+            }
+            dispatcher.activate(this);
+        }
+    }
+
+    /**
+     * Serve the {@code request} on behalf of the {@code dispatcher} using the
+     * route in this table that matches its verb and path, just like the
+     * embedded web server would if this table was
+     * {@link #publish(Dispatcher) published}. This allows any web server to
+     * route requests to a table, so that several tables can be served within
+     * the same process.
+     * 
+     * @param dispatcher
+     * @param request
+     * @param response
+     * @return {@code true} if the request was served, or {@code false} if no
+     *         route in this table matches it
+     * @throws IOException
+     */
+    boolean serve(Dispatcher dispatcher, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Verb verb;
+        try {
+            verb = Verb.valueOf(request.getMethod());
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        String uri = request.getRequestURI();
+        Entry entry = match(verb, uri);
+        if(entry == null) {
+            return false;
+        }
+        Response wrapped = RequestResponseFactory.create(response);
+        String body;
+        try {
+            Object content = Dispatch.handle(dispatcher, this, entry.verb,
+                    entry.path, entry.key, bind(entry, uri, request), wrapped);
+            body = content != null ? content.toString() : null;
+        }
+        catch (HaltException e) {
+            response.setStatus(e.getStatusCode());
+            body = e.getBody();
+        }
+        catch (RuntimeException e) {
+            log.error("Could not serve {} {}", verb, uri, e);
+            response.setStatus(500);
+            body = INTERNAL_ERROR;
+        }
+        write(body, response);
+        return true;
+    }
+
+    /**
+     * Warm up the routes in this table before they serve real traffic. The
+     * template of each {@link View} is compiled and then each of the
+     * {@link Router#warmup(Verb, String) warm-up requests} is served
+     * in-process {@code iterations} times, so that the code paths it exercises
+     * are loaded and compiled. Warm-up requests that fail are reported, but
+     * they don't stop the warm-up.
+     * 
+     * @param iterations
+     */
+    public void warm(int iterations) {
+        long start = System.nanoTime();
+        for (Entry entry : entries) {
+            if(entry.route instanceof View) {
+                try {
+                    ((View) entry.route).precompile();
+                }
+                catch (RuntimeException e) {
+                    log.error("Could not compile the template for {}",
+                            entry.key, e);
+                }
+            }
+        }
+        for (Warmup warmup : warmups) {
+            int index = warmup.path.indexOf('?');
+            Entry entry = match(warmup.verb,
+                    index >= 0 ? warmup.path.substring(0, index) : warmup.path);
+            if(entry == null) {
+                log.error("There is no route for the warm-up request {} {}",
+                        warmup.verb, warmup.path);
+                continue;
+            }
+            for (int i = 0; i < iterations; ++i) {
+                try {
+                    entry.dispatch(Synthetic.request(warmup.verb, entry.path,
+                            warmup.path), Synthetic.response());
+                }
+                catch (HaltException e) {
+                    continue;
+                }
+                catch (RuntimeException e) {
+                    log.error("The warm-up request {} {} failed",
+                            warmup.verb, warmup.path, e);
+                    break;
+                }
+            }
+        }
+        System.out.println("Warmed up "
+                + warmups.size() + " requests in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms");
+    }
+
+    /**
+     * Return the entry that serves requests with the {@code verb} to the
+     * concrete {@code path} or {@code null} if there is none. If several
+     * entries match, the first one wins, just like the embedded web server
+     * would do.
+     * 
+     * @param verb
+     * @param path
+     * @return the matching entry
+     */
+    @Nullable
+    Entry match(Verb verb, String path) {
+        Entry entry = index.get(key(verb, path));
+        if(entry == null) {
+            Segment root = segments.get(verb);
+            if(root != null) {
+                int position = root.match(
+                        Lists.newArrayList(SEGMENT_SPLITTER.split(path)), 0);
+                if(position < entries.size()) {
+                    entry = entries.get(position);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * A route in the {@link RouteTable} along with the ordered routines that
+     * apply to it.
+     * 
+     * @author jnelson
+     */
+    public static final class Entry {
+
+        /**
+         * The verb to which the route responds.
+         */
+        private final Verb verb;
+
+        /**
+         * The namespaced path of the route.
+         */
+        private final String path;
+
+        /**
+         * The {@link RouteTable#key(Verb, String) key} of the route, which also
+         * names the root {@link Span} of each request.
+         */
+        private final String key;
+
+        /**
+         * The route.
+         */
+        private final RewritableRoute route;
+
+        /**
+         * The {@link Router} class that defined the route.
+         */
+        private final Class<? extends Router> owner;
+
+        /**
+         * The namespace of the {@link #owner}.
+         */
+        private final String namespace;
+
+        /**
+         * The routines to run before the route, in order.
+         */
+        private final Routine[] before;
+
+        /**
+         * The routines to run after the route, in order.
+         */
+        private final Routine[] after;
+
+        /**
+         * The concurrency limits that must admit a request before it is
+         * served.
+         */
+        private final Limit[] limits;
+
+        /**
+         * The bulkhead within which the route is served or {@code null}.
+         */
+        @Nullable
+        private final Bulkhead bulkhead;
+
+        /**
+         * The timeout, in nanoseconds, for requests to the route or {@code 0}
+         * if there is none.
+         */
+        private final long timeout;
+
+        /**
+         * The number of requests to the route that are currently being served.
+         */
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+
+        /**
+         * The number of requests to the route that have been served.
+         */
+        private final AtomicLong served = new AtomicLong(0);
+
+        /**
+         * The number of requests to the route that have been
+         * {@link ThreadMeter metered}.
+         */
+        private final AtomicLong metered = new AtomicLong(0);
+
+        /**
+         * The total CPU time, in nanoseconds, that metered requests to the
+         * route have used.
+         */
+        private final AtomicLong cpuTime = new AtomicLong(0);
+
+        /**
+         * The total number of bytes that metered requests to the route have
+         * allocated.
+         */
+        private final AtomicLong allocatedBytes = new AtomicLong(0);
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param verb
+         * @param path
+         * @param route
+         * @param owner
+         * @param namespace
+         * @param before
+         * @param after
+         * @param limits
+         * @param bulkhead
+         * @param timeout
+         */
+        private Entry(Verb verb, String path, RewritableRoute route,
+                Class<? extends Router> owner, String namespace,
+                Routine[] before, Routine[] after, Limit[] limits,
+                @Nullable Bulkhead bulkhead, long timeout) {
+            this.verb = verb;
+            this.path = path;
+            this.key = key(verb, path);
+            this.route = route;
+            this.owner = owner;
+            this.namespace = namespace;
+            this.before = before;
+            this.after = after;
+            this.limits = limits;
+            this.bulkhead = bulkhead;
+            this.timeout = timeout;
+        }
+
+        /**
+         * Return the total number of bytes that {@link ThreadMeter metered}
+         * requests to the route have allocated.
+         * 
+         * @return the allocated bytes
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes.get();
+        }
+
+        /**
+         * Return the bulkhead within which the route is served or
+         * {@code null} if its namespace isn't isolated.
+         * 
+         * @return the bulkhead
+         */
+        @Nullable
+        public Bulkhead getBulkhead() {
+            return bulkhead;
+        }
+
+        /**
+         * Return the total CPU time that {@link ThreadMeter metered} requests
+         * to the route have used.
+         * 
+         * @param unit
+         * @return the CPU time
+         */
+        public long getCpuTime(TimeUnit unit) {
+            return unit.convert(cpuTime.get(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Return the number of requests to the route that are currently being
+         * served.
+         * 
+         * @return the in flight count
+         */
+        public int getInFlightCount() {
+            return inFlight.get();
+        }
+
+        /**
+         * Return the number of requests to the route that have been
+         * {@link ThreadMeter metered}.
+         * 
+         * @return the metered count
+         */
+        public long getMeteredCount() {
+            return metered.get();
+        }
+
+        /**
+         * Return the namespace of the {@link Router} that defined the route.
+         * 
+         * @return the namespace
+         */
+        public String getNamespace() {
+            return namespace;
+        }
+
+        /**
+         * Return the {@link Router} class that defined the route.
+         * 
+         * @return the owner
+         */
+        public Class<? extends Router> getOwner() {
+            return owner;
+        }
+
+        /**
+         * Return the namespaced path of the route.
+         * 
+         * @return the path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Return the number of requests to the route that have been served.
+         * 
+         * @return the served count
+         */
+        public long getServedCount() {
+            return served.get();
+        }
+
+        /**
+         * Return the verb to which the route responds.
+         * 
+         * @return the verb
+         */
+        public Verb getVerb() {
+            return verb;
+        }
+
+        /**
+         * Try to acquire a permit from each of the concurrency limits that
+         * apply to the route. If any of the limits does not admit the
+         * request, the permits that were already acquired are given back.
+         * 
+         * @return {@code null} if the request was admitted, otherwise the
+         *         limiter that rejected it
+         */
+        @Nullable
+        private ConcurrencyLimiter admit() {
+            for (int i = 0; i < limits.length; ++i) {
+                if(!limits[i].limiter.tryAcquire(limits[i].priority)) {
+                    for (int j = 0; j < i; ++j) {
+                        limits[j].limiter.cancel();
+                    }
+                    return limits[i].limiter;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Add the CPU time and allocations of the current thread since it
+         * read {@code cpuTime} and {@code allocatedBytes} from the
+         * {@link ThreadMeter} to the totals of the route.
+         * 
+         * @param cpuTime
+         * @param allocatedBytes
+         */
+        private void meter(long cpuTime, long allocatedBytes) {
+            this.cpuTime.addAndGet(ThreadMeter.cpuTime() - cpuTime);
+            this.allocatedBytes.addAndGet(ThreadMeter.allocatedBytes()
+                    - allocatedBytes);
+            this.metered.incrementAndGet();
+        }
+
+        /**
+         * Give back the permits that were acquired in {@link #admit()} for a
+         * request that was served in {@code latency} nanoseconds.
+         * 
+         * @param latency
+         */
+        private void release(long latency) {
+            for (Limit limit : limits) {
+                limit.limiter.release(latency);
+            }
+        }
+
+        /**
+         * Return the timeout, in nanoseconds, for the {@code request}, taking
+         * into account both the timeout for the route and any that is
+         * specified by the client in the {@link Deadline#HEADER}.
+         * 
+         * @param request
+         * @return the timeout or {@code 0} if there is none
+         */
+        private long timeout(Request request) {
+            long timeout = this.timeout;
+            String header = request.headers(Deadline.HEADER);
+            if(header != null) {
+                try {
+                    long requested = TimeUnit.MILLISECONDS.toNanos(Long
+                            .parseLong(header.trim()));
+                    if(requested > 0 && (timeout == 0 || requested < timeout)) {
+                        timeout = requested;
+                    }
+                }
+                catch (NumberFormatException e) {/* ignore */}
+            }
+            return timeout;
+        }
+
+        /**
+         * Run the before routines, the route and the after routines, in that
+         * order, for the {@code request}.
+         * 
+         * @param request
+         * @param response
+         * @return the content to be set in the response
+         */
+        Object dispatch(Request request, Response response) {
+            RequestLocal.attach(request);
+            long timeout = timeout(request);
+            if(timeout > 0) {
+                Deadline.CURRENT.set(request, Deadline.after(timeout));
+            }
+            Trace trace = Tracer.start(request
+                    .headers(Tracer.TRACEPARENT_HEADER));
+            Span root = trace.startSpan(key);
+            if(trace != Trace.NOOP) {
+                AbstractRewritableRoute.TRACE.set(request, trace);
+                response.header(Tracer.TRACEPARENT_HEADER,
+                        trace.getTraceparent());
+            }
+            try {
+                Object content = null;
+                for (Routine routine : before) {
+                    run(routine, trace, request, response);
+                    content = Routine.getResponse(request);
+                    if(content != null) {
+                        break;
+                    }
+                }
+                if(content == null) {
+                    content = route.handle(request, response);
+                }
+                for (Routine routine : after) {
+                    run(routine, trace, request, response);
+                }
+                return content;
+            }
+            finally {
+                root.close();
+            }
+        }
+
+        /**
+         * Run the {@code routine} for the {@code request} within its own
+         * {@link Span}.
+         * 
+         * @param routine
+         * @param trace
+         * @param request
+         * @param response
+         */
+        private void run(Routine routine, Trace trace, Request request,
+                Response response) {
+            Span span = trace.startSpan("routine");
+            if(trace.isSampled()) {
+                span.tag("class", routine.getClass().getName());
+            }
+            try {
+                routine.handle(request, response);
+            }
+            finally {
+                span.close();
+            }
+        }
+    }
+
+    /**
+     * The {@link Route} that is registered with the embedded web server for a
+     * verb and path. It dispatches each request to the corresponding
+     * {@link Entry} in the live table of its {@link Dispatcher} or, if the
+     * live table doesn't define the path, to the entry that matches the
+     * request path.
+     * 
+     * @author jnelson
+     */
+    private static final class Dispatch extends Route {
+
+        /**
+         * The dispatcher whose live table serves the requests.
+         */
+        private final Dispatcher dispatcher;
+
+        /**
+         * The verb to which this route responds.
+         */
+        private final Verb verb;
+
+        /**
+         * The namespaced path of this route.
+         */
+        private final String path;
+
+        /**
+         * The {@link RouteTable#key(Verb, String) key} of the entry to
+         * dispatch to.
+         */
+        private final String key;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param dispatcher
+         * @param verb
+         * @param path
+         */
+        private Dispatch(Dispatcher dispatcher, Verb verb, String path) {
+            super(path);
+            this.dispatcher = dispatcher;
+            this.verb = verb;
+            this.path = path;
+            this.key = key(verb, path);
+        }
+
+        @Override
+        public Object handle(Request request, Response response) {
+            RouteTable table = dispatcher.getRouteTable();
+            if(table == null || !table.index.containsKey(key)) {
+                // The path of this route was changed or it is the catch-all,
+                // so find the entry that serves the request path and bind the
+                // request to it. Returning null lets the embedded web server
+                // serve a static file or respond with a 404.
+                String uri = request.raw().getRequestURI();
+                Entry entry = table != null ? table.match(verb, uri) : null;
+                return entry != null ? handle(dispatcher, table, verb,
+                        entry.path, entry.key, bind(entry, uri, request.raw()),
+                        response) : null;
+            }
+            return handle(dispatcher, table, verb, path, key, request,
+                    response);
+        }
+
+        /**
+         * Serve the {@code request} using the entry with the {@code key} in the
+         * {@code table}, recording it in the {@link AccessLog} of the
+         * {@code dispatcher} if there is one and committing its
+         * {@link FlightRecorder} events if a recording is running, and return
+         * the content that remains for the web server to write.
+         * 
+         * @param dispatcher
+         * @param table
+         * @param verb
+         * @param path
+         * @param key
+         * @param request
+         * @param response
+         * @return the content to be set in the response
+         */
+        static Object handle(Dispatcher dispatcher,
+                @Nullable RouteTable table, Verb verb, String path, String key,
+                Request request, Response response) {
+            AccessLog log = dispatcher.getAccessLog();
+            boolean recording = FlightRecorder.isRecording();
+            if(log == null && !recording) {
+                return write(process(dispatcher, table, key, request,
+                        response), request, response);
+            }
+            long start = System.nanoTime();
+            int status = 0;
+            long bytes = 0;
+            try {
+                Object content = process(dispatcher, table, key, request,
+                        response);
+                if(content instanceof ResponseBody) {
+                    bytes = ((ResponseBody) content).length();
+                    return write(content, request, response);
+                }
+                else {
+                    String body = content != null ? content.toString() : null;
+                    bytes = Utf8.encodedLength(body);
+                    return body;
+                }
+            }
+            catch (HaltException e) {
+                status = e.getStatusCode();
+                bytes = Utf8.encodedLength(e.getBody());
+                throw e;
+            }
+            catch (RuntimeException e) {
+                status = 500;
+                throw e;
+            }
+            finally {
+                if(status == 0) {
+                    status = response.raw().getStatus();
+                }
+                if(log != null) {
+                    log.log(verb.name(), path, status, bytes,
+                            System.nanoTime() - start,
+                            Requests.getClientIpAddress(request));
+                }
+                if(recording) {
+                    AbstractRewritableRoute.TRACE.get(request).commit(key,
+                            status);
+                }
+            }
+        }
+
+        /**
+         * Serve the {@code request} using the entry with the {@code key} in the
+         * {@code table}, as long as the {@code dispatcher} is not draining and
+         * the request is admitted by the route's bulkhead and any concurrency
+         * limits.
+         * 
+         * @param dispatcher
+         * @param table
+         * @param key
+         * @param request
+         * @param response
+         * @return the content to be set in the response
+         */
+        private static Object process(Dispatcher dispatcher,
+                @Nullable RouteTable table, String key, Request request,
+                Response response) {
+            Entry entry = table != null ? table.index.get(key) : null;
+            if(entry == null) {
+                halt(404);
+            }
+            Drain drain = dispatcher.getDrain();
+            if(!drain.enter()) {
+                response.header("Connection", "close");
+                halt(503, "The application is shutting down");
+            }
+            try {
+                Bulkhead bulkhead = entry.bulkhead;
+                if(bulkhead != null && !bulkhead.enter()) {
+                    response.header("Retry-After",
+                            Integer.toString(bulkhead.getRetryAfter()));
+                    halt(503, "The server is overloaded");
+                }
+                try {
+                    ConcurrencyLimiter rejecter = entry.admit();
+                    if(rejecter != null) {
+                        response.header("Retry-After",
+                                Integer.toString(rejecter.getRetryAfter()));
+                        halt(503, "The server is overloaded");
+                    }
+                    Watchdog watchdog = dispatcher.getWatchdog();
+                    Watchdog.Ticket ticket = watchdog != null ? watchdog
+                            .track(key, request) : null;
+                    boolean metered = ThreadMeter.isEnabled();
+                    long cpuTime = metered ? ThreadMeter.cpuTime() : 0;
+                    long allocatedBytes = metered ? ThreadMeter
+                            .allocatedBytes() : 0;
+                    long start = System.nanoTime();
+                    entry.inFlight.incrementAndGet();
+                    try {
+                        return entry.dispatch(request, response);
+                    }
+                    finally {
+                        entry.inFlight.decrementAndGet();
+                        entry.served.incrementAndGet();
+                        entry.release(System.nanoTime() - start);
+                        if(metered) {
+                            entry.meter(cpuTime, allocatedBytes);
+                        }
+                        if(ticket != null) {
+                            watchdog.complete(ticket);
+                        }
+                    }
+                }
+                finally {
+                    if(bulkhead != null) {
+                        bulkhead.exit();
+                    }
+                }
+            }
+            finally {
+                drain.exit();
+            }
+        }
+
+        /**
+         * Write the {@code content} directly to the {@code response} if it is a
+         * pre-encoded {@link ResponseBody}, so that the web server doesn't encode
+         * it again, and release the body for reuse.
+         * 
+         * @param content
+         * @param request
+         * @param response
+         * @return the content that remains for the web server to write
+         */
+        private static Object write(Object content, Request request,
+                Response response) {
+            if(content instanceof ResponseBody) {
+                ResponseBody body = (ResponseBody) content;
+                if(response.raw().getContentType() == null) {
+                    response.raw().setContentType(DEFAULT_CONTENT_TYPE);
+                }
+                Span span = AbstractRewritableRoute.TRACE.get(request)
+                        .startSpan("write");
+                try {
+                    body.writeTo(response.raw());
+                }
+                finally {
+                    span.close();
+                }
+                body.release();
+                return "";
+            }
+            else {
+                return content;
+            }
+        }
+
+    }
+
+    /**
+     * A node in the tree of path segments for one verb. Each entry is added
+     * along the segments of its path, so a concrete path is matched by
+     * following its segments instead of testing every entry in turn. A
+     * {@code *} or {@code :variable} segment matches any single segment and
+     * a {@code *} at the end of a path matches zero or more remaining
+     * segments, like {@link RouteTable#covers(String, String)}.
+     * 
+     * @author jnelson
+     */
+    private static final class Segment {
+
+        /**
+         * The position, in the table, of the first entry whose path ends at
+         * this segment or {@link Integer#MAX_VALUE} if there is none.
+         */
+        private int end = Integer.MAX_VALUE;
+
+        /**
+         * The position, in the table, of the first entry whose path ends
+         * with a {@code *} after this segment or {@link Integer#MAX_VALUE} if
+         * there is none.
+         */
+        private int rest = Integer.MAX_VALUE;
+
+        /**
+         * The segments that follow this one, indexed by their literal name.
+         */
+        private Map<String, Segment> literals = Collections.emptyMap();
+
+        /**
+         * The segment that follows this one for any name or {@code null} if
+         * there is none.
+         */
+        @Nullable
+        private Segment variable = null;
+
+        /**
+         * Add the entry at {@code position} in the table, whose path has the
+         * remaining {@code names}, below this segment.
+         * 
+         * @param names
+         * @param position
+         */
+        void add(Iterator<String> names, int position) {
+            Segment segment = this;
+            while (names.hasNext()) {
+                String name = names.next();
+                if(name.equals("*") && !names.hasNext()) {
+                    segment.rest = Math.min(segment.rest, position);
+                    return;
+                }
+                else if(name.equals("*") || name.startsWith(":")) {
+                    if(segment.variable == null) {
+                        segment.variable = new Segment();
+                    }
+                    segment = segment.variable;
+                }
+                else {
+                    if(segment.literals.isEmpty()) {
+                        segment.literals = Maps.newHashMap();
+                    }
+                    Segment next = segment.literals.get(name);
+                    if(next == null) {
+                        next = new Segment();
+                        segment.literals.put(name, next);
+                    }
+                    segment = next;
+                }
+            }
+            segment.end = Math.min(segment.end, position);
+        }
+
+        /**
+         * Return the position of the first entry below this segment that
+         * matches the {@code names} of a concrete path from the
+         * {@code depth} on or {@link Integer#MAX_VALUE} if none does.
+         * 
+         * @param names
+         * @param depth
+         * @return the position of the matching entry
+         */
+        int match(List<String> names, int depth) {
+            int position = rest;
+            if(depth == names.size()) {
+                return Math.min(position, end);
+            }
+            Segment literal = literals.get(names.get(depth));
+            if(literal != null) {
+                position = Math.min(position, literal.match(names, depth + 1));
+            }
+            if(variable != null) {
+                position = Math.min(position, variable.match(names, depth + 1));
+            }
+            return position;
+        }
+
+    }
+
+}
@@ -23,11 +23,16 @@
  */
 package org.cinchapi.quest.router;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.cinchapi.quest.router.ConcurrencyLimiter.Priority;
+
 import com.google.common.base.CaseFormat;
-import spark.Filter;
-import spark.Request;
-import spark.Response;
-import spark.Spark;
+import com.google.common.collect.Lists;
 
 /**
  * A {@link Router} is responsible for defining accessible routes and serving
@@ -43,11 +48,23 @@ import spark.Spark;
  * For exampe, a class named {@code HelloWorldRouter} will have each of its
  * {@link #routes()} prepended with {@code /hello/world/}.
  * <p>
+ * <p>
+ * Defining a route does not register it with the web server directly.
+ * Instead, the routes and {@link Routine routines} are collected and compiled
+ * into a {@link RouteTable} once all the routers have been loaded, so that
+ * each route only runs the routines that actually apply to it.
+ * </p>
  * 
  * @author jnelson
  */
 public abstract class Router {
 
+    /**
+     * The priority that is assigned to a {@link Routine} that is registered
+     * without an explicit one.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
     /**
      * The namespace is the name of the class without the word "Router". The
      * namespace is used to handle the appropriate re-writing for all the routes
@@ -58,6 +75,46 @@ public abstract class Router {
             this.getClass().getSimpleName().replace("Router", "")
                     .replace("Index", "")).replace("_", "/");
 
+    /**
+     * The routes that are defined in this {@link Router}, in the order they
+     * were defined.
+     */
+    private final List<Binding> bindings = Lists.newArrayList();
+
+    /**
+     * The routines that run before routes, in the order they were defined.
+     */
+    private final List<Hook> befores = Lists.newArrayList();
+
+    /**
+     * The routines that run after routes, in the order they were defined.
+     */
+    private final List<Hook> afters = Lists.newArrayList();
+
+    /**
+     * The concurrency limits that apply to routes, in the order they were
+     * defined.
+     */
+    private final List<Limit> limits = Lists.newArrayList();
+
+    /**
+     * The bulkhead that isolates the routes in this namespace or {@code null}
+     * if none was assigned.
+     */
+    @Nullable
+    private Bulkhead bulkhead = null;
+
+    /**
+     * The timeouts that apply to routes, in the order they were defined.
+     */
+    private final List<Timeout> timeouts = Lists.newArrayList();
+
+    /**
+     * The requests that are made to warm up routes, in the order they were
+     * defined.
+     */
+    private final List<Warmup> warmups = Lists.newArrayList();
+
     /**
      * Run this {@code routine} after any of the routes defined in this
      * {@link Router} are run.
@@ -65,15 +122,20 @@ public abstract class Router {
      * @param routine
      */
     public void after(final Routine routine) {
-        routine.prepend(namespace);
-        Spark.after(new Filter(routine.getRoutePath()) {
-
-            @Override
-            public void handle(Request request, Response response) {
-                routine.handle(request, response);
-            }
+        after(routine, DEFAULT_PRIORITY);
+    }
 
-        });
+    /**
+     * Run this {@code routine} after any of the matching routes are run.
+     * Routines with a higher {@code priority} run before those with a lower
+     * one, regardless of the {@link Router} in which they are defined.
+     * 
+     * @param routine
+     * @param priority
+     */
+    public void after(final Routine routine, int priority) {
+        routine.prepend(namespace);
+        afters.add(new Hook(routine, priority));
     }
 
     /**
@@ -83,17 +145,20 @@ public abstract class Router {
      * @param routine
      */
     public void before(final Routine routine) {
-        routine.prepend(namespace);
-        Spark.before(new Filter(routine.getRoutePath()) {
-
-            @Override
-            public void handle(Request request, Response response) {
-                routine.handle(request, response);
-
-            }
-
-        });
+        before(routine, DEFAULT_PRIORITY);
+    }
 
+    /**
+     * Run this {@code routine} before any of the matching routes are run.
+     * Routines with a higher {@code priority} run before those with a lower
+     * one, regardless of the {@link Router} in which they are defined.
+     * 
+     * @param routine
+     * @param priority
+     */
+    public void before(final Routine routine, int priority) {
+        routine.prepend(namespace);
+        befores.add(new Hook(routine, priority));
     }
 
     /**
@@ -102,8 +167,19 @@ public abstract class Router {
      * @param route
      */
     public void delete(final RewritableRoute route) {
-        route.prepend(namespace);
-        Spark.delete(route);
+        bind(Verb.DELETE, route);
+    }
+
+    /**
+     * Serve all the routes in this {@link Router Router's} namespace within
+     * the {@code bulkhead}, so that they can't use more than its share of the
+     * web server's threads. If several routers share a namespace, the first
+     * bulkhead that is assigned to any of them applies to all of them.
+     * 
+     * @param bulkhead
+     */
+    public void bulkhead(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
     }
 
     /**
@@ -112,8 +188,35 @@ public abstract class Router {
      * @param route
      */
     public void get(final RewritableRoute route) {
-        route.prepend(namespace);
-        Spark.get(route);
+        bind(Verb.GET, route);
+    }
+
+    /**
+     * Apply the {@code limiter} to the routes under {@code relativePath},
+     * using the {@link Priority#NORMAL normal} priority.
+     * 
+     * @param relativePath
+     * @param limiter
+     */
+    public void limit(String relativePath, ConcurrencyLimiter limiter) {
+        limit(relativePath, limiter, Priority.NORMAL);
+    }
+
+    /**
+     * Apply the {@code limiter} to the routes under {@code relativePath}
+     * (i.e. {@code /*} for all the routes in this {@link Router}), so that
+     * requests to those routes are rejected with a 503 when the limiter does
+     * not admit requests with the {@code priority}. If multiple limiters apply
+     * to a route, a request must be admitted by all of them.
+     * 
+     * @param relativePath
+     * @param limiter
+     * @param priority
+     */
+    public void limit(String relativePath, ConcurrencyLimiter limiter,
+            Priority priority) {
+        limits.add(new Limit(RewritableRoute.rewrite(namespace, relativePath),
+                limiter, priority));
     }
 
     /**
@@ -122,8 +225,7 @@ public abstract class Router {
      * @param route
      */
     public void post(final RewritableRoute route) {
-        route.prepend(namespace);
-        Spark.post(route);
+        bind(Verb.POST, route);
     }
 
     /**
@@ -132,8 +234,49 @@ public abstract class Router {
      * @param route
      */
     public void put(final RewritableRoute route) {
-        route.prepend(namespace);
-        Spark.put(route);
+        bind(Verb.PUT, route);
+    }
+
+    /**
+     * Apply a {@code timeout} to the routes under {@code relativePath} (i.e.
+     * {@code /*} for all the routes in this {@link Router}). Each request to
+     * those routes gets a {@link Deadline} that passes after the
+     * {@code timeout}. If multiple timeouts apply to a route, the shortest one
+     * wins.
+     * 
+     * @param relativePath
+     * @param timeout
+     * @param unit
+     */
+    public void timeout(String relativePath, long timeout, TimeUnit unit) {
+        timeouts.add(new Timeout(RewritableRoute.rewrite(namespace,
+                relativePath), unit.toNanos(timeout)));
+    }
+
+    /**
+     * Make a GET request to {@code relativePath} (e.g.
+     * {@code /users/1?page=2}) during the warm-up phase.
+     * 
+     * @param relativePath
+     * @see #warmup(Verb, String)
+     */
+    public void warmup(String relativePath) {
+        warmup(Verb.GET, relativePath);
+    }
+
+    /**
+     * Make a request with the {@code verb} to {@code relativePath} during the
+     * warm-up phase, if the application has one. Warm-up requests are served
+     * in-process, without going through the network, so that the classes,
+     * templates and code paths that the route needs are loaded and compiled
+     * before the application reports that it is ready.
+     * 
+     * @param verb
+     * @param relativePath
+     */
+    public void warmup(Verb verb, String relativePath) {
+        warmups.add(new Warmup(verb, RewritableRoute.rewrite(namespace,
+                relativePath)));
     }
 
     /**
@@ -182,4 +325,245 @@ public abstract class Router {
      */
     public abstract void routes();
 
+    /**
+     * Return the routines that run after routes, in definition order.
+     * 
+     * @return the after routines
+     */
+    List<Hook> afters() {
+        return Collections.unmodifiableList(afters);
+    }
+
+    /**
+     * Return the routines that run before routes, in definition order.
+     * 
+     * @return the before routines
+     */
+    List<Hook> befores() {
+        return Collections.unmodifiableList(befores);
+    }
+
+    /**
+     * Return the routes that are defined in this {@link Router}, in definition
+     * order.
+     * 
+     * @return the bindings
+     */
+    List<Binding> bindings() {
+        return Collections.unmodifiableList(bindings);
+    }
+
+    /**
+     * Return the bulkhead that isolates the routes in this namespace or
+     * {@code null} if none was assigned.
+     * 
+     * @return the bulkhead
+     */
+    @Nullable
+    Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Return the concurrency limits that apply to routes, in definition order.
+     * 
+     * @return the limits
+     */
+    List<Limit> limits() {
+        return Collections.unmodifiableList(limits);
+    }
+
+    /**
+     * Return the namespace of this {@link Router}.
+     * 
+     * @return the namespace
+     */
+    String namespace() {
+        return namespace;
+    }
+
+    /**
+     * Return the timeouts that apply to routes, in definition order.
+     * 
+     * @return the timeouts
+     */
+    List<Timeout> timeouts() {
+        return Collections.unmodifiableList(timeouts);
+    }
+
+    /**
+     * Return the requests that are made to warm up routes.
+     * 
+     * @return the warmups
+     */
+    List<Warmup> warmups() {
+        return Collections.unmodifiableList(warmups);
+    }
+
+    /**
+     * Rewrite the {@code route} for this {@link Router Router's} namespace and
+     * remember that it responds to {@code verb}.
+     * 
+     * @param verb
+     * @param route
+     */
+    private void bind(Verb verb, RewritableRoute route) {
+        route.prepend(namespace);
+        bindings.add(new Binding(verb, route));
+    }
+
+    /**
+     * A route that responds to a single {@link Verb}.
+     * 
+     * @author jnelson
+     */
+    static final class Binding {
+
+        /**
+         * The verb to which the {@link #route} responds.
+         */
+        final Verb verb;
+
+        /**
+         * The route.
+         */
+        final RewritableRoute route;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param verb
+         * @param route
+         */
+        Binding(Verb verb, RewritableRoute route) {
+            this.verb = verb;
+            this.route = route;
+        }
+    }
+
+    /**
+     * A {@link Routine} along with the information that is necessary to order
+     * it against all the other routines that apply to a route.
+     * 
+     * @author jnelson
+     */
+    static final class Hook {
+
+        /**
+         * The routine.
+         */
+        final Routine routine;
+
+        /**
+         * The explicit priority of the {@link #routine}.
+         */
+        final int priority;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param routine
+         * @param priority
+         */
+        Hook(Routine routine, int priority) {
+            this.routine = routine;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * A {@link ConcurrencyLimiter} that applies to the routes under a path.
+     * 
+     * @author jnelson
+     */
+    static final class Limit {
+
+        /**
+         * The path of the routes to which the {@link #limiter} applies.
+         */
+        final String scope;
+
+        /**
+         * The limiter.
+         */
+        final ConcurrencyLimiter limiter;
+
+        /**
+         * The priority with which requests are admitted by the
+         * {@link #limiter}.
+         */
+        final Priority priority;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param scope
+         * @param limiter
+         * @param priority
+         */
+        Limit(String scope, ConcurrencyLimiter limiter, Priority priority) {
+            this.scope = scope;
+            this.limiter = limiter;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * A timeout that applies to the routes under a path.
+     * 
+     * @author jnelson
+     */
+    static final class Timeout {
+
+        /**
+         * The path of the routes to which the timeout applies.
+         */
+        final String scope;
+
+        /**
+         * The timeout in nanoseconds.
+         */
+        final long nanos;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param scope
+         * @param nanos
+         */
+        Timeout(String scope, long nanos) {
+            this.scope = scope;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * A request that is made to warm up a route.
+     * 
+     * @author jnelson
+     */
+    static final class Warmup {
+
+        /**
+         * The verb of the request.
+         */
+        final Verb verb;
+
+        /**
+         * The namespaced path of the request, including any query string.
+         */
+        final String path;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param verb
+         * @param path
+         */
+        Warmup(Verb verb, String path) {
+            this.verb = verb;
+            this.path = path;
+        }
+    }
+
 }
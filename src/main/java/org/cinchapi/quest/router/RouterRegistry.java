@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+
+/**
+ * The {@link RouterRegistry} lists the {@link Router} classes of an
+ * application in a resource that is generated at build time by the
+ * {@link RouterRegistryProcessor}, so that the routers can be discovered
+ * without scanning the classpath.
+ * <p>
+ * Skipping the scan makes startup much faster and keeps it free of the
+ * bytecode analysis that defeats class data sharing and ahead-of-time
+ * compilation. The processor is registered as a service in the Quest jar, so
+ * the registry is generated automatically whenever an application is
+ * compiled against Quest with annotation processing enabled.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class RouterRegistry {
+
+    /**
+     * The resource that lists the names of the router classes, one per line.
+     */
+    public static final String RESOURCE = "META-INF/quest/routers";
+
+    private static final Logger log = LoggerFactory
+            .getLogger(RouterRegistry.class);
+
+    /**
+     * Return the {@link Router} classes that are listed in every copy of the
+     * {@link #RESOURCE} visible to the {@code loader} or {@code null} if there
+     * is no registry, in which case the classpath must be scanned.
+     * 
+     * @param loader
+     * @return the registered routers
+     */
+    @Nullable
+    public static Set<Class<? extends Router>> load(ClassLoader loader) {
+        try {
+            Enumeration<URL> resources = loader.getResources(RESOURCE);
+            if(!resources.hasMoreElements()) {
+                return null;
+            }
+            Set<Class<? extends Router>> routers = Sets.newLinkedHashSet();
+            while (resources.hasMoreElements()) {
+                InputStream stream = resources.nextElement().openStream();
+                try {
+                    for (String line : CharStreams
+                            .readLines(new InputStreamReader(stream,
+                                    Charsets.UTF_8))) {
+                        String name = line.trim();
+                        if(name.isEmpty() || name.startsWith("#")) {
+                            continue;
+                        }
+                        try {
+                            routers.add(Class.forName(name, false, loader)
+                                    .asSubclass(Router.class));
+                        }
+                        catch (ClassNotFoundException | ClassCastException e) {
+                            log.error("Could not find the registered router {}",
+                                    name, e);
+                        }
+                    }
+                }
+                finally {
+                    stream.close();
+                }
+            }
+            return routers;
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private RouterRegistry() {/* noop */}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.NoSuchFileException;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+
+/**
+ * An annotation processor that generates the {@link RouterRegistry} for the
+ * classes being compiled. Every concrete, top level or static nested subclass
+ * of {@link Router} is listed.
+ * <p>
+ * Incremental and IDE builds only compile the classes that changed, so the
+ * registry that a previous build wrote is merged with the routers that are
+ * found instead of being replaced. A router from the previous registry is
+ * kept unless its class was compiled again and is no longer a router or its
+ * class doesn't exist anymore.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@SupportedAnnotationTypes("*")
+public class RouterRegistryProcessor extends AbstractProcessor {
+
+    /**
+     * The binary names of the routers found so far, in sorted order.
+     */
+    private final Set<String> routers = Sets.newTreeSet();
+
+    /**
+     * The binary names of all the classes that were compiled, whether or not
+     * they are routers.
+     */
+    private final Set<String> compiled = Sets.newHashSet();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        TypeElement router = processingEnv.getElementUtils().getTypeElement(
+                Router.class.getName());
+        if(router == null) {
+            return false;
+        }
+        TypeMirror type = processingEnv.getTypeUtils().erasure(
+                router.asType());
+        for (Element element : roundEnv.getRootElements()) {
+            collect(element, type);
+        }
+        if(roundEnv.processingOver()) {
+            try {
+                Set<String> previous = read();
+                Set<String> merged = Sets.newTreeSet(routers);
+                for (String name : previous) {
+                    if(!compiled.contains(name) && exists(name)) {
+                        merged.add(name);
+                    }
+                }
+                if(!merged.equals(previous)) {
+                    write(merged);
+                }
+            }
+            catch (IOException e) {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        "Could not write the router registry: " + e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the {@code element} and any of its static nested classes to the
+     * {@link #routers} if they are concrete subclasses of the router
+     * {@code type}.
+     * 
+     * @param element
+     * @param type
+     */
+    private void collect(Element element, TypeMirror type) {
+        if(element.getKind() != ElementKind.CLASS) {
+            return;
+        }
+        TypeElement clazz = (TypeElement) element;
+        String name = processingEnv.getElementUtils().getBinaryName(clazz)
+                .toString();
+        compiled.add(name);
+        Set<Modifier> modifiers = clazz.getModifiers();
+        if(!modifiers.contains(Modifier.ABSTRACT)
+                && modifiers.contains(Modifier.PUBLIC)
+                && processingEnv.getTypeUtils().isSubtype(clazz.asType(),
+                        type)) {
+            routers.add(name);
+        }
+        for (Element enclosed : clazz.getEnclosedElements()) {
+            if(enclosed.getModifiers().contains(Modifier.STATIC)) {
+                collect(enclosed, type);
+            }
+        }
+    }
+
+    /**
+     * Return {@code true} if the class with the binary {@code name} can be
+     * found by the compiler, either among the sources or the classes that
+     * were compiled before.
+     * 
+     * @param name
+     * @return {@code true} if the class exists
+     */
+    private boolean exists(String name) {
+        return processingEnv.getElementUtils().getTypeElement(
+                name.replace('$', '.')) != null;
+    }
+
+    /**
+     * Read the names in the registry that a previous build wrote to the
+     * class output, if there is one.
+     * 
+     * @return the previously registered names
+     * @throws IOException
+     */
+    private Set<String> read() throws IOException {
+        Set<String> names = Sets.newTreeSet();
+        try {
+            FileObject resource = processingEnv.getFiler().getResource(
+                    StandardLocation.CLASS_OUTPUT, "", RouterRegistry.RESOURCE);
+            Reader reader = new InputStreamReader(resource.openInputStream(),
+                    Charsets.UTF_8);
+            try {
+                for (String line : CharStreams.readLines(reader)) {
+                    String name = line.trim();
+                    if(!name.isEmpty() && !name.startsWith("#")) {
+                        names.add(name);
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (FileNotFoundException | NoSuchFileException e) {
+            // This is a clean build
+        }
+        return names;
+    }
+
+    /**
+     * Write the registry with the router {@code names} to the class output.
+     * 
+     * @param names
+     * @throws IOException
+     */
+    private void write(Set<String> names) throws IOException {
+        FileObject resource = processingEnv.getFiler().createResource(
+                StandardLocation.CLASS_OUTPUT, "", RouterRegistry.RESOURCE);
+        Writer writer = new OutputStreamWriter(resource.openOutputStream(),
+                Charsets.UTF_8);
+        try {
+            for (String name : names) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+}
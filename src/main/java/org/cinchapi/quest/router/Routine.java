@@ -1,25 +1,64 @@
 package org.cinchapi.quest.router;
 
+import spark.Request;
+
 /**
  * A {@link Routine} is a {@link Route} that does not return a payload or render
  * a view. It is generally used to check for some common preconditions before
  * executing other routes.
  * <p>
- * A Routine matches every other route for the Router in which it was defined.
- * For example, a Routine defined in the {@code HelloWorldRouter} will match all
- * requests to {@code /hello/world/*}. Routines are meant to be catch-alls so
- * there is no way to further specify the paths a Routine should match.
+ * By default, a Routine matches every other route for the Router in which it
+ * was defined. For example, a Routine defined in the {@code HelloWorldRouter}
+ * will match all requests to {@code /hello/world/*}. A Routine can be scoped
+ * to a narrower set of routes by specifying a relative path (i.e.
+ * {@code /admin/*}) in the constructor. The applicable routines for each route
+ * are resolved once when the application starts, so a request only runs the
+ * routines that actually apply to it.
+ * <p>
  * <p>
+ * A before Routine can short-circuit the request by calling {@link #halt()}
+ * or by {@link #respond(Object) responding} directly, in which case the
+ * remaining before routines and the route itself are skipped.
+ * </p>
  * 
  * @author jnelson
  */
 public abstract class Routine extends AbstractRewritableRoute {
 
+    /**
+     * The name of the request attribute that holds the content supplied to
+     * {@link #respond(Object)}.
+     */
+    private static final String RESPONSE_ATTRIBUTE = Routine.class.getName()
+            + ".response";
+
+    /**
+     * Return the content that a {@link Routine} supplied to
+     * {@link #respond(Object)} while handling the {@code request} or
+     * {@code null} if the request has not been short-circuited.
+     * 
+     * @param request
+     * @return the short-circuit response content
+     */
+    static Object getResponse(Request request) {
+        return request.raw().getAttribute(RESPONSE_ATTRIBUTE);
+    }
+
     /**
      * Construct a new instance.
      */
     protected Routine() {
-        super("/*");
+        this("/*");
+    }
+
+    /**
+     * Construct a new instance that only matches the routes under
+     * {@code relativePath}.
+     * 
+     * @param relativePath
+     */
+    protected Routine(String relativePath) {
+        super(relativePath);
     }
 
     @Override
@@ -28,6 +67,17 @@ public abstract class Routine extends AbstractRewritableRoute {
         return "";
     }
 
+    /**
+     * Short-circuit the request and use {@code content} as the response body.
+     * Unlike {@link #halt()}, the after routines that apply to the route are
+     * still run.
+     * 
+     * @param content
+     */
+    protected final void respond(Object content) {
+        request.raw().setAttribute(RESPONSE_ATTRIBUTE, content);
+    }
+
     /**
      * Run the routine. If, for some reason, the routine fails, you may call
      * {@link #halt()}, or redirect to another route or throw an exception.
@@ -0,0 +1,343 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import spark.Request;
+import spark.RequestResponseFactory;
+import spark.Response;
+import spark.route.HttpMethod;
+import spark.route.RouteMatch;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/**
+ * A factory for requests and responses that never touch the network, so that
+ * routes can be exercised in-process (i.e. to warm them up).
+ * <p>
+ * The underlying servlet objects are dynamic proxies that support the
+ * operations that routes typically use: the request has a verb, a path, a
+ * query string, attributes and an empty body and the response records its
+ * status and discards its content.
+ * </p>
+ * 
+ * @author jnelson
+ */
+final class Synthetic {
+
+    /**
+     * Splits a query string into its parameters.
+     */
+    private static final Splitter PARAM_SPLITTER = Splitter.on('&')
+            .omitEmptyStrings();
+
+    /**
+     * Return a {@link Request} with the {@code verb} for the {@code uri},
+     * which may contain a query string, that is matched by the route with
+     * the {@code routePath}.
+     * 
+     * @param verb
+     * @param routePath
+     * @param uri
+     * @return the request
+     */
+    static Request request(Verb verb, String routePath, String uri) {
+        int index = uri.indexOf('?');
+        String path = index >= 0 ? uri.substring(0, index) : uri;
+        String query = index >= 0 ? uri.substring(index + 1) : null;
+        path = path.startsWith("/") ? path : "/" + path;
+        routePath = routePath.startsWith("/") ? routePath : "/" + routePath;
+        HttpServletRequest raw = (HttpServletRequest) Proxy.newProxyInstance(
+                Synthetic.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                new RequestHandler(verb, path, query));
+        RouteMatch match = new RouteMatch(HttpMethod.valueOf(verb.name()
+                .toLowerCase()), null, routePath, path, "*/*");
+        return RequestResponseFactory.create(match, raw);
+    }
+
+    /**
+     * Return a {@link Response} that records its status and discards its
+     * content.
+     * 
+     * @return the response
+     */
+    static Response response() {
+        HttpServletResponse raw = (HttpServletResponse) Proxy
+                .newProxyInstance(Synthetic.class.getClassLoader(),
+                        new Class<?>[] { HttpServletResponse.class },
+                        new ResponseHandler());
+        return RequestResponseFactory.create(raw);
+    }
+
+    /**
+     * Return the default value for a method with the {@code type} of return
+     * value.
+     * 
+     * @param type
+     * @return the default value
+     */
+    private static Object defaultValue(Class<?> type) {
+        if(type == boolean.class) {
+            return false;
+        }
+        else if(type == int.class) {
+            return 0;
+        }
+        else if(type == long.class) {
+            return 0L;
+        }
+        else if(type.isPrimitive() && type != void.class) {
+            return (byte) 0;
+        }
+        else {
+            return null;
+        }
+    }
+
+    private Synthetic() {/* noop */}
+
+    /**
+     * Implements a synthetic {@link HttpServletRequest}.
+     * 
+     * @author jnelson
+     */
+    private static final class RequestHandler implements InvocationHandler {
+
+        /**
+         * The verb of the request.
+         */
+        private final Verb verb;
+
+        /**
+         * The path of the request.
+         */
+        private final String path;
+
+        /**
+         * The query string of the request or {@code null}.
+         */
+        private final String query;
+
+        /**
+         * The query parameters.
+         */
+        private final Map<String, String[]> params;
+
+        /**
+         * The attributes that have been set on the request.
+         */
+        private final Map<String, Object> attributes = Maps
+                .newConcurrentMap();
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param verb
+         * @param path
+         * @param query
+         */
+        private RequestHandler(Verb verb, String path, String query) {
+            this.verb = verb;
+            this.path = path;
+            this.query = query;
+            Map<String, List<String>> params = Maps.newLinkedHashMap();
+            if(query != null) {
+                for (String param : PARAM_SPLITTER.split(query)) {
+                    int index = param.indexOf('=');
+                    String key = index >= 0 ? param.substring(0, index)
+                            : param;
+                    String value = index >= 0 ? param.substring(index + 1)
+                            : "";
+                    if(!params.containsKey(key)) {
+                        params.put(key, Lists.<String> newArrayList());
+                    }
+                    params.get(key).add(value);
+                }
+            }
+            ImmutableMap.Builder<String, String[]> builder = ImmutableMap
+                    .builder();
+            for (Map.Entry<String, List<String>> param : params.entrySet()) {
+                builder.put(param.getKey(), param.getValue().toArray(
+                        new String[param.getValue().size()]));
+            }
+            this.params = builder.build();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+            case "getAttribute":
+                return attributes.get(args[0]);
+            case "setAttribute":
+                if(args[1] == null) {
+                    attributes.remove(args[0]);
+                }
+                else {
+                    attributes.put((String) args[0], args[1]);
+                }
+                return null;
+            case "removeAttribute":
+                attributes.remove(args[0]);
+                return null;
+            case "getAttributeNames":
+                return Collections.enumeration(attributes.keySet());
+            case "getMethod":
+                return verb.name();
+            case "getRequestURI":
+            case "getPathInfo":
+                return path;
+            case "getRequestURL":
+                return new StringBuffer("http://localhost").append(path);
+            case "getServletPath":
+            case "getContextPath":
+                return "";
+            case "getQueryString":
+                return query;
+            case "getParameter":
+                String[] values = params.get(args[0]);
+                return values != null && values.length > 0 ? values[0]
+                        : null;
+            case "getParameterValues":
+                return params.get(args[0]);
+            case "getParameterMap":
+                return params;
+            case "getParameterNames":
+                return Collections.enumeration(params.keySet());
+            case "getHeaderNames":
+            case "getHeaders":
+                return Collections.enumeration(Collections
+                        .<String> emptyList());
+            case "getRemoteAddr":
+            case "getRemoteHost":
+                return "127.0.0.1";
+            case "getContentLength":
+                return -1;
+            case "getInputStream":
+                return new ServletInputStream() {
+
+                    @Override
+                    public int read() {
+                        return -1;
+                    }
+
+                };
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return verb + " " + path;
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+    /**
+     * Implements a synthetic {@link HttpServletResponse}.
+     * 
+     * @author jnelson
+     */
+    private static final class ResponseHandler implements InvocationHandler {
+
+        /**
+         * The status of the response.
+         */
+        private volatile int status = 200;
+
+        /**
+         * The headers that have been set on the response.
+         */
+        private final Map<String, String> headers = Maps.newConcurrentMap();
+
+        /**
+         * Discards the content of the response.
+         */
+        private final OutputStream sink = ByteStreams.nullOutputStream();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+            case "setStatus":
+            case "sendError":
+                status = (Integer) args[0];
+                return null;
+            case "getStatus":
+                return status;
+            case "setHeader":
+            case "addHeader":
+                headers.put((String) args[0], String.valueOf(args[1]));
+                return null;
+            case "getHeader":
+                return headers.get(args[0]);
+            case "containsHeader":
+                return headers.containsKey(args[0]);
+            case "getOutputStream":
+                return new ServletOutputStream() {
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        sink.write(b);
+                    }
+
+                };
+            case "getWriter":
+                return new PrintWriter(new OutputStreamWriter(sink,
+                        Charsets.UTF_8));
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "Synthetic response (" + status + ")";
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+}
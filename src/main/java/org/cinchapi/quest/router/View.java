@@ -1,9 +1,20 @@
 package org.cinchapi.quest.router;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.cinchapi.quest.template.CompiledTemplate;
+import org.cinchapi.quest.template.CompiledTemplates;
+import org.cinchapi.quest.trace.Span;
+
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
 
 /**
@@ -33,8 +44,180 @@ public abstract class View extends AbstractRewritableRoute {
 
     @Override
     public final Object handle() {
-        return template("templates" + File.separator + template()).render(
-                serve());
+        Map<String, Object> data;
+        Span span = startSpan("serve");
+        try {
+            data = serve();
+        }
+        finally {
+            span.close();
+        }
+        span = startSpan("render");
+        try {
+            ResponseBody body = ResponseBody.acquire();
+            render(template(), data, body.writer());
+            return body;
+        }
+        finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Return a fragment of the page, rendered from the {@code template} with
+     * the {@code data}, that is cached under the {@code key} in the
+     * {@link FragmentCache} for {@code ttl}. Put the fragment in the view data
+     * and include it in the page template without escaping it (i.e.
+     * <code>{{{footer}}}</code>):
+     * 
+     * <pre>
+     * data.put(&quot;footer&quot;, fragment(&quot;footer&quot;, 5, TimeUnit.MINUTES,
+     *         &quot;footer.mustache&quot;, new Callable&lt;Map&lt;String, Object&gt;&gt;() {
+     * 
+     *             public Map&lt;String, Object&gt; call() {
+     *                 return loadFooterData();
+     *             }
+     * 
+     *         }));
+     * </pre>
+     * 
+     * The {@code data} is only computed if the fragment has to be rendered,
+     * in which case it is rendered concurrently with the rest of the page.
+     * 
+     * @param key a key that identifies the content of the fragment
+     * @param ttl
+     * @param unit
+     * @param template the name of the fragment template
+     * @param data computes the data for the fragment template
+     * @return the fragment or a {@link Callable} that renders it
+     */
+    protected final Object fragment(final String key, long ttl,
+            TimeUnit unit, final String template,
+            final Callable<Map<String, Object>> data) {
+        String content = FragmentCache.getIfPresent(key);
+        if(content != null) {
+            return content;
+        }
+        final long nanos = unit.toNanos(ttl);
+        return new Callable<String>() {
+
+            @Override
+            public String call() {
+                return FragmentCache.get(key, nanos, new Callable<String>() {
+
+                    @Override
+                    public String call() throws Exception {
+                        StringWriter writer = new StringWriter();
+                        render(template, data.call(), writer);
+                        return writer.toString();
+                    }
+
+                });
+            }
+
+        };
+    }
+
+    /**
+     * Return a copy of the {@code data} in which each {@link Future} value is
+     * replaced with a {@link Callable} that waits for it, so that the template
+     * engine resolves it concurrently with the other values. The {@code data}
+     * is returned as is if it doesn't contain any futures.
+     * 
+     * @param data
+     * @return the data to render
+     */
+    private static Map<String, Object> resolvable(Map<String, Object> data) {
+        Map<String, Object> resolvable = null;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if(entry.getValue() instanceof Future) {
+                if(resolvable == null) {
+                    resolvable = Maps.newHashMap(data);
+                }
+                final Future<?> future = (Future<?>) entry.getValue();
+                resolvable.put(entry.getKey(), new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        return future.get();
+                    }
+
+                });
+            }
+        }
+        return resolvable != null ? resolvable : data;
+    }
+
+    /**
+     * Return a copy of the {@code data} in which each {@link Callable} value is
+     * replaced with a {@link Future} for its result on the template executor,
+     * so that a {@link CompiledTemplate} waits for the values concurrently.
+     * The {@code data} is returned as is if it doesn't contain any callables.
+     * 
+     * @param data
+     * @return the data to render
+     */
+    private static Map<String, Object> submitted(Map<String, Object> data) {
+        Map<String, Object> submitted = null;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if(entry.getValue() instanceof Callable) {
+                if(submitted == null) {
+                    submitted = Maps.newHashMap(data);
+                }
+                submitted.put(entry.getKey(), getExecutorService().submit(
+                        (Callable<?>) entry.getValue()));
+            }
+        }
+        return submitted != null ? submitted : data;
+    }
+
+    /**
+     * Compile the {@link #template()} ahead of time, so that the first request
+     * to this view does not have to. Templates that were compiled at build
+     * time are already loaded.
+     */
+    void precompile() {
+        String path = templatePath(template());
+        if(CompiledTemplates.get(path) == null) {
+            template(path);
+        }
+    }
+
+    /**
+     * Render the template with the {@code name} and the {@code data} to the
+     * {@code writer}. The version of the template that was compiled at build
+     * time is used if there is one, otherwise the template is compiled at
+     * runtime.
+     * 
+     * @param name
+     * @param data
+     * @param writer
+     */
+    private void render(String name, Map<String, Object> data, Writer writer) {
+        String path = templatePath(name);
+        CompiledTemplate compiled = CompiledTemplates.get(path);
+        if(compiled != null) {
+            try {
+                compiled.render(submitted(data), writer);
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        else {
+            template(path).render(resolvable(data), writer);
+        }
+    }
+
+    /**
+     * Return the path of the template with the {@code name} relative to the
+     * working directory.
+     * 
+     * @param name
+     * @return the template path
+     */
+    private static String templatePath(String name) {
+        return "templates" + File.separator + name;
     }
 
     /**
@@ -56,6 +239,13 @@ public abstract class View extends AbstractRewritableRoute {
      * {@link #template()} is expecting.
      * </p>
      * <p>
+     * Any value that is expensive to compute, like the result of a call to a
+     * backend, can be given as a {@link Callable} or a {@link Future}. Those
+     * values are resolved concurrently on a shared executor while the
+     * template renders, so a page that needs several independent lookups
+     * takes as long as the slowest one instead of all of them combined.
+     * </p>
+     * <p>
      * Return {@link #NO_DATA} if there is none to give to the front end
      * template.
      * </p>
@@ -0,0 +1,529 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Request;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link Watchdog} keeps an eye on the requests that are in flight and
+ * profiles the ones that are slow.
+ * <p>
+ * Once a request has been running for longer than the threshold, the watchdog
+ * periodically captures the stack of the thread that is serving it. As soon
+ * as a request crosses the threshold, a {@link Report} with the route, the
+ * parameters and the first stack sample is logged, so that requests which
+ * hang and never complete are still reported. When the slow request
+ * completes, a report with the full timing and all of the stack samples is
+ * logged and kept in memory, so the exact requests that were slow can be
+ * diagnosed without running a profiler.
+ * Requests that complete within the threshold cost no more than being added
+ * to and removed from a concurrent set.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Watchdog {
+
+    /**
+     * The logger to which reports are written.
+     */
+    private static final Logger log = LoggerFactory.getLogger(Watchdog.class);
+
+    /**
+     * Return the values that the {@code request} has for each parameter that
+     * is declared in the path of the {@code route} (i.e. {@code :id}).
+     * 
+     * @param route
+     * @param request
+     * @return the route parameters
+     */
+    private static Map<String, String> params(String route, Request request) {
+        Map<String, String> params = Maps.newLinkedHashMap();
+        for (String segment : Splitter.on('/').split(route)) {
+            if(segment.startsWith(":")) {
+                params.put(segment, request.params(segment));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * The number of nanoseconds after which a request is considered slow.
+     */
+    private final long threshold;
+
+    /**
+     * The maximum number of stack samples captured for each request.
+     */
+    private final int maxSamples;
+
+    /**
+     * The maximum number of reports that are kept in memory.
+     */
+    private final int maxReports;
+
+    /**
+     * The requests that are in flight.
+     */
+    private final Set<Ticket> inFlight = Sets.newSetFromMap(new ConcurrentHashMap<Ticket, Boolean>());
+
+    /**
+     * The most recent reports, oldest first.
+     */
+    private final Deque<Report> reports = new ArrayDeque<Report>();
+
+    /**
+     * The thread that captures stack samples.
+     */
+    private final ScheduledExecutorService sampler;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param threshold the amount of time after which a request is slow
+     * @param interval the amount of time between stack samples
+     * @param unit the unit for {@code threshold} and {@code interval}
+     * @param maxSamples the maximum number of samples per request
+     * @param maxReports the maximum number of reports to keep in memory
+     */
+    public Watchdog(long threshold, long interval, TimeUnit unit,
+            int maxSamples, int maxReports) {
+        Preconditions.checkArgument(interval > 0,
+                "The sample interval must be positive");
+        this.threshold = unit.toNanos(threshold);
+        this.maxSamples = maxSamples;
+        this.maxReports = maxReports;
+        this.sampler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("quest-watchdog").build());
+        this.sampler.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                sample();
+            }
+
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stop sampling requests.
+     */
+    public void close() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * Return a report for each request that is still in flight and has
+     * exceeded the threshold, with the stack samples that have been captured
+     * so far.
+     * 
+     * @return the in flight reports
+     */
+    public List<Report> getInFlightReports() {
+        List<Report> reports = Lists.newArrayList();
+        long now = System.nanoTime();
+        for (Ticket ticket : inFlight) {
+            long elapsed = now - ticket.start;
+            if(elapsed >= threshold) {
+                reports.add(report(ticket, elapsed, false));
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Return the most recent reports of slow requests that have completed,
+     * oldest first.
+     * 
+     * @return the reports
+     */
+    public List<Report> getReports() {
+        synchronized (reports) {
+            return ImmutableList.copyOf(reports);
+        }
+    }
+
+    /**
+     * Record that the request for the {@code ticket} has completed and, if it
+     * was slow, report it.
+     * 
+     * @param ticket
+     */
+    void complete(Ticket ticket) {
+        inFlight.remove(ticket);
+        long duration = System.nanoTime() - ticket.start;
+        if(duration >= threshold) {
+            Report report = report(ticket, duration, true);
+            synchronized (reports) {
+                reports.addLast(report);
+                while (reports.size() > maxReports) {
+                    reports.removeFirst();
+                }
+            }
+            log.warn("{}", report);
+        }
+    }
+
+    /**
+     * Start tracking the {@code request} that is being served by the current
+     * thread.
+     * 
+     * @param route
+     * @param request
+     * @return the ticket to pass to {@link #complete(Ticket)}
+     */
+    Ticket track(String route, Request request) {
+        Ticket ticket = new Ticket(route, request);
+        inFlight.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Return a {@link Report} for the request of the {@code ticket}.
+     * 
+     * @param ticket
+     * @param duration the number of nanoseconds the request has taken so far
+     * @param complete a flag that indicates whether the request has completed
+     * @return the report
+     */
+    private Report report(Ticket ticket, long duration, boolean complete) {
+        List<Sample> samples;
+        synchronized (ticket) {
+            samples = ImmutableList.copyOf(ticket.samples);
+        }
+        Map<String, String> params = Collections.emptyMap();
+        String query = null;
+        try {
+            params = params(ticket.route, ticket.request);
+            query = ticket.request.queryString();
+        }
+        catch (RuntimeException e) {/* best effort */}
+        return new Report(ticket.route, params, query, ticket.startTime,
+                duration, complete, samples);
+    }
+
+    /**
+     * Capture a stack sample for each in flight request that has exceeded the
+     * threshold and log a report for each one that has just crossed it.
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        for (Ticket ticket : inFlight) {
+            long elapsed = now - ticket.start;
+            if(elapsed >= threshold) {
+                StackTraceElement[] stack = ticket.thread.getStackTrace();
+                boolean crossed = false;
+                synchronized (ticket) {
+                    if(ticket.samples.size() < maxSamples
+                            && inFlight.contains(ticket)) {
+                        ticket.samples.add(new Sample(TimeUnit.NANOSECONDS
+                                .toMillis(elapsed), stack));
+                        crossed = ticket.samples.size() == 1;
+                    }
+                }
+                if(crossed) {
+                    log.warn("{}", report(ticket, elapsed, false));
+                }
+            }
+        }
+    }
+
+    /**
+     * A description of a slow request.
+     * 
+     * @author jnelson
+     */
+    public static final class Report {
+
+        /**
+         * The verb and namespaced path of the route.
+         */
+        private final String route;
+
+        /**
+         * The route parameters.
+         */
+        private final Map<String, String> params;
+
+        /**
+         * The query string.
+         */
+        @Nullable
+        private final String query;
+
+        /**
+         * The wall clock time, in milliseconds, at which the request started.
+         */
+        private final long startTime;
+
+        /**
+         * The number of nanoseconds it took to serve the request or, if the
+         * request is still in flight, that it has taken so far.
+         */
+        private final long duration;
+
+        /**
+         * A flag that indicates whether the request has completed.
+         */
+        private final boolean complete;
+
+        /**
+         * The stack samples, in the order they were captured.
+         */
+        private final List<Sample> samples;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param route
+         * @param params
+         * @param query
+         * @param startTime
+         * @param duration
+         * @param complete
+         * @param samples
+         */
+        private Report(String route, Map<String, String> params,
+                @Nullable String query, long startTime, long duration,
+                boolean complete, List<Sample> samples) {
+            this.route = route;
+            this.params = params;
+            this.query = query;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.complete = complete;
+            this.samples = samples;
+        }
+
+        /**
+         * Return the number of nanoseconds it took to serve the request or, if
+         * the request is still in flight, that it has taken so far.
+         * 
+         * @return the duration
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Return the route parameters.
+         * 
+         * @return the params
+         */
+        public Map<String, String> getParams() {
+            return params;
+        }
+
+        /**
+         * Return the query string.
+         * 
+         * @return the query string or {@code null}
+         */
+        @Nullable
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * Return the verb and namespaced path of the route.
+         * 
+         * @return the route
+         */
+        public String getRoute() {
+            return route;
+        }
+
+        /**
+         * Return the stack samples, in the order they were captured.
+         * 
+         * @return the samples
+         */
+        public List<Sample> getSamples() {
+            return samples;
+        }
+
+        /**
+         * Return the wall clock time, in milliseconds, at which the request
+         * started.
+         * 
+         * @return the start time
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Return {@code true} if the request has completed or {@code false}
+         * if it is still in flight.
+         * 
+         * @return {@code true} if the request has completed
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Slow request to ").append(route)
+                    .append(complete ? " took " : " has been running for ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(duration))
+                    .append("ms (params=").append(params).append(", query=")
+                    .append(query).append(")");
+            for (Sample sample : samples) {
+                sb.append(System.lineSeparator()).append("  at +")
+                        .append(sample.getOffset()).append("ms:");
+                for (StackTraceElement frame : sample.getStack()) {
+                    sb.append(System.lineSeparator()).append("    ")
+                            .append(frame);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A stack captured while a slow request was being served.
+     * 
+     * @author jnelson
+     */
+    public static final class Sample {
+
+        /**
+         * The number of milliseconds into the request at which the stack was
+         * captured.
+         */
+        private final long offset;
+
+        /**
+         * The stack.
+         */
+        private final StackTraceElement[] stack;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param offset
+         * @param stack
+         */
+        private Sample(long offset, StackTraceElement[] stack) {
+            this.offset = offset;
+            this.stack = stack;
+        }
+
+        /**
+         * Return the number of milliseconds into the request at which the
+         * stack was captured.
+         * 
+         * @return the offset
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Return the stack.
+         * 
+         * @return the stack
+         */
+        public StackTraceElement[] getStack() {
+            return stack.clone();
+        }
+    }
+
+    /**
+     * The record of a request that is being tracked.
+     * 
+     * @author jnelson
+     */
+    static final class Ticket {
+
+        /**
+         * The verb and namespaced path of the route.
+         */
+        final String route;
+
+        /**
+         * The request.
+         */
+        final Request request;
+
+        /**
+         * The thread that is serving the request.
+         */
+        final Thread thread = Thread.currentThread();
+
+        /**
+         * The {@link System#nanoTime()} at which the request started.
+         */
+        final long start = System.nanoTime();
+
+        /**
+         * The wall clock time, in milliseconds, at which the request started.
+         */
+        final long startTime = System.currentTimeMillis();
+
+        /**
+         * The stack samples, guarded by this ticket.
+         */
+        final List<Sample> samples = Lists.newArrayListWithCapacity(0);
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param route
+         * @param request
+         */
+        private Ticket(String route, Request request) {
+            this.route = route;
+            this.request = request;
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.server;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import spark.Spark;
+
+/**
+ * Reports on the thread pool of the web server that is embedded in Spark,
+ * which serves the application that doesn't run on its own
+ * {@link ServerEngine}. Spark doesn't expose its server, so the pool is
+ * looked up reflectively and each count is {@code -1} if it can't be found,
+ * including when the embedded server is not running.
+ * 
+ * @author jnelson
+ */
+public final class EmbeddedServer {
+
+    /**
+     * Return the number of threads that are serving requests or {@code -1}
+     * if the embedded server is not running. Jetty runs its acceptors and
+     * selectors on the same pool as requests, so they are counted as active.
+     * 
+     * @return the active thread count
+     */
+    public static int getActiveThreadCount() {
+        QueuedThreadPool pool = pool();
+        return pool != null ? pool.getThreads() - pool.getIdleThreads() : -1;
+    }
+
+    /**
+     * Return the number of threads that are waiting for a request to serve
+     * or {@code -1} if the embedded server is not running.
+     * 
+     * @return the idle thread count
+     */
+    public static int getIdleThreadCount() {
+        QueuedThreadPool pool = pool();
+        return pool != null ? pool.getIdleThreads() : -1;
+    }
+
+    /**
+     * Return the number of requests that are waiting for a thread to serve
+     * them or {@code -1} if the embedded server is not running.
+     * 
+     * @return the queued request count
+     */
+    public static int getQueuedRequestCount() {
+        QueuedThreadPool pool = pool();
+        if(pool != null) {
+            try {
+                Method getQueue = QueuedThreadPool.class
+                        .getDeclaredMethod("getQueue");
+                getQueue.setAccessible(true);
+                return ((BlockingQueue<?>) getQueue.invoke(pool)).size();
+            }
+            catch (ReflectiveOperationException e) {
+                return -1;
+            }
+        }
+        else {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the thread pool of the embedded server or {@code null} if it is
+     * not running.
+     * 
+     * @return the pool
+     */
+    @Nullable
+    private static QueuedThreadPool pool() {
+        try {
+            Field field = Spark.class.getDeclaredField("server");
+            field.setAccessible(true);
+            Object spark = field.get(null);
+            if(spark == null) {
+                return null;
+            }
+            field = spark.getClass().getDeclaredField("server");
+            field.setAccessible(true);
+            Server server = (Server) field.get(spark);
+            ThreadPool pool = server != null ? server.getThreadPool() : null;
+            if(pool instanceof QueuedThreadPool
+                    && ((QueuedThreadPool) pool).isRunning()) {
+                return (QueuedThreadPool) pool;
+            }
+            else {
+                return null;
+            }
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    private EmbeddedServer() {/* noop */}
+
+}
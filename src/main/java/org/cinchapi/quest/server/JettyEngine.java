@@ -0,0 +1,643 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.server;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link ServerEngine} that runs its own instance of the Jetty web server,
+ * which is the same server that Spark embeds, so that it can be tuned and so
+ * that several applications can run in the same JVM.
+ * <p>
+ * In addition to the common settings, the number of acceptor and selector
+ * threads and the size of the worker pool can be set. Binding with
+ * {@code SO_REUSEPORT} requires a version of Jetty that supports it; on older
+ * versions, such as the Jetty 9.0 that Spark 1.1.1 depends on, the engine
+ * refuses to start instead of silently binding without it.
+ * </p>
+ * <p>
+ * The engine can {@link #setKeyStore(String, String) serve TLS} using a local
+ * keystore and can {@link #setHttp2Enabled(boolean) serve HTTP/2}, so that
+ * browsers multiplex their requests over a single connection and compress
+ * their headers. Without TLS, HTTP/2 is served in cleartext ({@code h2c}),
+ * either after an upgrade from HTTP/1.1 or with prior knowledge. With TLS,
+ * the protocol is negotiated using ALPN and clients that don't support
+ * HTTP/2 fall back to HTTP/1.1.
+ * </p>
+ * <p>
+ * HTTP/2 was added in Jetty 9.3, so it requires {@code jetty-server} and the
+ * {@code jetty-http2-server} module (and {@code jetty-alpn-server} for TLS)
+ * from Jetty 9.3 or newer on the classpath. Spark 1.1.1 depends on Jetty
+ * 9.0.2, so serving HTTP/2 means overriding the application's Jetty
+ * dependencies, after which only the engines can serve the application
+ * because the web server that is embedded in Spark doesn't run on the newer
+ * Jetty. If the Jetty on the classpath can't serve HTTP/2 or doesn't support
+ * one of the HTTP/2 settings, the engine fails to {@link #start(int, Handler)
+ * start} instead of quietly serving HTTP/1.1 alone.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public class JettyEngine extends ServerEngine {
+
+    /**
+     * The default maximum number of worker threads.
+     */
+    private static final int DEFAULT_MAX_THREADS = 200;
+
+    /**
+     * The default minimum number of worker threads.
+     */
+    private static final int DEFAULT_MIN_THREADS = 8;
+
+    /**
+     * The connection factory for HTTP/2 over TLS.
+     */
+    private static final String H2_FACTORY = "org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory";
+
+    /**
+     * The connection factory for cleartext HTTP/2.
+     */
+    private static final String H2C_FACTORY = "org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory";
+
+    /**
+     * The connection factory that negotiates the protocol of a TLS connection.
+     */
+    private static final String ALPN_FACTORY = "org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory";
+
+    /**
+     * The cipher suite ordering that HTTP/2 requires.
+     */
+    private static final String H2_CIPHER = "org.eclipse.jetty.http2.HTTP2Cipher";
+
+    /**
+     * The explanation of what serving HTTP/2 requires.
+     */
+    private static final String H2_REQUIREMENT = "Serving HTTP/2 requires "
+            + "jetty-server and jetty-http2-server and, for TLS, "
+            + "jetty-alpn-server from Jetty 9.3 or newer on the classpath";
+
+    private static final Logger log = LoggerFactory
+            .getLogger(JettyEngine.class);
+
+    /**
+     * Check that the version of Jetty on the classpath can serve HTTP/2.
+     * 
+     * @throws IllegalStateException if it can't
+     */
+    private static void checkHttp2() {
+        String version = Server.getVersion();
+        String[] parts = version.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            if(major < 9 || (major == 9 && minor < 3)) {
+                throw new IllegalStateException(H2_REQUIREMENT + ", but the "
+                        + "classpath has Jetty " + version);
+            }
+        }
+        catch (NumberFormatException e) {
+            // The version is unknown, so the classes that serve HTTP/2 are
+            // left to prove whether it is supported
+            log.debug("Cannot parse the Jetty version {}", version);
+        }
+    }
+
+    /**
+     * Return a new instance of the class with the {@code name} using the
+     * constructor that takes the {@code types} of {@code args}.
+     * 
+     * @param name
+     * @param types
+     * @param args
+     * @return the instance
+     * @throws IllegalStateException if the class or constructor doesn't exist
+     */
+    private static Object construct(String name, Class<?>[] types,
+            Object... args) {
+        try {
+            return Class.forName(name).getConstructor(types).newInstance(args);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            throw new IllegalStateException(H2_REQUIREMENT, e);
+        }
+        catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        catch (ReflectiveOperationException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Invoke the public method with the {@code name} on the {@code target}
+     * with an argument of the {@code type}.
+     * 
+     * @param target
+     * @param name
+     * @param type
+     * @param arg
+     * @throws IllegalStateException if the method doesn't exist
+     */
+    private static void invoke(Object target, String name, Class<?> type,
+            Object arg) {
+        try {
+            target.getClass().getMethod(name, type).invoke(target, arg);
+        }
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException(H2_REQUIREMENT + ", but "
+                    + target.getClass().getName() + " doesn't have " + name,
+                    e);
+        }
+        catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        catch (ReflectiveOperationException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * The number of threads that accept connections or {@code -1} to let
+     * Jetty decide.
+     */
+    private int acceptors = -1;
+
+    /**
+     * The number of threads that select on connections or {@code -1} to let
+     * Jetty decide.
+     */
+    private int selectors = -1;
+
+    /**
+     * A flag that indicates whether HTTP/2 is served.
+     */
+    private boolean http2 = false;
+
+    /**
+     * The size, in bytes, of the flow-control window of each HTTP/2 session
+     * or {@code 0} to let Jetty decide.
+     */
+    private int initialSessionWindow = 0;
+
+    /**
+     * The size, in bytes, of the flow-control window of each HTTP/2 stream or
+     * {@code 0} to let Jetty decide.
+     */
+    private int initialStreamWindow = 0;
+
+    /**
+     * The password of the {@link #keyStorePath keystore}.
+     */
+    @Nullable
+    private String keyStorePassword = null;
+
+    /**
+     * The path of the keystore that holds the certificate for TLS or
+     * {@code null} to serve cleartext.
+     */
+    @Nullable
+    private String keyStorePath = null;
+
+    /**
+     * The maximum number of concurrent streams on each HTTP/2 connection or
+     * {@code 0} to let Jetty decide.
+     */
+    private int maxConcurrentStreams = 0;
+
+    /**
+     * The maximum number of worker threads.
+     */
+    private int maxThreads = DEFAULT_MAX_THREADS;
+
+    /**
+     * The minimum number of worker threads.
+     */
+    private int minThreads = DEFAULT_MIN_THREADS;
+
+    /**
+     * The running server or {@code null} if the engine is not started.
+     */
+    @Nullable
+    private Server server = null;
+
+    /**
+     * The jobs that are waiting for a thread of the running server or
+     * {@code null} if the engine is not started.
+     */
+    @Nullable
+    private BlockingQueue<Runnable> jobs = null;
+
+    /**
+     * Return the number of threads that accept connections or {@code -1} if
+     * Jetty decides.
+     * 
+     * @return the acceptor count
+     */
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Jetty runs its acceptors and selectors on the same pool as requests,
+     * so they are counted as active.
+     * </p>
+     */
+    @Override
+    public synchronized int getActiveThreadCount() {
+        if(server != null) {
+            QueuedThreadPool pool = (QueuedThreadPool) server.getThreadPool();
+            return pool.getThreads() - pool.getIdleThreads();
+        }
+        else {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized int getIdleThreadCount() {
+        return server != null ? ((QueuedThreadPool) server.getThreadPool())
+                .getIdleThreads() : -1;
+    }
+
+    /**
+     * Return the size, in bytes, of the flow-control window of each HTTP/2
+     * session or {@code 0} if Jetty decides.
+     * 
+     * @return the session window
+     */
+    public int getInitialSessionWindow() {
+        return initialSessionWindow;
+    }
+
+    /**
+     * Return the size, in bytes, of the flow-control window of each HTTP/2
+     * stream or {@code 0} if Jetty decides.
+     * 
+     * @return the stream window
+     */
+    public int getInitialStreamWindow() {
+        return initialStreamWindow;
+    }
+
+    /**
+     * Return the maximum number of concurrent streams on each HTTP/2
+     * connection or {@code 0} if Jetty decides.
+     * 
+     * @return the stream limit
+     */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * Return the maximum number of worker threads.
+     * 
+     * @return the max threads
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Return the minimum number of worker threads.
+     * 
+     * @return the min threads
+     */
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    @Override
+    public synchronized int getQueuedRequestCount() {
+        return jobs != null ? jobs.size() : -1;
+    }
+
+    /**
+     * Return the number of threads that select on connections or {@code -1}
+     * if Jetty decides.
+     * 
+     * @return the selector count
+     */
+    public int getSelectors() {
+        return selectors;
+    }
+
+    /**
+     * Return {@code true} if HTTP/2 is served.
+     * 
+     * @return {@code true} if HTTP/2 is enabled
+     */
+    public boolean isHttp2Enabled() {
+        return http2;
+    }
+
+    /**
+     * Set the number of threads that accept connections. By default, Jetty
+     * decides based on the number of processors.
+     * 
+     * @param acceptors
+     */
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    /**
+     * Serve HTTP/2 in addition to HTTP/1.1. This requires Jetty 9.3 or newer
+     * and its HTTP/2 modules on the classpath, otherwise the engine fails to
+     * {@link #start(int, Handler) start}.
+     * 
+     * @param enabled
+     */
+    public void setHttp2Enabled(boolean enabled) {
+        this.http2 = enabled;
+    }
+
+    /**
+     * Set the size, in bytes, of the flow-control windows that each HTTP/2
+     * {@code session} and each {@code stream} within it start with. Larger
+     * windows let a client upload more data before it has to wait for the
+     * server to acknowledge it. By default, Jetty decides.
+     * 
+     * @param session
+     * @param stream
+     */
+    public void setInitialWindows(int session, int stream) {
+        Preconditions.checkArgument(session > 0 && stream > 0
+                && stream <= session,
+                "The windows must satisfy 0 < stream <= session");
+        this.initialSessionWindow = session;
+        this.initialStreamWindow = stream;
+    }
+
+    /**
+     * Serve TLS using the certificate in the keystore at {@code path}.
+     * 
+     * @param path
+     * @param password
+     */
+    public void setKeyStore(String path, String password) {
+        this.keyStorePath = path;
+        this.keyStorePassword = password;
+    }
+
+    /**
+     * Set the maximum number of streams that a client can have open
+     * concurrently on each HTTP/2 connection, which is the number of requests
+     * that it can multiplex. By default, Jetty decides.
+     * 
+     * @param max
+     */
+    public void setMaxConcurrentStreams(int max) {
+        Preconditions.checkArgument(max > 0);
+        this.maxConcurrentStreams = max;
+    }
+
+    /**
+     * Set the minimum and maximum number of worker threads.
+     * 
+     * @param min
+     * @param max
+     */
+    public void setThreads(int min, int max) {
+        Preconditions.checkArgument(min > 0 && min <= max,
+                "The thread counts must satisfy 0 < min <= max");
+        this.minThreads = min;
+        this.maxThreads = max;
+    }
+
+    /**
+     * Set the number of threads that select on connections. By default, Jetty
+     * decides based on the number of processors.
+     * 
+     * @param selectors
+     */
+    public void setSelectors(int selectors) {
+        this.selectors = selectors;
+    }
+
+    @Override
+    public synchronized void start(int port, final Handler handler)
+            throws IOException {
+        Preconditions.checkState(server == null, "The engine is running");
+        if(http2) {
+            checkHttp2();
+        }
+        // The queue is the one that Jetty creates by default, but the engine
+        // keeps it in order to report how many requests are waiting on it
+        BlockingQueue<Runnable> jobs = new BlockingArrayQueue<Runnable>(
+                minThreads, minThreads);
+        QueuedThreadPool pool = new QueuedThreadPool(maxThreads, minThreads,
+                (int) getIdleTimeout(), jobs);
+        pool.setName("quest-jetty");
+        Server server = new Server(pool);
+        HttpConfiguration config = new HttpConfiguration();
+        config.setRequestHeaderSize(getRequestBufferSize());
+        config.setOutputBufferSize(getResponseBufferSize());
+        config.setSendServerVersion(false);
+        ServerConnector connector = new ServerConnector(server, null, null,
+                null, acceptors, selectors, connectionFactories(config));
+        connector.setPort(port);
+        connector.setIdleTimeout(getIdleTimeout());
+        connector.setReuseAddress(true);
+        if(getBacklog() > 0) {
+            connector.setAcceptQueueSize(getBacklog());
+        }
+        if(isReusePort()) {
+            reusePort(connector);
+        }
+        server.addConnector(connector);
+        final int maxRequests = getMaxRequestsPerConnection();
+        server.setHandler(new AbstractHandler() {
+
+            @Override
+            public void handle(String target, Request base,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException {
+                if(maxRequests > 0
+                        && base.getHttpChannel().getRequests() >= maxRequests) {
+                    response.setHeader("Connection", "close");
+                }
+                if(handler.handle(request, response)) {
+                    base.setHandled(true);
+                }
+            }
+
+        });
+        try {
+            server.start();
+        }
+        catch (Exception e) {
+            Throwables.propagateIfInstanceOf(e, IOException.class);
+            throw Throwables.propagate(e);
+        }
+        this.server = server;
+        this.jobs = jobs;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if(server != null) {
+            try {
+                server.stop();
+            }
+            catch (Exception e) {
+                throw Throwables.propagate(e);
+            }
+            finally {
+                server = null;
+                jobs = null;
+            }
+        }
+    }
+
+    /**
+     * Return the factories for the connections that the engine accepts, in
+     * the order in which each connection passes through them.
+     * 
+     * @param config
+     * @return the connection factories
+     */
+    private ConnectionFactory[] connectionFactories(HttpConfiguration config) {
+        HttpConnectionFactory http = new HttpConnectionFactory(config);
+        http.setInputBufferSize(getRequestBufferSize());
+        List<ConnectionFactory> factories = Lists.newArrayList();
+        if(keyStorePath != null) {
+            config.setSecureScheme("https");
+            config.addCustomizer(new SecureRequestCustomizer());
+            SslContextFactory ssl = new SslContextFactory();
+            ssl.setKeyStorePath(keyStorePath);
+            ssl.setKeyStorePassword(keyStorePassword);
+            ssl.setKeyManagerPassword(keyStorePassword);
+            if(http2) {
+                ConnectionFactory h2 = http2(H2_FACTORY, config);
+                ConnectionFactory alpn = (ConnectionFactory) construct(
+                        ALPN_FACTORY, new Class<?>[] { String[].class },
+                        (Object) new String[] { "h2", http.getProtocol() });
+                invoke(alpn, "setDefaultProtocol", String.class,
+                        http.getProtocol());
+                try {
+                    invoke(ssl, "setCipherComparator", Comparator.class,
+                            Class.forName(H2_CIPHER).getField("COMPARATOR")
+                                    .get(null));
+                }
+                catch (ClassNotFoundException | NoSuchFieldException e) {
+                    throw new IllegalStateException(H2_REQUIREMENT, e);
+                }
+                catch (ReflectiveOperationException e) {
+                    throw Throwables.propagate(e);
+                }
+                invoke(ssl, "setUseCipherSuitesOrder", boolean.class, true);
+                factories.add(new SslConnectionFactory(ssl, "alpn"));
+                factories.add(alpn);
+                factories.add(h2);
+            }
+            else {
+                factories.add(new SslConnectionFactory(ssl, http.getProtocol()));
+            }
+            factories.add(http);
+        }
+        else {
+            factories.add(http);
+            if(http2) {
+                factories.add(http2(H2C_FACTORY, config));
+            }
+        }
+        return factories.toArray(new ConnectionFactory[factories.size()]);
+    }
+
+    /**
+     * Return a new HTTP/2 connection factory of the class with the
+     * {@code name} that applies the stream and flow-control settings.
+     * 
+     * @param name
+     * @param config
+     * @return the connection factory
+     */
+    private ConnectionFactory http2(String name, HttpConfiguration config) {
+        ConnectionFactory factory = (ConnectionFactory) construct(name,
+                new Class<?>[] { HttpConfiguration.class }, config);
+        if(maxConcurrentStreams > 0) {
+            invoke(factory, "setMaxConcurrentStreams", int.class,
+                    maxConcurrentStreams);
+        }
+        if(initialSessionWindow > 0) {
+            invoke(factory, "setInitialSessionRecvWindow", int.class,
+                    initialSessionWindow);
+            invoke(factory, "setInitialStreamRecvWindow", int.class,
+                    initialStreamWindow);
+        }
+        return factory;
+    }
+
+    /**
+     * Bind the {@code connector} with {@code SO_REUSEPORT}.
+     * 
+     * @param connector
+     * @throws IllegalStateException if the version of Jetty does not support
+     *             {@code SO_REUSEPORT}
+     */
+    private void reusePort(ServerConnector connector) {
+        try {
+            Method method = connector.getClass().getMethod("setReusePort",
+                    boolean.class);
+            method.invoke(connector, true);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                    "This version of Jetty does not support SO_REUSEPORT", e);
+        }
+    }
+
+}
@@ -0,0 +1,833 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link ServerEngine} that is built directly on the non-blocking I/O in
+ * the JDK, with no other dependencies.
+ * <p>
+ * A single selector thread accepts connections and reads requests. Once the
+ * head and body of a request have been read, the request is served on a pool
+ * of worker threads, which buffer the response and write it with a single
+ * gathering write. Connections are kept alive, pipelined requests are served
+ * in order and connections that are idle for longer than the idle timeout are
+ * closed.
+ * </p>
+ * <p>
+ * This engine is deliberately minimal: request bodies must have a
+ * {@code Content-Length} (chunked requests are rejected with a 501) and are
+ * read in full before the request is served, responses are never streamed
+ * and only HTTP/1.x is supported.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public class NioEngine extends ServerEngine {
+
+    /**
+     * The interim response to a request that expects {@code 100-continue}.
+     */
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n"
+            .getBytes(Charsets.ISO_8859_1);
+
+    /**
+     * The default maximum size, in bytes, of a request body.
+     */
+    private static final int DEFAULT_MAX_BODY_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * The number of milliseconds between checks for idle connections.
+     */
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(NioEngine.class);
+
+    /**
+     * Return the index just past the blank line that ends the head of a
+     * request in the first {@code limit} bytes of the {@code buffer} or
+     * {@code -1} if the head is incomplete.
+     * 
+     * @param buffer
+     * @param limit
+     * @return the length of the head or {@code -1}
+     */
+    private static int headLength(ByteBuffer buffer, int limit) {
+        for (int i = 3; i < limit; ++i) {
+            if(buffer.get(i) == '\n' && buffer.get(i - 1) == '\r'
+                    && buffer.get(i - 2) == '\n' && buffer.get(i - 3) == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The maximum size, in bytes, of a request body.
+     */
+    private int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
+    /**
+     * The number of threads that serve requests.
+     */
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * The handler that serves each request.
+     */
+    private Handler handler;
+
+    /**
+     * The selector on which all connections are registered.
+     */
+    private Selector selector;
+
+    /**
+     * The listening socket.
+     */
+    private ServerSocketChannel server;
+
+    /**
+     * The threads that serve requests.
+     */
+    private ThreadPoolExecutor workers;
+
+    /**
+     * The thread that runs the selector loop or {@code null} if the engine is
+     * not started.
+     */
+    @Nullable
+    private Thread loop = null;
+
+    /**
+     * A flag that indicates whether the engine is running.
+     */
+    private volatile boolean running = false;
+
+    /**
+     * The connections whose request has been served by a worker and that must
+     * be handed back to the selector thread.
+     */
+    private final Queue<Connection> served = new ConcurrentLinkedQueue<Connection>();
+
+    @Override
+    public synchronized int getActiveThreadCount() {
+        return loop != null ? workers.getActiveCount() : -1;
+    }
+
+    @Override
+    public synchronized int getIdleThreadCount() {
+        return loop != null ? workers.getPoolSize() - workers.getActiveCount()
+                : -1;
+    }
+
+    /**
+     * Return the maximum size, in bytes, of a request body.
+     * 
+     * @return the max body size
+     */
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    @Override
+    public synchronized int getQueuedRequestCount() {
+        return loop != null ? workers.getQueue().size() : -1;
+    }
+
+    /**
+     * Return the number of threads that serve requests.
+     * 
+     * @return the worker count
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Set the maximum size, in bytes, of a request body. Larger requests are
+     * rejected with a 413.
+     * 
+     * @param size
+     */
+    public void setMaxBodySize(int size) {
+        Preconditions.checkArgument(size >= 0);
+        this.maxBodySize = size;
+    }
+
+    /**
+     * Set the number of threads that serve requests. By default, there are
+     * twice as many workers as processors.
+     * 
+     * @param threads
+     */
+    public void setWorkerThreads(int threads) {
+        Preconditions.checkArgument(threads > 0);
+        this.workerThreads = threads;
+    }
+
+    @Override
+    public synchronized void start(int port, Handler handler)
+            throws IOException {
+        Preconditions.checkState(loop == null, "The engine is running");
+        this.handler = handler;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if(isReusePort()) {
+                SocketOption<Boolean> option = reusePortOption();
+                if(option == null
+                        || !server.supportedOptions().contains(option)) {
+                    throw new IllegalStateException(
+                            "This JDK does not support SO_REUSEPORT");
+                }
+                server.setOption(option, true);
+            }
+            server.bind(new InetSocketAddress(port), getBacklog());
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException | RuntimeException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("quest-nio-worker-%d").build());
+        running = true;
+        loop = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                select();
+            }
+
+        }, "quest-nio-selector");
+        loop.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if(loop != null) {
+            running = false;
+            selector.wakeup();
+            try {
+                loop.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                workers.shutdownNow();
+                loop = null;
+            }
+        }
+    }
+
+    /**
+     * Accept all the pending connections.
+     * 
+     * @throws IOException
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector,
+                        SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key));
+            }
+            catch (IOException e) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Run the selector loop until the engine is {@link #stop() stopped}.
+     */
+    private void select() {
+        long sweep = System.currentTimeMillis() + SWEEP_INTERVAL;
+        try {
+            while (running) {
+                selector.select(SWEEP_INTERVAL);
+                Connection connection;
+                while ((connection = served.poll()) != null) {
+                    try {
+                        connection.flush();
+                    }
+                    catch (IOException | CancelledKeyException e) {
+                        connection.close();
+                    }
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    connection = (Connection) key.attachment();
+                    try {
+                        if(!key.isValid()) {
+                            continue;
+                        }
+                        else if(key.isAcceptable()) {
+                            accept();
+                        }
+                        else if(key.isWritable()) {
+                            connection.flush();
+                        }
+                        else if(key.isReadable()) {
+                            connection.read();
+                        }
+                    }
+                    catch (IOException | CancelledKeyException e) {
+                        if(connection != null) {
+                            connection.close();
+                        }
+                        else {
+                            log.warn("Could not accept a connection", e);
+                        }
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if(now >= sweep) {
+                    sweep(now);
+                    sweep = now + SWEEP_INTERVAL;
+                }
+            }
+        }
+        catch (IOException e) {
+            log.error("The selector loop failed", e);
+        }
+        finally {
+            for (SelectionKey key : selector.keys()) {
+                if(key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                server.close();
+                selector.close();
+            }
+            catch (IOException e) {
+                log.warn("Could not close the listening socket", e);
+            }
+        }
+    }
+
+    /**
+     * Close each connection that has not been active since the idle timeout
+     * before {@code now}.
+     * 
+     * @param now
+     */
+    private void sweep(long now) {
+        long cutoff = now - getIdleTimeout();
+        for (SelectionKey key : selector.keys()) {
+            if(key.attachment() instanceof Connection) {
+                Connection connection = (Connection) key.attachment();
+                if(!connection.busy && connection.lastActive < cutoff) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link Connection} holds the state of a single client connection.
+     * <p>
+     * The connection is owned by the selector thread while it reads a request
+     * and by a worker thread while the request is {@link #busy being served},
+     * during which it isn't registered for any events. The worker hands the
+     * connection back to the selector thread once it has written as much of
+     * the response as the socket would take.
+     * </p>
+     * 
+     * @author jnelson
+     */
+    private final class Connection {
+
+        /**
+         * The socket.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The registration of the {@link #channel} with the selector.
+         */
+        private final SelectionKey key;
+
+        /**
+         * The address of the client.
+         */
+        private final InetSocketAddress remote;
+
+        /**
+         * The address on which the connection was accepted.
+         */
+        private final InetSocketAddress local;
+
+        /**
+         * The bytes that have been read but not yet served, in write mode.
+         */
+        private ByteBuffer in = ByteBuffer.allocate(getRequestBufferSize());
+
+        /**
+         * The response that remains to be written or {@code null}.
+         */
+        @Nullable
+        private ByteBuffer[] out = null;
+
+        /**
+         * A flag that indicates whether the connection is closed once the
+         * {@link #out pending response} is written.
+         */
+        private boolean closeAfterWrite = false;
+
+        /**
+         * The head of the request whose body is being read or {@code null}.
+         */
+        @Nullable
+        private Head head = null;
+
+        /**
+         * The number of requests that have been served on this connection.
+         */
+        private int requests = 0;
+
+        /**
+         * The time, in milliseconds, at which the connection was last active.
+         */
+        private volatile long lastActive = System.currentTimeMillis();
+
+        /**
+         * A flag that indicates whether a request is being served or a
+         * response is being written, so that the connection is never swept.
+         */
+        private volatile boolean busy = false;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param channel
+         * @param key
+         * @throws IOException
+         */
+        private Connection(SocketChannel channel, SelectionKey key)
+                throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.remote = (InetSocketAddress) channel.getRemoteAddress();
+            this.local = (InetSocketAddress) channel.getLocalAddress();
+        }
+
+        /**
+         * Close the connection.
+         */
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                // ignore
+            }
+        }
+
+        /**
+         * Write as much of the pending response as the socket will take and
+         * then go back to reading if the response is complete. This is also
+         * how the selector thread picks the connection back up after a worker
+         * has served a request.
+         * 
+         * @throws IOException
+         */
+        void flush() throws IOException {
+            channel.write(out);
+            lastActive = System.currentTimeMillis();
+            if(!out[out.length - 1].hasRemaining()) {
+                out = null;
+                if(closeAfterWrite) {
+                    close();
+                }
+                else {
+                    busy = false;
+                    key.interestOps(SelectionKey.OP_READ);
+                    advance();
+                }
+            }
+            else {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Read the available bytes and serve the request once it is complete.
+         * 
+         * @throws IOException
+         */
+        void read() throws IOException {
+            if(channel.read(in) < 0) {
+                close();
+            }
+            else {
+                lastActive = System.currentTimeMillis();
+                advance();
+            }
+        }
+
+        /**
+         * Parse as much of the request as has been read and dispatch it to a
+         * worker once it is complete.
+         * 
+         * @throws IOException
+         */
+        private void advance() throws IOException {
+            if(head == null) {
+                int length = headLength(in, in.position());
+                if(length < 0) {
+                    if(!in.hasRemaining()) {
+                        reject(431, "The request head is too large");
+                    }
+                    return;
+                }
+                head = Head.parse(in, length);
+                if(head == null) {
+                    reject(400, "The request is malformed");
+                    return;
+                }
+                String encoding = head.header("Transfer-Encoding");
+                if(encoding != null && !encoding.equalsIgnoreCase("identity")) {
+                    reject(501, "Chunked request bodies are not supported");
+                    return;
+                }
+                String contentLength = head.header("Content-Length");
+                try {
+                    head.bodyLength = contentLength != null ? Integer
+                            .parseInt(contentLength.trim()) : 0;
+                }
+                catch (NumberFormatException e) {
+                    head.bodyLength = -1;
+                }
+                if(head.bodyLength < 0) {
+                    reject(400, "The Content-Length is malformed");
+                    return;
+                }
+                else if(head.bodyLength > maxBodySize) {
+                    reject(413, "The request body is too large");
+                    return;
+                }
+                int total = head.length + head.bodyLength;
+                if(total > in.capacity()) {
+                    ByteBuffer grown = ByteBuffer.allocate(total);
+                    in.flip();
+                    grown.put(in);
+                    in = grown;
+                }
+            }
+            if(in.position() < head.length + head.bodyLength) {
+                if(!head.continued
+                        && "100-continue".equalsIgnoreCase(head
+                                .header("Expect"))) {
+                    head.continued = true;
+                    channel.write(ByteBuffer.wrap(CONTINUE));
+                }
+                return;
+            }
+            dispatch();
+        }
+
+        /**
+         * Hand the complete request to a worker, keeping any bytes of the
+         * requests that follow it.
+         */
+        private void dispatch() {
+            final Head request = head;
+            final byte[] body = new byte[request.bodyLength];
+            in.flip();
+            in.position(request.length);
+            in.get(body);
+            ByteBuffer remaining = in.slice();
+            in = remaining.remaining() <= getRequestBufferSize() ? ByteBuffer
+                    .allocate(getRequestBufferSize()) : ByteBuffer
+                    .allocate(remaining.remaining());
+            in.put(remaining);
+            head = null;
+            busy = true;
+            key.interestOps(0);
+            try {
+                workers.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        respond(request, body);
+                    }
+
+                });
+            }
+            catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        /**
+         * Reject the current request with the {@code status} and close the
+         * connection once the response is written.
+         * 
+         * @param status
+         * @param message
+         * @throws IOException
+         */
+        private void reject(int status, String message) throws IOException {
+            head = null;
+            busy = true;
+            key.interestOps(0);
+            out = Servlets.reject(status, message);
+            closeAfterWrite = true;
+            flush();
+        }
+
+        /**
+         * Serve the {@code request} and write the response. This runs on a
+         * worker thread.
+         * 
+         * @param request
+         * @param body
+         */
+        private void respond(Head request, byte[] body) {
+            ++requests;
+            int max = getMaxRequestsPerConnection();
+            boolean keepAlive = running && request.isKeepAlive()
+                    && (max == 0 || requests < max);
+            Servlets.BufferedResponse response = new Servlets.BufferedResponse(
+                    getResponseBufferSize());
+            HttpServletRequest servlet = Servlets.request(request.method,
+                    request.target, request.protocol, request.headers, body,
+                    local, remote);
+            try {
+                if(!handler.handle(servlet, response.proxy())) {
+                    response.replace(404, "Not Found");
+                }
+            }
+            catch (Exception e) {
+                log.error("Could not serve {} {}", request.method,
+                        request.target, e);
+                response.replace(500, "Internal Server Error");
+            }
+            if("close".equalsIgnoreCase(response.getHeader("Connection"))) {
+                keepAlive = false;
+            }
+            out = response.encode(keepAlive, request.method.equals("HEAD"));
+            closeAfterWrite = !keepAlive;
+            try {
+                channel.write(out);
+            }
+            catch (IOException e) {
+                closeAfterWrite = true;
+                out = new ByteBuffer[] { ByteBuffer.allocate(0) };
+            }
+            served.add(this);
+            selector.wakeup();
+        }
+
+    }
+
+    /**
+     * The parsed head of a request.
+     * 
+     * @author jnelson
+     */
+    private static final class Head {
+
+        /**
+         * Parse the head that occupies the first {@code length} bytes of the
+         * {@code buffer}.
+         * 
+         * @param buffer
+         * @param length
+         * @return the head or {@code null} if it is malformed
+         */
+        @Nullable
+        static Head parse(ByteBuffer buffer, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                bytes[i] = buffer.get(i);
+            }
+            String[] lines = new String(bytes, Charsets.ISO_8859_1)
+                    .split("\r\n");
+            int first = 0;
+            while (first < lines.length && lines[first].isEmpty()) {
+                ++first; // tolerate blank lines between pipelined requests
+            }
+            if(first == lines.length) {
+                return null;
+            }
+            String[] line = lines[first].split(" ");
+            if(line.length != 3 || !line[2].startsWith("HTTP/1.")) {
+                return null;
+            }
+            Map<String, List<String>> headers = new TreeMap<String, List<String>>(
+                    String.CASE_INSENSITIVE_ORDER);
+            for (int i = first + 1; i < lines.length; ++i) {
+                int colon = lines[i].indexOf(':');
+                if(colon <= 0) {
+                    if(lines[i].isEmpty()) {
+                        continue;
+                    }
+                    return null;
+                }
+                String name = lines[i].substring(0, colon).trim();
+                List<String> values = headers.get(name);
+                if(values == null) {
+                    values = Lists.newArrayListWithCapacity(1);
+                    headers.put(name, values);
+                }
+                values.add(lines[i].substring(colon + 1).trim());
+            }
+            return new Head(line[0], line[1], line[2], headers, length);
+        }
+
+        /**
+         * The verb of the request.
+         */
+        final String method;
+
+        /**
+         * The target of the request line, including any query.
+         */
+        final String target;
+
+        /**
+         * The HTTP version of the request.
+         */
+        final String protocol;
+
+        /**
+         * The headers, keyed case-insensitively.
+         */
+        final Map<String, List<String>> headers;
+
+        /**
+         * The length, in bytes, of the head.
+         */
+        final int length;
+
+        /**
+         * The length, in bytes, of the body.
+         */
+        int bodyLength = 0;
+
+        /**
+         * A flag that indicates whether the client has been told to continue
+         * sending the body.
+         */
+        boolean continued = false;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param method
+         * @param target
+         * @param protocol
+         * @param headers
+         * @param length
+         */
+        private Head(String method, String target, String protocol,
+                Map<String, List<String>> headers, int length) {
+            this.method = method;
+            this.target = target;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.length = length;
+        }
+
+        /**
+         * Return the first value of the header with the {@code name} or
+         * {@code null}.
+         * 
+         * @param name
+         * @return the header value or {@code null}
+         */
+        @Nullable
+        String header(String name) {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        /**
+         * Return {@code true} if the client wants the connection to stay open
+         * after the response.
+         * 
+         * @return {@code true} if the connection is kept alive
+         */
+        boolean isKeepAlive() {
+            String connection = header("Connection");
+            if(protocol.equals("HTTP/1.0")) {
+                return connection != null
+                        && connection.toLowerCase().contains("keep-alive");
+            }
+            else {
+                return connection == null
+                        || !connection.toLowerCase().contains("close");
+            }
+        }
+
+    }
+
+}
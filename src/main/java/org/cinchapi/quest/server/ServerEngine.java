@@ -0,0 +1,316 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.server;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link ServerEngine} is the web server that an
+ * {@link org.cinchapi.quest.Application Application} runs on. By default, an
+ * application runs on the web server that is embedded in Spark, which is a
+ * static singleton, so only one application can run per JVM and the server
+ * can't be tuned. An application that is given its own engine using
+ * {@link org.cinchapi.quest.Application#setServerEngine(ServerEngine)
+ * setServerEngine} runs on that engine instead, which makes it possible to
+ * run several applications in the same JVM and to compare engines against
+ * each other.
+ * <p>
+ * This class holds the settings that every engine supports. Each setting
+ * must be changed <strong>before</strong> the engine is started and an engine
+ * can only serve one application at a time.
+ * </p>
+ * 
+ * @author jnelson
+ * @see JettyEngine
+ * @see NioEngine
+ */
+public abstract class ServerEngine {
+
+    /**
+     * The default number of milliseconds after which an idle connection is
+     * closed.
+     */
+    private static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * The default size, in bytes, of the buffer that holds the head of a
+     * request.
+     */
+    private static final int DEFAULT_REQUEST_BUFFER_SIZE = 8192;
+
+    /**
+     * The default size, in bytes, of the buffer that holds a response.
+     */
+    private static final int DEFAULT_RESPONSE_BUFFER_SIZE = 32768;
+
+    /**
+     * Return the {@code SO_REUSEPORT} socket option or {@code null} if the JDK
+     * doesn't support it. The option was added in JDK 9, so it is looked up
+     * by name.
+     * 
+     * @return the option or {@code null}
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    protected static SocketOption<Boolean> reusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class
+                    .getField("SO_REUSEPORT").get(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The maximum number of pending connections or {@code 0} to use the
+     * platform default.
+     */
+    private int backlog = 0;
+
+    /**
+     * The number of milliseconds after which an idle connection is closed.
+     */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * The maximum number of requests that are served on a connection before
+     * it is closed or {@code 0} if there is no limit.
+     */
+    private int maxRequestsPerConnection = 0;
+
+    /**
+     * The size, in bytes, of the buffer that holds the head of a request.
+     */
+    private int requestBufferSize = DEFAULT_REQUEST_BUFFER_SIZE;
+
+    /**
+     * The size, in bytes, of the buffer that holds a response.
+     */
+    private int responseBufferSize = DEFAULT_RESPONSE_BUFFER_SIZE;
+
+    /**
+     * A flag that indicates whether the listening socket is bound with
+     * {@code SO_REUSEPORT}, so that several processes can share the port.
+     */
+    private boolean reusePort = false;
+
+    /**
+     * Return the maximum number of pending connections or {@code 0} if the
+     * platform default is used.
+     * 
+     * @return the backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Return the number of milliseconds after which an idle connection is
+     * closed.
+     * 
+     * @return the idle timeout
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Return the maximum number of requests that are served on a connection
+     * before it is closed or {@code 0} if there is no limit.
+     * 
+     * @return the keep-alive limit
+     */
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * Return the size, in bytes, of the buffer that holds the head of a
+     * request, which also limits the size of the request line and headers.
+     * 
+     * @return the request buffer size
+     */
+    public int getRequestBufferSize() {
+        return requestBufferSize;
+    }
+
+    /**
+     * Return the size, in bytes, of the buffer that holds a response.
+     * 
+     * @return the response buffer size
+     */
+    public int getResponseBufferSize() {
+        return responseBufferSize;
+    }
+
+    /**
+     * Return {@code true} if the listening socket is bound with
+     * {@code SO_REUSEPORT}.
+     * 
+     * @return {@code true} if the port is shared
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Set the maximum number of pending connections. By default, the platform
+     * default is used.
+     * 
+     * @param backlog
+     */
+    public void setBacklog(int backlog) {
+        Preconditions.checkArgument(backlog >= 0);
+        this.backlog = backlog;
+    }
+
+    /**
+     * Set the amount of time after which an idle connection is closed.
+     * 
+     * @param timeout
+     * @param unit
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        Preconditions.checkArgument(timeout > 0);
+        this.idleTimeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Set the maximum number of requests that are served on a keep-alive
+     * connection before it is closed, so that clients periodically reconnect
+     * and load is rebalanced. By default, there is no limit.
+     * 
+     * @param max the limit or {@code 0} for none
+     */
+    public void setMaxRequestsPerConnection(int max) {
+        Preconditions.checkArgument(max >= 0);
+        this.maxRequestsPerConnection = max;
+    }
+
+    /**
+     * Set the size, in bytes, of the buffer that holds the head of a request.
+     * 
+     * @param size
+     */
+    public void setRequestBufferSize(int size) {
+        Preconditions.checkArgument(size > 0);
+        this.requestBufferSize = size;
+    }
+
+    /**
+     * Set the size, in bytes, of the buffer that holds a response.
+     * 
+     * @param size
+     */
+    public void setResponseBufferSize(int size) {
+        Preconditions.checkArgument(size > 0);
+        this.responseBufferSize = size;
+    }
+
+    /**
+     * Bind the listening socket with {@code SO_REUSEPORT}, so that several
+     * processes can listen on the same port and the kernel balances
+     * connections between them. This requires support from the platform; if
+     * the option can't be honored, starting the engine throws an
+     * {@link IllegalStateException} instead of binding without it.
+     * 
+     * @param reusePort
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Return the number of threads that are serving requests or {@code -1}
+     * if the engine is not running.
+     * 
+     * @return the active thread count
+     */
+    public abstract int getActiveThreadCount();
+
+    /**
+     * Return the number of threads that are waiting for a request to serve
+     * or {@code -1} if the engine is not running.
+     * 
+     * @return the idle thread count
+     */
+    public abstract int getIdleThreadCount();
+
+    /**
+     * Return the number of requests that are waiting for a thread to serve
+     * them or {@code -1} if the engine is not running.
+     * 
+     * @return the queued request count
+     */
+    public abstract int getQueuedRequestCount();
+
+    /**
+     * Start listening on the {@code port} and serve each request using the
+     * {@code handler}. This method returns once the engine is listening.
+     * 
+     * @param port
+     * @param handler
+     * @throws IOException
+     */
+    public abstract void start(int port, Handler handler) throws IOException;
+
+    /**
+     * Stop listening and close all the connections.
+     */
+    public abstract void stop();
+
+    /**
+     * A {@link Handler} serves the requests that a {@link ServerEngine}
+     * receives.
+     * 
+     * @author jnelson
+     */
+    public interface Handler {
+
+        /**
+         * Serve the {@code request}.
+         * 
+         * @param request
+         * @param response
+         * @return {@code true} if the request was served or {@code false} if
+         *         there is nothing to serve it, in which case the engine
+         *         responds with a 404
+         * @throws IOException
+         */
+        public boolean handle(HttpServletRequest request,
+                HttpServletResponse response) throws IOException;
+
+    }
+
+}
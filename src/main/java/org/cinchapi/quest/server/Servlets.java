@@ -0,0 +1,1010 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.server;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Adapts the requests and responses of a {@link NioEngine} to the servlet
+ * API, so that they can be served by a {@link ServerEngine.Handler}.
+ * <p>
+ * Like the synthetic requests that are used to warm up routes, the servlet
+ * objects are dynamic proxies that support the operations that routes
+ * typically use: the request exposes its line, headers, cookies, parameters
+ * and a body that has already been read in full and the response is buffered
+ * in memory until it is {@link BufferedResponse#encode(boolean, boolean)
+ * encoded} for the wire.
+ * </p>
+ * 
+ * @author jnelson
+ */
+final class Servlets {
+
+    /**
+     * The charset of a response that is written as characters without
+     * specifying one.
+     */
+    private static final Charset DEFAULT_CHARSET = Charsets.UTF_8;
+
+    /**
+     * The format of dates in HTTP headers.
+     */
+    private static final ThreadLocal<SimpleDateFormat> HTTP_DATE = new ThreadLocal<SimpleDateFormat>() {
+
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat(
+                    "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+
+    };
+
+    /**
+     * Splits a query string or form body into its parameters.
+     */
+    private static final Splitter PARAM_SPLITTER = Splitter.on('&')
+            .omitEmptyStrings();
+
+    /**
+     * Splits a {@code Cookie} header into its cookies.
+     */
+    private static final Splitter COOKIE_SPLITTER = Splitter.on(';')
+            .trimResults().omitEmptyStrings();
+
+    /**
+     * The reason phrases for the common status codes.
+     */
+    private static final Map<Integer, String> REASONS = ImmutableMap
+            .<Integer, String> builder().put(200, "OK").put(201, "Created")
+            .put(202, "Accepted").put(204, "No Content")
+            .put(206, "Partial Content").put(301, "Moved Permanently")
+            .put(302, "Found").put(303, "See Other")
+            .put(304, "Not Modified").put(307, "Temporary Redirect")
+            .put(400, "Bad Request").put(401, "Unauthorized")
+            .put(403, "Forbidden").put(404, "Not Found")
+            .put(405, "Method Not Allowed").put(408, "Request Timeout")
+            .put(409, "Conflict").put(411, "Length Required")
+            .put(413, "Payload Too Large").put(415, "Unsupported Media Type")
+            .put(429, "Too Many Requests")
+            .put(431, "Request Header Fields Too Large")
+            .put(500, "Internal Server Error").put(501, "Not Implemented")
+            .put(502, "Bad Gateway").put(503, "Service Unavailable")
+            .put(504, "Gateway Timeout").build();
+
+    /**
+     * Return the value of a {@code date} in the format of HTTP headers.
+     * 
+     * @param date
+     * @return the formatted date
+     */
+    static String formatDate(long date) {
+        return HTTP_DATE.get().format(new Date(date));
+    }
+
+    /**
+     * Return the head and body of a minimal response with the {@code status}
+     * and plain text {@code message} that closes the connection. This is used
+     * for requests that are rejected before they can be served.
+     * 
+     * @param status
+     * @param message
+     * @return the encoded response
+     */
+    static ByteBuffer[] reject(int status, String message) {
+        byte[] body = message.getBytes(Charsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason(status)
+                + "\r\nDate: " + formatDate(System.currentTimeMillis())
+                + "\r\nContent-Type: text/plain; charset=utf-8"
+                + "\r\nContent-Length: " + body.length
+                + "\r\nConnection: close\r\n\r\n";
+        return new ByteBuffer[] {
+                ByteBuffer.wrap(head.getBytes(Charsets.ISO_8859_1)),
+                ByteBuffer.wrap(body) };
+    }
+
+    /**
+     * Return a {@link HttpServletRequest} for a request that was read from a
+     * connection.
+     * 
+     * @param method the verb of the request
+     * @param target the target of the request line, including any query
+     * @param protocol the HTTP version of the request
+     * @param headers the headers, keyed case-insensitively
+     * @param body the body of the request
+     * @param local the address on which the request was received
+     * @param remote the address of the client
+     * @return the request
+     */
+    static HttpServletRequest request(String method, String target,
+            String protocol, Map<String, List<String>> headers, byte[] body,
+            InetSocketAddress local, InetSocketAddress remote) {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                Servlets.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                new RequestHandler(method, target, protocol, headers, body,
+                        local, remote));
+    }
+
+    /**
+     * Return the charset that is named in the {@code contentType} or
+     * {@code null} if there isn't one.
+     * 
+     * @param contentType
+     * @return the charset name or {@code null}
+     */
+    @Nullable
+    private static String charset(@Nullable String contentType) {
+        if(contentType != null) {
+            int index = contentType.toLowerCase().indexOf("charset=");
+            if(index >= 0) {
+                String charset = contentType.substring(index + 8);
+                int end = charset.indexOf(';');
+                charset = (end >= 0 ? charset.substring(0, end) : charset)
+                        .trim();
+                return charset.replace("\"", "");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the URL decoded value of the {@code string}.
+     * 
+     * @param string
+     * @return the decoded value
+     */
+    private static String decode(String string) {
+        try {
+            return URLDecoder.decode(string, "UTF-8");
+        }
+        catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return string;
+        }
+    }
+
+    /**
+     * Return the default value for a method with the {@code type} of return
+     * value.
+     * 
+     * @param type
+     * @return the default value
+     */
+    private static Object defaultValue(Class<?> type) {
+        if(type == boolean.class) {
+            return false;
+        }
+        else if(type == int.class) {
+            return 0;
+        }
+        else if(type == long.class) {
+            return 0L;
+        }
+        else if(type.isPrimitive() && type != void.class) {
+            return (byte) 0;
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Add each of the parameters in the URL encoded {@code string} to the
+     * {@code params}.
+     * 
+     * @param string
+     * @param params
+     */
+    private static void parseParams(String string,
+            Map<String, List<String>> params) {
+        for (String param : PARAM_SPLITTER.split(string)) {
+            int index = param.indexOf('=');
+            String key = decode(index >= 0 ? param.substring(0, index) : param);
+            String value = index >= 0 ? decode(param.substring(index + 1))
+                    : "";
+            if(!params.containsKey(key)) {
+                params.put(key, Lists.<String> newArrayList());
+            }
+            params.get(key).add(value);
+        }
+    }
+
+    /**
+     * Return the reason phrase for the {@code status} code.
+     * 
+     * @param status
+     * @return the reason phrase
+     */
+    private static String reason(int status) {
+        String reason = REASONS.get(status);
+        return reason != null ? reason : "Status " + status;
+    }
+
+    private Servlets() {/* noop */}
+
+    /**
+     * A {@link HttpServletResponse} that is buffered in memory and
+     * {@link #encode(boolean, boolean) encoded} once it has been served.
+     * 
+     * @author jnelson
+     */
+    static final class BufferedResponse implements InvocationHandler {
+
+        /**
+         * The proxy that is handed to the {@link ServerEngine.Handler}.
+         */
+        private final HttpServletResponse proxy;
+
+        /**
+         * The status of the response.
+         */
+        private int status = 200;
+
+        /**
+         * The headers that have been set on the response, keyed
+         * case-insensitively.
+         */
+        private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(
+                String.CASE_INSENSITIVE_ORDER);
+
+        /**
+         * The content type of the response or {@code null}.
+         */
+        @Nullable
+        private String contentType = null;
+
+        /**
+         * The character encoding of the response or {@code null}.
+         */
+        @Nullable
+        private String characterEncoding = null;
+
+        /**
+         * The content of the response.
+         */
+        private final Content content;
+
+        /**
+         * The writer for the {@link #content} or {@code null} if it hasn't
+         * been requested.
+         */
+        @Nullable
+        private PrintWriter writer = null;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param bufferSize the initial size of the content buffer
+         */
+        BufferedResponse(int bufferSize) {
+            this.content = new Content(bufferSize);
+            this.proxy = (HttpServletResponse) Proxy.newProxyInstance(
+                    Servlets.class.getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, this);
+        }
+
+        /**
+         * Return the head and body of the response, ready to be written with
+         * a single gathering write.
+         * 
+         * @param keepAlive a flag that indicates whether the connection stays
+         *            open after the response is written
+         * @param omitBody a flag that indicates whether the body is left out,
+         *            i.e. for a {@code HEAD} request
+         * @return the encoded response
+         */
+        ByteBuffer[] encode(boolean keepAlive, boolean omitBody) {
+            if(writer != null) {
+                writer.flush();
+            }
+            boolean bodiless = status < 200 || status == 204 || status == 304;
+            StringBuilder head = new StringBuilder(256);
+            head.append("HTTP/1.1 ").append(status).append(' ')
+                    .append(reason(status)).append("\r\n");
+            if(!headers.containsKey("Date")) {
+                header(head, "Date", formatDate(System.currentTimeMillis()));
+            }
+            if(contentType != null) {
+                header(head,
+                        "Content-Type",
+                        characterEncoding != null
+                                && charset(contentType) == null ? contentType
+                                + "; charset=" + characterEncoding
+                                : contentType);
+            }
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                String name = header.getKey();
+                if(!name.equalsIgnoreCase("Content-Length")
+                        && !name.equalsIgnoreCase("Connection")) {
+                    for (String value : header.getValue()) {
+                        header(head, name, value);
+                    }
+                }
+            }
+            if(!bodiless) {
+                header(head, "Content-Length", String.valueOf(content.size()));
+            }
+            header(head, "Connection", keepAlive ? "keep-alive" : "close");
+            head.append("\r\n");
+            ByteBuffer encoded = ByteBuffer.wrap(head.toString().getBytes(
+                    Charsets.ISO_8859_1));
+            return omitBody || bodiless ? new ByteBuffer[] { encoded }
+                    : new ByteBuffer[] { encoded, content.buffer() };
+        }
+
+        /**
+         * Return the first value of the header with the {@code name} or
+         * {@code null}.
+         * 
+         * @param name
+         * @return the header value or {@code null}
+         */
+        @Nullable
+        String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+            case "setStatus":
+                status = (Integer) args[0];
+                return null;
+            case "sendError":
+                status = (Integer) args[0];
+                content.reset();
+                if(args.length > 1 && args[1] != null) {
+                    contentType = "text/plain; charset=utf-8";
+                    byte[] bytes = ((String) args[1]).getBytes(Charsets.UTF_8);
+                    content.write(bytes, 0, bytes.length);
+                }
+                return null;
+            case "sendRedirect":
+                status = 302;
+                setHeader("Location", (String) args[0]);
+                return null;
+            case "getStatus":
+                return status;
+            case "setHeader":
+                setHeader((String) args[0], String.valueOf(args[1]));
+                return null;
+            case "addHeader":
+                addHeader((String) args[0], String.valueOf(args[1]));
+                return null;
+            case "setIntHeader":
+            case "addIntHeader":
+            case "setDateHeader":
+            case "addDateHeader":
+                String value = name.contains("Date") ? formatDate((Long) args[1])
+                        : String.valueOf(args[1]);
+                if(name.startsWith("set")) {
+                    setHeader((String) args[0], value);
+                }
+                else {
+                    addHeader((String) args[0], value);
+                }
+                return null;
+            case "getHeader":
+                return getHeader((String) args[0]);
+            case "getHeaders":
+                List<String> values = headers.get(args[0]);
+                return values != null ? Collections.unmodifiableList(values)
+                        : Collections.<String> emptyList();
+            case "getHeaderNames":
+                return Collections.unmodifiableSet(headers.keySet());
+            case "containsHeader":
+                return headers.containsKey(args[0]);
+            case "setContentType":
+                contentType = (String) args[0];
+                String charset = charset(contentType);
+                if(charset != null) {
+                    characterEncoding = charset;
+                }
+                return null;
+            case "getContentType":
+                return contentType;
+            case "setCharacterEncoding":
+                characterEncoding = (String) args[0];
+                return null;
+            case "getCharacterEncoding":
+                return characterEncoding != null ? characterEncoding
+                        : DEFAULT_CHARSET.name();
+            case "addCookie":
+                addHeader("Set-Cookie", cookie((Cookie) args[0]));
+                return null;
+            case "getOutputStream":
+                return new ServletOutputStream() {
+
+                    @Override
+                    public void write(int b) {
+                        content.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        content.write(b, off, len);
+                    }
+
+                };
+            case "getWriter":
+                if(writer == null) {
+                    writer = new PrintWriter(new OutputStreamWriter(content,
+                            characterEncoding != null ? Charset
+                                    .forName(characterEncoding)
+                                    : DEFAULT_CHARSET));
+                }
+                return writer;
+            case "getBufferSize":
+                return content.capacity();
+            case "reset":
+                status = 200;
+                headers.clear();
+                contentType = null;
+                resetBuffer();
+                return null;
+            case "resetBuffer":
+                resetBuffer();
+                return null;
+            case "encodeURL":
+            case "encodeRedirectURL":
+            case "encodeUrl":
+            case "encodeRedirectUrl":
+                return args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "Buffered response (" + status + ")";
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+        /**
+         * Return the {@link HttpServletResponse} that writes to this buffer.
+         * 
+         * @return the response
+         */
+        HttpServletResponse proxy() {
+            return proxy;
+        }
+
+        /**
+         * Replace the response with a plain one that has the {@code status}
+         * and {@code message}.
+         * 
+         * @param status
+         * @param message
+         */
+        void replace(int status, String message) {
+            this.status = status;
+            this.headers.clear();
+            this.contentType = "text/plain; charset=utf-8";
+            this.characterEncoding = null;
+            this.writer = null;
+            this.content.reset();
+            byte[] bytes = message.getBytes(Charsets.UTF_8);
+            this.content.write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Add a header with the {@code name} and {@code value}.
+         * 
+         * @param name
+         * @param value
+         */
+        private void addHeader(String name, String value) {
+            List<String> values = headers.get(name);
+            if(values == null) {
+                values = Lists.newArrayListWithCapacity(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+
+        /**
+         * Return the value of a {@code Set-Cookie} header for the
+         * {@code cookie}.
+         * 
+         * @param cookie
+         * @return the header value
+         */
+        private String cookie(Cookie cookie) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(cookie.getName()).append('=')
+                    .append(Strings.nullToEmpty(cookie.getValue()));
+            if(cookie.getPath() != null) {
+                sb.append("; Path=").append(cookie.getPath());
+            }
+            if(cookie.getDomain() != null) {
+                sb.append("; Domain=").append(cookie.getDomain());
+            }
+            if(cookie.getMaxAge() >= 0) {
+                sb.append("; Max-Age=").append(cookie.getMaxAge());
+            }
+            if(cookie.getSecure()) {
+                sb.append("; Secure");
+            }
+            if(cookie.isHttpOnly()) {
+                sb.append("; HttpOnly");
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Append a header with the {@code name} and {@code value} to the
+         * {@code head}.
+         * 
+         * @param head
+         * @param name
+         * @param value
+         */
+        private void header(StringBuilder head, String name, String value) {
+            head.append(name).append(": ").append(value).append("\r\n");
+        }
+
+        /**
+         * Discard any content that has been written.
+         */
+        private void resetBuffer() {
+            if(writer != null) {
+                writer.flush();
+            }
+            content.reset();
+        }
+
+        /**
+         * Replace any headers with the {@code name} with one that has the
+         * {@code value}.
+         * 
+         * @param name
+         * @param value
+         */
+        private void setHeader(String name, String value) {
+            headers.remove(name);
+            if(value != null) {
+                addHeader(name, value);
+            }
+        }
+
+    }
+
+    /**
+     * The buffer that holds the content of a {@link BufferedResponse}, which
+     * can be wrapped for writing without making a copy.
+     * 
+     * @author jnelson
+     */
+    private static final class Content extends ByteArrayOutputStream {
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param size
+         */
+        Content(int size) {
+            super(size);
+        }
+
+        /**
+         * Return a {@link ByteBuffer} that wraps the content.
+         * 
+         * @return the buffer
+         */
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        /**
+         * Return the current capacity of the buffer.
+         * 
+         * @return the capacity
+         */
+        int capacity() {
+            return buf.length;
+        }
+
+    }
+
+    /**
+     * Implements a {@link HttpServletRequest} for a request that has been read
+     * in full.
+     * 
+     * @author jnelson
+     */
+    private static final class RequestHandler implements InvocationHandler {
+
+        /**
+         * The verb of the request.
+         */
+        private final String method;
+
+        /**
+         * The raw path of the request.
+         */
+        private final String uri;
+
+        /**
+         * The query string of the request or {@code null}.
+         */
+        @Nullable
+        private final String query;
+
+        /**
+         * The HTTP version of the request.
+         */
+        private final String protocol;
+
+        /**
+         * The headers of the request, keyed case-insensitively.
+         */
+        private final Map<String, List<String>> headers;
+
+        /**
+         * The body of the request.
+         */
+        private final byte[] body;
+
+        /**
+         * The address on which the request was received.
+         */
+        private final InetSocketAddress local;
+
+        /**
+         * The address of the client.
+         */
+        private final InetSocketAddress remote;
+
+        /**
+         * The attributes that have been set on the request.
+         */
+        private final Map<String, Object> attributes = Maps
+                .newConcurrentMap();
+
+        /**
+         * The query and form parameters, parsed lazily.
+         */
+        @Nullable
+        private Map<String, String[]> params = null;
+
+        /**
+         * The cookies that were sent with the request, parsed lazily.
+         */
+        @Nullable
+        private Cookie[] cookies = null;
+
+        /**
+         * The character encoding of the body or {@code null}.
+         */
+        @Nullable
+        private String characterEncoding;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param method
+         * @param target
+         * @param protocol
+         * @param headers
+         * @param body
+         * @param local
+         * @param remote
+         */
+        private RequestHandler(String method, String target, String protocol,
+                Map<String, List<String>> headers, byte[] body,
+                InetSocketAddress local, InetSocketAddress remote) {
+            int index = target.indexOf('?');
+            this.method = method;
+            this.uri = index >= 0 ? target.substring(0, index) : target;
+            this.query = index >= 0 ? target.substring(index + 1) : null;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.body = body;
+            this.local = local;
+            this.remote = remote;
+            this.characterEncoding = charset(getHeader("Content-Type"));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+            case "getAttribute":
+                return attributes.get(args[0]);
+            case "setAttribute":
+                if(args[1] == null) {
+                    attributes.remove(args[0]);
+                }
+                else {
+                    attributes.put((String) args[0], args[1]);
+                }
+                return null;
+            case "removeAttribute":
+                attributes.remove(args[0]);
+                return null;
+            case "getAttributeNames":
+                return Collections.enumeration(attributes.keySet());
+            case "getMethod":
+                return this.method;
+            case "getRequestURI":
+                return uri;
+            case "getPathInfo":
+                return decode(uri);
+            case "getRequestURL":
+                return new StringBuffer("http://").append(host()).append(uri);
+            case "getServletPath":
+            case "getContextPath":
+                return "";
+            case "getQueryString":
+                return query;
+            case "getProtocol":
+                return protocol;
+            case "getScheme":
+                return "http";
+            case "isSecure":
+                return false;
+            case "getServerName":
+                String host = host();
+                int colon = host.lastIndexOf(':');
+                return colon > host.lastIndexOf(']') ? host.substring(0, colon)
+                        : host;
+            case "getServerPort":
+            case "getLocalPort":
+                return local.getPort();
+            case "getLocalAddr":
+                return local.getAddress().getHostAddress();
+            case "getLocalName":
+                return local.getHostString();
+            case "getRemoteAddr":
+            case "getRemoteHost":
+                return remote.getAddress().getHostAddress();
+            case "getRemotePort":
+                return remote.getPort();
+            case "getHeader":
+                return getHeader((String) args[0]);
+            case "getHeaders":
+                List<String> values = headers.get(args[0]);
+                return Collections
+                        .enumeration(values != null ? values : Collections
+                                .<String> emptyList());
+            case "getHeaderNames":
+                return Collections.enumeration(headers.keySet());
+            case "getIntHeader":
+                String header = getHeader((String) args[0]);
+                return header != null ? Integer.parseInt(header.trim()) : -1;
+            case "getDateHeader":
+                return getDateHeader((String) args[0]);
+            case "getContentType":
+                return getHeader("Content-Type");
+            case "getContentLength":
+                return body.length;
+            case "getContentLengthLong":
+                return (long) body.length;
+            case "getCharacterEncoding":
+                return characterEncoding;
+            case "setCharacterEncoding":
+                characterEncoding = (String) args[0];
+                return null;
+            case "getInputStream":
+                final InputStream in = new ByteArrayInputStream(body);
+                return new ServletInputStream() {
+
+                    @Override
+                    public int read() throws IOException {
+                        return in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len)
+                            throws IOException {
+                        return in.read(b, off, len);
+                    }
+
+                };
+            case "getReader":
+                return new BufferedReader(new InputStreamReader(
+                        new ByteArrayInputStream(body),
+                        characterEncoding != null ? Charset
+                                .forName(characterEncoding)
+                                : Charsets.ISO_8859_1));
+            case "getParameter":
+                String[] params = params().get(args[0]);
+                return params != null && params.length > 0 ? params[0] : null;
+            case "getParameterValues":
+                return params().get(args[0]);
+            case "getParameterMap":
+                return params();
+            case "getParameterNames":
+                return Collections.enumeration(params().keySet());
+            case "getCookies":
+                return cookies();
+            case "getLocale":
+                return Locale.getDefault();
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return this.method + " " + uri;
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+        /**
+         * Return the cookies that were sent with the request or {@code null}
+         * if there are none.
+         * 
+         * @return the cookies
+         */
+        @Nullable
+        private synchronized Cookie[] cookies() {
+            if(cookies == null) {
+                List<String> values = headers.get("Cookie");
+                if(values == null) {
+                    return null;
+                }
+                List<Cookie> parsed = Lists.newArrayList();
+                for (String value : values) {
+                    for (String cookie : COOKIE_SPLITTER.split(value)) {
+                        int index = cookie.indexOf('=');
+                        if(index > 0) {
+                            String val = cookie.substring(index + 1).trim();
+                            if(val.length() > 1 && val.startsWith("\"")
+                                    && val.endsWith("\"")) {
+                                val = val.substring(1, val.length() - 1);
+                            }
+                            try {
+                                parsed.add(new Cookie(cookie
+                                        .substring(0, index).trim(), val));
+                            }
+                            catch (IllegalArgumentException e) {
+                                continue; // skip cookies with reserved names
+                            }
+                        }
+                    }
+                }
+                cookies = parsed.toArray(new Cookie[parsed.size()]);
+            }
+            return cookies;
+        }
+
+        /**
+         * Return the value of the date header with the {@code name} in
+         * milliseconds since the epoch or {@code -1} if it isn't set.
+         * 
+         * @param name
+         * @return the date
+         */
+        private long getDateHeader(String name) {
+            String value = getHeader(name);
+            if(value == null) {
+                return -1;
+            }
+            try {
+                return HTTP_DATE.get().parse(value).getTime();
+            }
+            catch (ParseException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        /**
+         * Return the first value of the header with the {@code name} or
+         * {@code null}.
+         * 
+         * @param name
+         * @return the header value or {@code null}
+         */
+        @Nullable
+        private String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        /**
+         * Return the host to which the request was sent.
+         * 
+         * @return the host
+         */
+        private String host() {
+            String host = getHeader("Host");
+            return host != null ? host : local.getHostString() + ":"
+                    + local.getPort();
+        }
+
+        /**
+         * Return the query parameters and, for a form submission, the
+         * parameters in the body.
+         * 
+         * @return the parameters
+         */
+        private synchronized Map<String, String[]> params() {
+            if(params == null) {
+                Map<String, List<String>> parsed = Maps.newLinkedHashMap();
+                if(query != null) {
+                    parseParams(query, parsed);
+                }
+                String contentType = getHeader("Content-Type");
+                if(body.length > 0
+                        && contentType != null
+                        && contentType.toLowerCase().startsWith(
+                                "application/x-www-form-urlencoded")) {
+                    parseParams(new String(body, Charsets.ISO_8859_1), parsed);
+                }
+                Map<String, String[]> params = Maps.newLinkedHashMap();
+                for (Map.Entry<String, List<String>> param : parsed
+                        .entrySet()) {
+                    params.put(param.getKey(), param.getValue().toArray(
+                            new String[param.getValue().size()]));
+                }
+                this.params = Collections.unmodifiableMap(params);
+            }
+            return params;
+        }
+    }
+
+}
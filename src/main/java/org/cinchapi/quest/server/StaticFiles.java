@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Serves the static files in a folder on the classpath, like the
+ * {@code public} folder that the embedded Spark web server serves, for
+ * applications that run on their own {@link ServerEngine}.
+ * 
+ * @author jnelson
+ */
+public final class StaticFiles {
+
+    /**
+     * The file that is served for a request to a directory.
+     */
+    private static final String WELCOME_FILE = "index.html";
+
+    /**
+     * The content types of common web files that the JDK does not know about,
+     * indexed by extension.
+     */
+    private static final Map<String, String> CONTENT_TYPES = ImmutableMap
+            .<String, String> builder().put("css", "text/css")
+            .put("js", "application/javascript")
+            .put("json", "application/json").put("svg", "image/svg+xml")
+            .put("ico", "image/x-icon").put("woff", "font/woff")
+            .put("woff2", "font/woff2").put("txt", "text/plain").build();
+
+    /**
+     * Serve the file in the {@code folder} on the classpath that the
+     * {@code request} asks for, if there is one.
+     * 
+     * @param folder
+     * @param request
+     * @param response
+     * @return {@code true} if a file was served
+     * @throws IOException
+     */
+    public static boolean serve(String folder, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String method = request.getMethod();
+        boolean head = "HEAD".equals(method);
+        if(!head && !"GET".equals(method)) {
+            return false;
+        }
+        String path = request.getRequestURI();
+        if(path == null) {
+            return false;
+        }
+        try {
+            path = URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        if(path.contains("..") || path.contains("\\")) {
+            return false;
+        }
+        if(path.endsWith("/")) {
+            path += WELCOME_FILE;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        URL resource = loader.getResource(folder
+                + (path.startsWith("/") ? path : "/" + path));
+        if(resource == null
+                || ("file".equals(resource.getProtocol()) && new File(
+                        resource.getPath()).isDirectory())) {
+            return false;
+        }
+        URLConnection connection = resource.openConnection();
+        response.setContentType(contentType(path));
+        long length = connection.getContentLengthLong();
+        if(length >= 0 && length <= Integer.MAX_VALUE) {
+            response.setContentLength((int) length);
+        }
+        if(connection.getLastModified() > 0) {
+            response.setDateHeader("Last-Modified",
+                    connection.getLastModified());
+        }
+        InputStream in = connection.getInputStream();
+        try {
+            if(!head) {
+                ByteStreams.copy(in, response.getOutputStream());
+            }
+        }
+        finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * Return the content type of the file at {@code path}.
+     * 
+     * @param path
+     * @return the content type
+     */
+    private static String contentType(String path) {
+        int dot = path.lastIndexOf('.');
+        String type = dot >= 0 ? CONTENT_TYPES.get(path.substring(dot + 1)
+                .toLowerCase()) : null;
+        if(type == null) {
+            type = URLConnection.guessContentTypeFromName(path);
+        }
+        if(type == null) {
+            type = "application/octet-stream";
+        }
+        else if(type.startsWith("text/") || type.endsWith("javascript")
+                || type.endsWith("json")) {
+            type += "; charset=utf-8";
+        }
+        return type;
+    }
+
+    private StaticFiles() {/* noop */}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.template;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link CompiledTemplate} is a Mustache template that was translated into
+ * Java by the {@link TemplateCompiler} at build time, so that it doesn't have
+ * to be parsed when the application starts or interpreted each time it is
+ * rendered.
+ * 
+ * @author jnelson
+ */
+public abstract class CompiledTemplate {
+
+    /**
+     * Render this template with the {@code context} to the {@code writer}.
+     * 
+     * @param context
+     * @param writer
+     * @throws IOException
+     */
+    public final void render(Map<String, Object> context, Writer writer)
+            throws IOException {
+        List<Object> scopes = Lists.newArrayListWithCapacity(8);
+        scopes.add(context);
+        execute(scopes, writer);
+    }
+
+    /**
+     * Render this template to the {@code writer}, resolving names against the
+     * {@code scopes}, from the innermost (last) to the outermost (first).
+     * Any scopes that are pushed while rendering are popped before this
+     * method returns.
+     * 
+     * @param scopes
+     * @param writer
+     * @throws IOException
+     */
+    public abstract void execute(List<Object> scopes, Writer writer)
+            throws IOException;
+
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.CharStreams;
+
+/**
+ * The registry of {@link CompiledTemplate templates} that were compiled at
+ * build time. The {@link TemplateCompiler} lists each template path along
+ * with the name of its class in the {@link #RESOURCE}, which is read the
+ * first time a template is looked up.
+ * 
+ * @author jnelson
+ */
+public final class CompiledTemplates {
+
+    /**
+     * The resource that maps each template path to the name of its compiled
+     * class, one {@code path=class} pair per line.
+     */
+    public static final String RESOURCE = "META-INF/quest/templates";
+
+    private static final Logger log = LoggerFactory
+            .getLogger(CompiledTemplates.class);
+
+    /**
+     * The compiled templates, indexed by path.
+     */
+    private static volatile Map<String, CompiledTemplate> templates = null;
+
+    /**
+     * Return the compiled version of the template at {@code path} (relative
+     * to the working directory, i.e. {@code templates/index.mustache}) or
+     * {@code null} if it wasn't compiled at build time.
+     * 
+     * @param path
+     * @return the compiled template or {@code null}
+     */
+    @Nullable
+    public static CompiledTemplate get(String path) {
+        Map<String, CompiledTemplate> templates = CompiledTemplates.templates;
+        if(templates == null) {
+            templates = load();
+        }
+        return templates.isEmpty() ? null : templates.get(normalize(path));
+    }
+
+    /**
+     * Render the partial at {@code path} with the {@code scopes} of the
+     * template that includes it. This is called by compiled templates.
+     * 
+     * @param path
+     * @param scopes
+     * @param writer
+     * @throws IOException
+     */
+    public static void partial(String path, List<Object> scopes, Writer writer)
+            throws IOException {
+        CompiledTemplate template = get(path);
+        if(template == null) {
+            throw new IllegalStateException("The partial " + path
+                    + " was not compiled");
+        }
+        template.execute(scopes, writer);
+    }
+
+    /**
+     * Return the {@code path} with forward slashes as separators.
+     * 
+     * @param path
+     * @return the normalized path
+     */
+    static String normalize(String path) {
+        return path.replace('\\', '/');
+    }
+
+    /**
+     * Read the registry and instantiate each of the compiled templates.
+     * 
+     * @return the templates
+     */
+    private static synchronized Map<String, CompiledTemplate> load() {
+        if(templates != null) {
+            return templates;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        Map<String, CompiledTemplate> loaded = Maps.newHashMap();
+        try {
+            Enumeration<URL> resources = loader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                InputStream stream = resources.nextElement().openStream();
+                try {
+                    for (String line : CharStreams
+                            .readLines(new InputStreamReader(stream,
+                                    Charsets.UTF_8))) {
+                        int index = line.lastIndexOf('=');
+                        if(index <= 0) {
+                            continue;
+                        }
+                        String path = line.substring(0, index).trim();
+                        String name = line.substring(index + 1).trim();
+                        try {
+                            loaded.put(normalize(path), Class
+                                    .forName(name, true, loader)
+                                    .asSubclass(CompiledTemplate.class)
+                                    .getDeclaredConstructor().newInstance());
+                        }
+                        catch (ReflectiveOperationException
+                                | ClassCastException e) {
+                            log.error("Could not load the compiled template {}",
+                                    name, e);
+                        }
+                    }
+                }
+                finally {
+                    stream.close();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        templates = ImmutableMap.copyOf(loaded);
+        return templates;
+    }
+
+    private CompiledTemplates() {/* noop */}
+
+}
@@ -0,0 +1,543 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.template;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.FragmentKey;
+import com.github.mustachejava.TemplateContext;
+import com.github.mustachejava.TemplateFunction;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The runtime support for {@link CompiledTemplate compiled templates}. Names
+ * are resolved the same way that Mustache resolves them: each scope is
+ * searched from the innermost to the outermost and a dotted name is resolved
+ * one segment at a time from the first scope that contains its first segment.
+ * <p>
+ * A {@link Map} scope is searched directly. Any other scope is searched for a
+ * public method named {@code name()}, {@code getName()} or {@code isName()}
+ * or a public field named {@code name}; the accessor that is found is cached
+ * per class, so reflection is only used to find it once. A {@link Future} or
+ * {@link Callable} value is resolved to its result when it is looked up.
+ * </p>
+ * <p>
+ * Values are treated exactly like Mustache treats them, so a template renders
+ * the same whether or not it was compiled: {@code null}, {@code false}, the
+ * empty string and empty lists, iterators and arrays are falsey, and a
+ * {@link Function} is a lambda. A lambda section is rendered and then given
+ * to the function, unless the function is a {@link TemplateFunction}, which
+ * is given the text of the section instead and returns a template. A lambda
+ * variable returns a template. Templates that are returned by lambdas are
+ * compiled at runtime, like Mustache does.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Scopes {
+
+    /**
+     * A placeholder that indicates that a scope does not contain a name.
+     */
+    private static final Object MISSING = new Object();
+
+    /**
+     * An {@link Accessor} for a name that a class doesn't have.
+     */
+    private static final Accessor NONE = new Accessor(null, null);
+
+    /**
+     * The accessors that have been found, indexed by class and then by name.
+     */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Accessor>> accessors = Maps
+            .newConcurrentMap();
+
+    /**
+     * The factory that compiles, and caches, the templates that are returned
+     * by lambdas.
+     */
+    private static final DefaultMustacheFactory lambdas = new DefaultMustacheFactory();
+
+    /**
+     * Write the {@code value} to the {@code writer}, escaping any characters
+     * that are special in HTML.
+     * 
+     * @param writer
+     * @param value
+     * @throws IOException
+     */
+    public static void escape(Writer writer, @Nullable Object value)
+            throws IOException {
+        if(value == null) {
+            return;
+        }
+        String string = value.toString();
+        int length = string.length();
+        int start = 0;
+        for (int i = 0; i < length; ++i) {
+            String replacement;
+            switch (string.charAt(i)) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = "&quot;";
+                break;
+            case '\'':
+                replacement = "&#39;";
+                break;
+            default:
+                continue;
+            }
+            writer.write(string, start, i - start);
+            writer.write(replacement);
+            start = i + 1;
+        }
+        writer.write(string, start, length - start);
+    }
+
+    /**
+     * Return the value of {@code name} in the {@code scopes} or {@code null}
+     * if it isn't defined.
+     * 
+     * @param scopes
+     * @param name
+     * @return the value
+     */
+    @Nullable
+    public static Object get(List<Object> scopes, String name) {
+        if(name.equals(".")) {
+            return resolve(scopes.get(scopes.size() - 1));
+        }
+        int dot = name.indexOf('.');
+        String first = dot < 0 ? name : name.substring(0, dot);
+        for (int i = scopes.size() - 1; i >= 0; --i) {
+            Object value = lookup(scopes.get(i), first);
+            if(value != MISSING) {
+                value = resolve(value);
+                while (dot >= 0 && value != null) {
+                    int next = name.indexOf('.', dot + 1);
+                    value = lookup(value, next < 0 ? name.substring(dot + 1)
+                            : name.substring(dot + 1, next));
+                    value = value == MISSING ? null : resolve(value);
+                    dot = next;
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return {@code true} if the {@code value} is falsey, which means that a
+     * section for it is skipped and an inverted section for it is rendered.
+     * 
+     * @param value
+     * @return {@code true} if the value is falsey
+     */
+    public static boolean isFalsey(@Nullable Object value) {
+        if(value == null) {
+            return true;
+        }
+        else if(value instanceof Boolean) {
+            return !(Boolean) value;
+        }
+        else if(value instanceof String) {
+            return ((String) value).isEmpty();
+        }
+        else if(value instanceof Iterable) {
+            return !((Iterable<?>) value).iterator().hasNext();
+        }
+        else if(value instanceof Iterator) {
+            return !((Iterator<?>) value).hasNext();
+        }
+        else if(value.getClass().isArray()) {
+            return Array.getLength(value) == 0;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Finish a section for the {@code value}, which was rendered to the
+     * {@code section} writer, if the value is a lambda. A
+     * {@link TemplateFunction} is given the {@code source} of the section and
+     * the template that it returns is rendered with the {@code scopes}. Any
+     * other function is given the rendered section and its result is written
+     * as is.
+     * 
+     * @param value
+     * @param section the writer that was returned by
+     *            {@link #writer(Object, Writer)}
+     * @param scopes
+     * @param writer
+     * @param path the path of the template that contains the section
+     * @param source the text of the section, in pieces
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public static void lambda(@Nullable Object value, Writer section,
+            List<Object> scopes, Writer writer, String path, String... source)
+            throws IOException {
+        if(value instanceof TemplateFunction) {
+            StringBuilder text = new StringBuilder();
+            for (String piece : source) {
+                text.append(piece);
+            }
+            String template = ((TemplateFunction) value).apply(text
+                    .toString());
+            if(template != null) {
+                writer.write(render(template, scopes, path));
+            }
+        }
+        else if(value instanceof Function) {
+            Object result = ((Function<String, ?>) value).apply(section
+                    .toString());
+            if(result != null) {
+                writer.write(result.toString());
+            }
+        }
+    }
+
+    /**
+     * Return the scopes that a section for the {@code value} is rendered with:
+     * none if the value is falsey, each of its items if it is a list or
+     * iterator, the innermost of the {@code scopes} if it is a lambda that
+     * needs the section to be rendered and otherwise the value itself.
+     * 
+     * @param value
+     * @param scopes
+     * @return the scopes to render the section with
+     */
+    @SuppressWarnings("unchecked")
+    public static Iterable<Object> section(@Nullable Object value,
+            List<Object> scopes) {
+        if(isFalsey(value) || value instanceof TemplateFunction) {
+            return Collections.emptyList();
+        }
+        else if(value instanceof Function) {
+            return Collections.singletonList(scopes.get(scopes.size() - 1));
+        }
+        else if(value instanceof Iterable) {
+            return (Iterable<Object>) value;
+        }
+        else if(value instanceof Iterator) {
+            final Iterator<Object> iterator = (Iterator<Object>) value;
+            return new Iterable<Object>() {
+
+                @Override
+                public Iterator<Object> iterator() {
+                    return iterator;
+                }
+
+            };
+        }
+        else if(value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            List<Object> items = Lists.newArrayListWithCapacity(length);
+            for (int i = 0; i < length; ++i) {
+                items.add(Array.get(value, i));
+            }
+            return items;
+        }
+        else {
+            return Collections.singletonList(value);
+        }
+    }
+
+    /**
+     * Return the value of {@code name} in the {@code scopes} that a variable
+     * writes. If the value is a lambda, it is called and the template that it
+     * returns is rendered with the {@code scopes}.
+     * 
+     * @param scopes
+     * @param name
+     * @param path the path of the template that contains the variable
+     * @return the value
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static Object value(List<Object> scopes, String name, String path) {
+        Object value = get(scopes, name);
+        if(value instanceof Function) {
+            Object template = ((Function<Object, ?>) value).apply(null);
+            return template != null ? render(template.toString(), scopes,
+                    path) : null;
+        }
+        else {
+            return value;
+        }
+    }
+
+    /**
+     * Write the {@code value} to the {@code writer} without escaping it.
+     * 
+     * @param writer
+     * @param value
+     * @throws IOException
+     */
+    public static void write(Writer writer, @Nullable Object value)
+            throws IOException {
+        if(value != null) {
+            writer.write(value.toString());
+        }
+    }
+
+    /**
+     * Return the writer that a section for the {@code value} is rendered to:
+     * a buffer if the value is a lambda, which has to be given the rendered
+     * section, and otherwise the {@code writer} itself.
+     * 
+     * @param value
+     * @param writer
+     * @return the writer for the section
+     */
+    public static Writer writer(@Nullable Object value, Writer writer) {
+        return value instanceof Function ? new StringWriter() : writer;
+    }
+
+    /**
+     * Return the {@link Accessor} for {@code name} in the {@code clazz}.
+     * 
+     * @param clazz
+     * @param name
+     * @return the accessor
+     */
+    private static Accessor accessor(Class<?> clazz, String name) {
+        ConcurrentMap<String, Accessor> byName = accessors.get(clazz);
+        if(byName == null) {
+            byName = Maps.newConcurrentMap();
+            ConcurrentMap<String, Accessor> existing = accessors.putIfAbsent(
+                    clazz, byName);
+            byName = existing != null ? existing : byName;
+        }
+        Accessor accessor = byName.get(name);
+        if(accessor == null) {
+            accessor = Accessor.find(clazz, name);
+            byName.put(name, accessor);
+        }
+        return accessor;
+    }
+
+    /**
+     * Render the {@code template}, which was returned by a lambda in the
+     * template at {@code path}, with the {@code scopes}.
+     * 
+     * @param template
+     * @param scopes
+     * @param path
+     * @return the rendered template
+     */
+    private static String render(String template, List<Object> scopes,
+            String path) {
+        StringWriter writer = new StringWriter();
+        try {
+            lambdas.getFragment(
+                    new FragmentKey(new TemplateContext("{{", "}}", path, 0,
+                            false), template))
+                    .execute(writer, scopes.toArray()).flush();
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Return the value of {@code name} in the {@code scope} or
+     * {@link #MISSING} if the scope doesn't contain it.
+     * 
+     * @param scope
+     * @param name
+     * @return the value or {@link #MISSING}
+     */
+    private static Object lookup(@Nullable Object scope, String name) {
+        if(scope == null) {
+            return MISSING;
+        }
+        else if(scope instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) scope;
+            Object value = map.get(name);
+            return value != null || map.containsKey(name) ? value : MISSING;
+        }
+        else {
+            return accessor(scope.getClass(), name).get(scope);
+        }
+    }
+
+    /**
+     * Return the result of the {@code value} if it is a {@link Future} or
+     * {@link Callable}, or otherwise the value itself.
+     * 
+     * @param value
+     * @return the resolved value
+     */
+    @Nullable
+    private static Object resolve(@Nullable Object value) {
+        try {
+            if(value instanceof Future) {
+                return ((Future<?>) value).get();
+            }
+            else if(value instanceof Callable) {
+                return ((Callable<?>) value).call();
+            }
+            else {
+                return value;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private Scopes() {/* noop */}
+
+    /**
+     * An {@link Accessor} reads a name from an object using either a public
+     * method or a public field.
+     * 
+     * @author jnelson
+     */
+    private static final class Accessor {
+
+        /**
+         * Find the {@link Accessor} for {@code name} in the {@code clazz}.
+         * 
+         * @param clazz
+         * @param name
+         * @return the accessor
+         */
+        static Accessor find(Class<?> clazz, String name) {
+            if(name.isEmpty()) {
+                return NONE;
+            }
+            String capitalized = Character.toUpperCase(name.charAt(0))
+                    + name.substring(1);
+            for (String candidate : new String[] { name, "get" + capitalized,
+                    "is" + capitalized }) {
+                try {
+                    Method method = clazz.getMethod(candidate);
+                    if(method.getReturnType() != void.class
+                            && !Modifier.isStatic(method.getModifiers())) {
+                        method.setAccessible(true);
+                        return new Accessor(method, null);
+                    }
+                }
+                catch (NoSuchMethodException | SecurityException e) {
+                    continue;
+                }
+            }
+            try {
+                Field field = clazz.getField(name);
+                field.setAccessible(true);
+                return new Accessor(null, field);
+            }
+            catch (NoSuchFieldException | SecurityException e) {
+                return NONE;
+            }
+        }
+
+        /**
+         * The method that returns the value, if any.
+         */
+        @Nullable
+        private final Method method;
+
+        /**
+         * The field that holds the value, if any.
+         */
+        @Nullable
+        private final Field field;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param method
+         * @param field
+         */
+        private Accessor(@Nullable Method method, @Nullable Field field) {
+            this.method = method;
+            this.field = field;
+        }
+
+        /**
+         * Return the value in the {@code object} or {@link #MISSING} if there
+         * is no such value.
+         * 
+         * @param object
+         * @return the value or {@link #MISSING}
+         */
+        Object get(Object object) {
+            try {
+                if(method != null) {
+                    return method.invoke(object);
+                }
+                else if(field != null) {
+                    return field.get(object);
+                }
+                else {
+                    return MISSING;
+                }
+            }
+            catch (ReflectiveOperationException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+}
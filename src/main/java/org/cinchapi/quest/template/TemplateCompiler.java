@@ -0,0 +1,816 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.template;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * The {@link TemplateCompiler} translates Mustache templates into Java
+ * {@link CompiledTemplate} classes at build time. It is run by the
+ * {@code precompileTemplates} task in {@code gradle/templates.gradle}:
+ * 
+ * <pre>
+ * java org.cinchapi.quest.template.TemplateCompiler &lt;templates&gt; &lt;output&gt; [package]
+ * </pre>
+ * 
+ * The source of each class is written to {@code <output>/java} and the
+ * registry that maps each template path to its class is written to
+ * {@code <output>/resources}, so both directories must be added to the
+ * application's source set.
+ * <p>
+ * Static text is emitted as string constants, variables and sections are
+ * looked up using {@link Scopes} and partials are linked to the compiled
+ * version of the partial. Templates that use features which aren't supported
+ * (i.e. changing the delimiters) or that include a partial which couldn't be
+ * compiled are skipped, in which case the {@link org.cinchapi.quest.router.View
+ * View} compiles them at runtime as usual.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class TemplateCompiler {
+
+    /**
+     * The package that the compiled templates are placed in by default.
+     */
+    public static final String DEFAULT_PACKAGE = "quest.templates";
+
+    /**
+     * The maximum number of characters in a single string constant, which
+     * keeps each constant well under the class file limit.
+     */
+    private static final int MAX_CONSTANT_LENGTH = 8192;
+
+    /**
+     * Run the compiler.
+     * 
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String... args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("usage: TemplateCompiler <templates> <output> "
+                    + "[package]");
+            System.exit(1);
+        }
+        File templates = new File(args[0]);
+        File output = new File(args[1]);
+        String pkg = args.length > 2 ? args[2] : DEFAULT_PACKAGE;
+
+        // Parse every template, keyed by the path that the View uses to look
+        // it up
+        Map<String, List<Node>> parsed = Maps.newTreeMap();
+        List<File> files = Lists.newArrayList();
+        collect(templates, files);
+        String root = templates.getAbsoluteFile().toURI().getPath();
+        for (File file : files) {
+            String path = templates.getName() + "/"
+                    + file.getAbsoluteFile().toURI().getPath()
+                            .substring(root.length());
+            try {
+                parsed.put(path,
+                        parse(Files.toString(file, Charsets.UTF_8)));
+            }
+            catch (IllegalArgumentException | UnsupportedOperationException e) {
+                System.out.println("Skipped " + path + ": " + e.getMessage());
+            }
+        }
+
+        // Skip any template that includes a partial which isn't compiled,
+        // until there are no more to skip
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<Map.Entry<String, List<Node>>> it = parsed.entrySet()
+                    .iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, List<Node>> entry = it.next();
+                for (String partial : partials(entry.getKey(),
+                        entry.getValue())) {
+                    if(!parsed.containsKey(partial)) {
+                        System.out.println("Skipped " + entry.getKey()
+                                + ": the partial " + partial
+                                + " is not compiled");
+                        it.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Generate a class for each template along with the registry
+        File sources = new File(new File(output, "java"), pkg.replace('.',
+                File.separatorChar));
+        Set<String> names = Sets.newHashSet();
+        List<String> registry = Lists.newArrayList();
+        for (Map.Entry<String, List<Node>> entry : parsed.entrySet()) {
+            String name = className(entry.getKey());
+            for (int i = 2; !names.add(name); ++i) {
+                name = className(entry.getKey()) + "_" + i;
+            }
+            File source = new File(sources, name + ".java");
+            Files.createParentDirs(source);
+            Files.write(generate(pkg, name, entry.getKey(), entry.getValue()),
+                    source, Charsets.UTF_8);
+            registry.add(entry.getKey() + "=" + pkg + "." + name);
+        }
+        File index = new File(new File(output, "resources"),
+                CompiledTemplates.RESOURCE);
+        Files.createParentDirs(index);
+        Files.write(Joiner.on('\n').join(registry) + "\n", index,
+                Charsets.UTF_8);
+        System.out.println("Compiled " + registry.size() + " of "
+                + files.size() + " templates");
+    }
+
+    /**
+     * Parse the Mustache {@code template} into a tree of {@link Node nodes}.
+     * 
+     * @param template
+     * @return the nodes
+     * @throws IllegalArgumentException if the template is malformed
+     * @throws UnsupportedOperationException if the template uses a feature
+     *             that can't be compiled
+     */
+    static List<Node> parse(String template) {
+        List<Token> tokens = tokenize(template);
+        trimStandalone(tokens);
+        Deque<Node> open = new ArrayDeque<Node>();
+        Deque<Integer> opened = new ArrayDeque<Integer>();
+        List<Node> root = Lists.newArrayList();
+        List<Node> current = root;
+        for (int i = 0; i < tokens.size(); ++i) {
+            Token token = tokens.get(i);
+            switch (token.type) {
+            case TEXT:
+                String text = token.value.substring(token.start,
+                        Math.max(token.start, token.end));
+                if(text.isEmpty()) {
+                    break;
+                }
+                int last = current.size() - 1;
+                if(last >= 0 && current.get(last).type == Type.TEXT) {
+                    // Merge with the text before a comment, so that it is
+                    // written all at once
+                    text = current.remove(last).value + text;
+                }
+                current.add(Node.text(text));
+                break;
+            case VARIABLE:
+            case UNESCAPED:
+                current.add(Node.variable(token.value,
+                        token.type == Type.VARIABLE));
+                break;
+            case SECTION:
+            case INVERTED:
+                Node section = Node.section(token.value,
+                        token.type == Type.INVERTED);
+                current.add(section);
+                open.push(section);
+                opened.push(i);
+                current = section.children;
+                break;
+            case CLOSE:
+                Node closed = open.poll();
+                if(closed == null || !closed.value.equals(token.value)) {
+                    throw new IllegalArgumentException("Unexpected close tag "
+                            + token.value);
+                }
+                // The text of the section, which is given to a lambda, runs
+                // from the text after the open tag to the text before the
+                // close tag, without any standalone lines that were trimmed.
+                // Tags are always surrounded by text tokens
+                Token after = tokens.get(opened.pop() + 1);
+                Token before = tokens.get(i - 1);
+                int start = after.offset + after.start;
+                closed.source = template.substring(start,
+                        Math.max(start, before.offset + before.end));
+                current = open.isEmpty() ? root : open.peek().children;
+                break;
+            case PARTIAL:
+                current.add(Node.partial(token.value));
+                break;
+            case COMMENT:
+                break;
+            }
+        }
+        if(!open.isEmpty()) {
+            throw new IllegalArgumentException("Unclosed section "
+                    + open.peek().value);
+        }
+        return root;
+    }
+
+    /**
+     * Return the name of the class for the template at {@code path}.
+     * 
+     * @param path
+     * @return the class name
+     */
+    private static String className(String path) {
+        StringBuilder sb = new StringBuilder("Template_");
+        int start = path.indexOf('/') + 1;
+        for (int i = start; i < path.length(); ++i) {
+            char c = path.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Add every template file under {@code directory} to {@code files}.
+     * 
+     * @param directory
+     * @param files
+     */
+    private static void collect(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if(children == null) {
+            return;
+        }
+        for (File child : children) {
+            if(child.getName().startsWith(".")) {
+                continue;
+            }
+            else if(child.isDirectory()) {
+                collect(child, files);
+            }
+            else {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Generate the source of the class {@code pkg.name} for the template at
+     * {@code path}.
+     * 
+     * @param pkg
+     * @param name
+     * @param path
+     * @param nodes
+     * @return the source
+     */
+    private static String generate(String pkg, String name, String path,
+            List<Node> nodes) {
+        Generator generator = new Generator(path);
+        generator.emit(nodes, 2);
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by ").append(TemplateCompiler.class.getName())
+                .append(" from ").append(path).append(". Do not edit.\n");
+        sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("import java.io.IOException;\n");
+        sb.append("import java.io.Writer;\n");
+        sb.append("import java.util.List;\n\n");
+        sb.append("import ").append(CompiledTemplate.class.getName())
+                .append(";\n");
+        sb.append("import ").append(CompiledTemplates.class.getName())
+                .append(";\n");
+        sb.append("import ").append(Scopes.class.getName()).append(";\n\n");
+        sb.append("public final class ").append(name)
+                .append(" extends CompiledTemplate {\n\n");
+        sb.append("    private static final String PATH = ")
+                .append(literal(path)).append(";\n\n");
+        for (int i = 0; i < generator.constants.size(); ++i) {
+            sb.append("    private static final String TEXT_").append(i)
+                    .append(" = ").append(literal(generator.constants.get(i)))
+                    .append(";\n\n");
+        }
+        sb.append("    @Override\n");
+        sb.append("    public void execute(List<Object> scopes, Writer writer)"
+                + "\n            throws IOException {\n");
+        sb.append(generator.body);
+        sb.append("    }\n\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Return {@code true} if {@code string} only contains whitespace between
+     * {@code start} and {@code end}.
+     * 
+     * @param string
+     * @param start
+     * @param end
+     * @return {@code true} if the range is blank
+     */
+    private static boolean isBlank(String string, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if(!Character.isWhitespace(string.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the {@code string} as a Java string literal.
+     * 
+     * @param string
+     * @return the literal
+     */
+    private static String literal(String string) {
+        StringBuilder sb = new StringBuilder(string.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if(c < 0x20 || c > 0x7e) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Return the paths of the partials that are included, directly, by the
+     * template at {@code path}.
+     * 
+     * @param path
+     * @param nodes
+     * @return the partial paths
+     */
+    private static Set<String> partials(String path, List<Node> nodes) {
+        Set<String> partials = Sets.newHashSet();
+        for (Node node : nodes) {
+            if(node.type == Type.PARTIAL) {
+                partials.add(resolve(path, node.value));
+            }
+            else if(node.children != null) {
+                partials.addAll(partials(path, node.children));
+            }
+        }
+        return partials;
+    }
+
+    /**
+     * Return the path of the partial {@code name} that is included by the
+     * template at {@code path}. Like Mustache, the partial is resolved
+     * relative to the directory of the template and is given the template's
+     * extension if it doesn't have one.
+     * 
+     * @param path
+     * @param name
+     * @return the partial path
+     */
+    private static String resolve(String path, String name) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        String extension = dot > slash ? path.substring(dot) : "";
+        String directory = path.substring(0, slash + 1);
+        return directory + name
+                + (name.lastIndexOf('.') > name.lastIndexOf('/') ? ""
+                        : extension);
+    }
+
+    /**
+     * Split the {@code template} into {@link Token tokens}.
+     * 
+     * @param template
+     * @return the tokens
+     */
+    private static List<Token> tokenize(String template) {
+        List<Token> tokens = Lists.newArrayList();
+        int pos = 0;
+        for (;;) {
+            int open = template.indexOf("{{", pos);
+            if(open < 0) {
+                tokens.add(new Token(Type.TEXT, template.substring(pos), pos));
+                return tokens;
+            }
+            tokens.add(new Token(Type.TEXT, template.substring(pos, open),
+                    pos));
+            if(template.startsWith("{{{", open)) {
+                int close = template.indexOf("}}}", open + 3);
+                if(close < 0) {
+                    throw new IllegalArgumentException("Unclosed tag at "
+                            + open);
+                }
+                tokens.add(new Token(Type.UNESCAPED, template.substring(
+                        open + 3, close).trim(), open));
+                pos = close + 3;
+            }
+            else {
+                int close = template.indexOf("}}", open + 2);
+                if(close < 0) {
+                    throw new IllegalArgumentException("Unclosed tag at "
+                            + open);
+                }
+                String content = template.substring(open + 2, close).trim();
+                char sigil = content.isEmpty() ? ' ' : content.charAt(0);
+                String name = content.isEmpty() ? "" : content.substring(1)
+                        .trim();
+                switch (sigil) {
+                case '#':
+                    tokens.add(new Token(Type.SECTION, name, open));
+                    break;
+                case '^':
+                    tokens.add(new Token(Type.INVERTED, name, open));
+                    break;
+                case '/':
+                    tokens.add(new Token(Type.CLOSE, name, open));
+                    break;
+                case '!':
+                    tokens.add(new Token(Type.COMMENT, name, open));
+                    break;
+                case '>':
+                    tokens.add(new Token(Type.PARTIAL, name, open));
+                    break;
+                case '&':
+                    tokens.add(new Token(Type.UNESCAPED, name, open));
+                    break;
+                case '=':
+                    throw new UnsupportedOperationException(
+                            "delimiter changes are not supported");
+                default:
+                    tokens.add(new Token(Type.VARIABLE, content, open));
+                }
+                pos = close + 2;
+            }
+        }
+    }
+
+    /**
+     * Trim the whitespace around any section tag that stands alone on its
+     * line, so that the line doesn't appear in the output. Like the version
+     * of Mustache that renders the templates which aren't compiled, comment
+     * and partial tags are never trimmed. Lines are detected in the original
+     * text, so trimming one tag doesn't affect its neighbours.
+     * 
+     * @param tokens
+     */
+    private static void trimStandalone(List<Token> tokens) {
+        // The tokens alternate between text and tags, beginning and ending
+        // with text
+        for (int i = 1; i < tokens.size() - 1; i += 2) {
+            Token tag = tokens.get(i);
+            if(tag.type != Type.SECTION && tag.type != Type.INVERTED
+                    && tag.type != Type.CLOSE) {
+                continue;
+            }
+            Token before = tokens.get(i - 1);
+            Token after = tokens.get(i + 1);
+            int lineStart = before.value.lastIndexOf('\n') + 1;
+            int lineEnd = after.value.indexOf('\n');
+            boolean first = lineStart > 0 || i == 1;
+            boolean last = lineEnd >= 0 || i + 1 == tokens.size() - 1;
+            if(first
+                    && last
+                    && isBlank(before.value, lineStart, before.value.length())
+                    && isBlank(after.value, 0, lineEnd < 0 ? after.value
+                            .length() : lineEnd)) {
+                before.end = lineStart;
+                after.start = lineEnd < 0 ? after.value.length()
+                        : lineEnd + 1;
+            }
+        }
+    }
+
+    private TemplateCompiler() {/* noop */}
+
+    /**
+     * The {@link Generator} emits the body of the {@code execute} method for
+     * a template.
+     * 
+     * @author jnelson
+     */
+    private static final class Generator {
+
+        /**
+         * The path of the template.
+         */
+        private final String path;
+
+        /**
+         * The static text of the template, in order.
+         */
+        private final List<String> constants = Lists.newArrayList();
+
+        /**
+         * The body of the method.
+         */
+        private final StringBuilder body = new StringBuilder();
+
+        /**
+         * The number of sections whose variables have been declared.
+         */
+        private int variables = 0;
+
+        /**
+         * The name of the writer that the statements being emitted write to.
+         */
+        private String writer = "writer";
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param path
+         */
+        Generator(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Emit the statements that render the {@code nodes}.
+         * 
+         * @param nodes
+         * @param depth
+         */
+        void emit(List<Node> nodes, int depth) {
+            for (Node node : nodes) {
+                switch (node.type) {
+                case TEXT:
+                    for (String constant : constants(node.value)) {
+                        line(depth, writer + ".write(" + constant + ");");
+                    }
+                    break;
+                case VARIABLE:
+                    line(depth, "Scopes.escape(" + writer
+                            + ", Scopes.value(scopes, " + literal(node.value)
+                            + ", PATH));");
+                    break;
+                case UNESCAPED:
+                    line(depth, "Scopes.write(" + writer
+                            + ", Scopes.value(scopes, " + literal(node.value)
+                            + ", PATH));");
+                    break;
+                case SECTION:
+                    // A lambda section is rendered to its own writer, so that
+                    // the result can be given to the lambda
+                    int index = variables++;
+                    String value = "value" + index;
+                    String scope = "scope" + index;
+                    String outer = writer;
+                    String inner = "writer" + index;
+                    line(depth, "Object " + value + " = Scopes.get(scopes, "
+                            + literal(node.value) + ");");
+                    line(depth, "Writer " + inner + " = Scopes.writer(" + value
+                            + ", " + outer + ");");
+                    line(depth, "for (Object " + scope + " : Scopes.section("
+                            + value + ", scopes)) {");
+                    line(depth + 1, "scopes.add(" + scope + ");");
+                    line(depth + 1, "try {");
+                    writer = inner;
+                    emit(node.children, depth + 2);
+                    writer = outer;
+                    line(depth + 1, "}");
+                    line(depth + 1, "finally {");
+                    line(depth + 2, "scopes.remove(scopes.size() - 1);");
+                    line(depth + 1, "}");
+                    line(depth, "}");
+                    line(depth, "if(" + inner + " != " + outer + ") {");
+                    line(depth + 1, "Scopes.lambda(" + value + ", " + inner
+                            + ", scopes, " + outer + ", PATH"
+                            + (node.source.isEmpty() ? "" : ", "
+                                    + Joiner.on(", ").join(
+                                            constants(node.source))) + ");");
+                    line(depth, "}");
+                    break;
+                case INVERTED:
+                    line(depth, "if(Scopes.isFalsey(Scopes.get(scopes, "
+                            + literal(node.value) + "))) {");
+                    emit(node.children, depth + 1);
+                    line(depth, "}");
+                    break;
+                case PARTIAL:
+                    line(depth, "CompiledTemplates.partial("
+                            + literal(resolve(path, node.value))
+                            + ", scopes, " + writer + ");");
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Add the {@code text} to the {@link #constants}, split so that no
+         * constant is too long, and return the names of the constants.
+         * 
+         * @param text
+         * @return the names of the constants
+         */
+        private List<String> constants(String text) {
+            List<String> names = Lists.newArrayList();
+            int length = text.length();
+            for (int i = 0; i < length; i += MAX_CONSTANT_LENGTH) {
+                constants.add(text.substring(i,
+                        Math.min(length, i + MAX_CONSTANT_LENGTH)));
+                names.add("TEXT_" + (constants.size() - 1));
+            }
+            return names;
+        }
+
+        /**
+         * Emit a {@code statement} at the {@code depth}.
+         * 
+         * @param depth
+         * @param statement
+         */
+        private void line(int depth, String statement) {
+            for (int i = 0; i < depth; ++i) {
+                body.append("    ");
+            }
+            body.append(statement).append('\n');
+        }
+    }
+
+    /**
+     * A {@link Node} in the tree of a parsed template.
+     * 
+     * @author jnelson
+     */
+    static final class Node {
+
+        /**
+         * Return a partial node.
+         * 
+         * @param name
+         * @return the node
+         */
+        static Node partial(String name) {
+            return new Node(Type.PARTIAL, name, null);
+        }
+
+        /**
+         * Return a section node.
+         * 
+         * @param name
+         * @param inverted
+         * @return the node
+         */
+        static Node section(String name, boolean inverted) {
+            return new Node(inverted ? Type.INVERTED : Type.SECTION, name,
+                    Lists.<Node> newArrayList());
+        }
+
+        /**
+         * Return a text node.
+         * 
+         * @param text
+         * @return the node
+         */
+        static Node text(String text) {
+            return new Node(Type.TEXT, text, null);
+        }
+
+        /**
+         * Return a variable node.
+         * 
+         * @param name
+         * @param escaped
+         * @return the node
+         */
+        static Node variable(String name, boolean escaped) {
+            return new Node(escaped ? Type.VARIABLE : Type.UNESCAPED, name,
+                    null);
+        }
+
+        /**
+         * The type of the node.
+         */
+        final Type type;
+
+        /**
+         * The text or name of the node.
+         */
+        final String value;
+
+        /**
+         * The nodes within a section, if this is one.
+         */
+        final List<Node> children;
+
+        /**
+         * The text of the section, if this is one.
+         */
+        String source = "";
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param type
+         * @param value
+         * @param children
+         */
+        private Node(Type type, String value, List<Node> children) {
+            this.type = type;
+            this.value = value;
+            this.children = children;
+        }
+    }
+
+    /**
+     * A {@link Token} in the source of a template.
+     * 
+     * @author jnelson
+     */
+    private static final class Token {
+
+        /**
+         * The type of the token.
+         */
+        final Type type;
+
+        /**
+         * The text or name of the token.
+         */
+        final String value;
+
+        /**
+         * The index in the template at which the token begins.
+         */
+        final int offset;
+
+        /**
+         * The index at which the text that is kept begins, after the end of a
+         * standalone line is trimmed from its start.
+         */
+        int start = 0;
+
+        /**
+         * The index at which the text that is kept ends, after the beginning
+         * of a standalone line is trimmed from its end.
+         */
+        int end;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param type
+         * @param value
+         * @param offset
+         */
+        Token(Type type, String value, int offset) {
+            this.type = type;
+            this.value = value;
+            this.offset = offset;
+            this.end = value.length();
+        }
+    }
+
+    /**
+     * The types of {@link Token tokens} and {@link Node nodes}.
+     * 
+     * @author jnelson
+     */
+    enum Type {
+        TEXT, VARIABLE, UNESCAPED, SECTION, INVERTED, CLOSE, COMMENT, PARTIAL
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.trace;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+
+/**
+ * A {@link SpanExporter} that appends each {@link Span} to a local file as a
+ * line of JSON.
+ * <p>
+ * Exporting a span only offers it to a bounded queue, so the request thread
+ * never waits for the file. A background thread drains the queue in batches,
+ * formats each span and flushes once per batch. If the writer falls so far
+ * behind that the queue fills up, new spans are dropped and counted rather
+ * than blocking requests.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    private static final Logger log = LoggerFactory
+            .getLogger(FileSpanExporter.class);
+
+    /**
+     * The default number of spans that can wait to be written.
+     */
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The spans that are waiting to be written.
+     */
+    private final BlockingQueue<Span> queue;
+
+    /**
+     * The number of spans that were dropped because the queue was full or
+     * the file could not be written.
+     */
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * The background thread that writes spans to the file.
+     */
+    private final Thread flusher;
+
+    /**
+     * The writer for the file.
+     */
+    private final Writer writer;
+
+    /**
+     * A flag that indicates whether this exporter has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Construct a new instance that appends to the file at {@code path}.
+     * 
+     * @param path
+     */
+    public FileSpanExporter(String path) {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct a new instance that appends to the file at {@code path}.
+     * 
+     * @param path
+     * @param capacity the number of spans that can wait to be written
+     */
+    public FileSpanExporter(String path, int capacity) {
+        try {
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(path, true), Charsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        this.queue = new ArrayBlockingQueue<Span>(capacity);
+        this.flusher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+
+        }, "quest-span-exporter");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Stop accepting spans and wait for the ones that are queued to be
+     * written.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void export(Span span) {
+        if(closed || !queue.offer(span)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Return the number of spans that were dropped because the writer could
+     * not keep up or the file could not be written.
+     * 
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Write queued spans to the file until this exporter is closed and the
+     * queue is empty.
+     */
+    private void drain() {
+        List<Span> batch = Lists.newArrayList();
+        for (;;) {
+            try {
+                Span span = queue.poll(10, TimeUnit.MILLISECONDS);
+                if(span == null) {
+                    if(closed) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(span);
+                queue.drainTo(batch);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            try {
+                for (Span span : batch) {
+                    writer.write(format(span));
+                    writer.write('\n');
+                }
+                writer.flush();
+            }
+            catch (IOException e) {
+                dropped.addAndGet(batch.size());
+                log.error("Cannot write spans to the trace file", e);
+            }
+            batch.clear();
+        }
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            log.error("Cannot close the trace file", e);
+        }
+    }
+
+    /**
+     * Format the {@code span} as a line of JSON.
+     * 
+     * @param span
+     * @return the line
+     */
+    private String format(Span span) {
+        JsonObject json = new JsonObject();
+        json.addProperty("trace", span.getTraceId());
+        json.addProperty("span", span.getId());
+        json.addProperty("parent", span.getParentId());
+        json.addProperty("name", span.getName());
+        json.addProperty("start", span.getStartTime());
+        json.addProperty("duration", span.getDuration());
+        if(!span.getTags().isEmpty()) {
+            JsonObject tags = new JsonObject();
+            for (Map.Entry<String, String> tag : span.getTags().entrySet()) {
+                tags.addProperty(tag.getKey(), tag.getValue());
+            }
+            json.add("tags", tags);
+        }
+        return json.toString();
+    }
+
+}
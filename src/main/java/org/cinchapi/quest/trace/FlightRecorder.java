@@ -0,0 +1,412 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.trace;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+/**
+ * The {@link FlightRecorder} emits a JDK Flight Recorder event for each stage
+ * of each request, so that a recording can be analyzed after the fact with the
+ * routes lined up against the JVM's own events (i.e. CPU samples, allocations,
+ * garbage collections and lock contention).
+ * <p>
+ * Every {@link Span} of a request becomes an {@code org.cinchapi.quest.Stage}
+ * event that is tagged with the route, the name of the stage (i.e.
+ * {@code routine}, {@code serve}, {@code render}, {@code serialize} or
+ * {@code write}) and the final status of the response. Events are only
+ * emitted while a recording is running, whether it was started with
+ * {@link #start(String, long, long, TimeUnit)} or by an external tool like
+ * {@code jcmd}, so requests pay nothing otherwise.
+ * </p>
+ * <p>
+ * The Flight Recorder API was added in JDK 11, so it is accessed reflectively
+ * and the recorder is simply {@link #isAvailable() unavailable} on older
+ * JVMs.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class FlightRecorder {
+
+    /**
+     * The name of the event that is emitted for each stage.
+     */
+    public static final String EVENT_NAME = "org.cinchapi.quest.Stage";
+
+    /**
+     * The name of the recording that is started by {@link #start(String,
+     * long, long, TimeUnit)}.
+     */
+    private static final String RECORDING_NAME = "quest";
+
+    /**
+     * The indexes of the fields of the event, in the order they are declared.
+     */
+    private static final int ROUTE_FIELD = 0, STAGE_FIELD = 1,
+            STATUS_FIELD = 2;
+
+    private static final Logger log = LoggerFactory
+            .getLogger(FlightRecorder.class);
+
+    /**
+     * A flag that indicates whether the JVM has a flight recorder.
+     */
+    private static final boolean available = listen();
+
+    /**
+     * A flag that indicates whether any recording is running.
+     */
+    private static volatile boolean recording = false;
+
+    /**
+     * Creates events or {@code null} if the event type hasn't been registered
+     * yet.
+     */
+    @Nullable
+    private static volatile MethodHandle newEvent = null;
+
+    /**
+     * The methods of each event.
+     */
+    private static MethodHandle begin, end, commit, set;
+
+    /**
+     * The recording that was started by {@link #start(String, long, long,
+     * TimeUnit)} or {@code null}.
+     */
+    @Nullable
+    private static Object current = null;
+
+    /**
+     * The file to which the {@link #current} recording is written.
+     */
+    @Nullable
+    private static File destination = null;
+
+    /**
+     * Return {@code true} if the JVM has a flight recorder.
+     * 
+     * @return {@code true} if available
+     */
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Return {@code true} if any flight recording is running, in which case
+     * events are emitted for each request.
+     * 
+     * @return {@code true} if recording
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Start a recording with the JVM's default settings, plus the Quest
+     * events, that is written to the file at {@code path} once it is
+     * {@link #stop() stopped}. The recording is bounded: once it holds more
+     * than {@code maxSize} bytes or its oldest data is older than
+     * {@code maxAge}, the oldest data is discarded.
+     * 
+     * @param path the destination or {@code null} for a file in the working
+     *            directory
+     * @param maxSize the maximum size in bytes or {@code 0} for no limit
+     * @param maxAge the maximum age or {@code 0} for no limit
+     * @param unit
+     * @return the destination
+     */
+    public static synchronized File start(@Nullable String path,
+            long maxSize, long maxAge, TimeUnit unit) {
+        Preconditions.checkState(available,
+                "The JVM does not have a flight recorder");
+        Preconditions.checkState(current == null, "A recording is running");
+        Preconditions.checkArgument(maxSize >= 0 && maxAge >= 0);
+        File file = new File(path != null ? path : "quest-"
+                + System.currentTimeMillis() + ".jfr").getAbsoluteFile();
+        try {
+            register();
+            Class<?> configuration = Class.forName("jdk.jfr.Configuration");
+            Object settings = configuration.getMethod("getConfiguration",
+                    String.class).invoke(null, "default");
+            Object recording = Class.forName("jdk.jfr.Recording")
+                    .getConstructor(configuration).newInstance(settings);
+            Class<?> type = recording.getClass();
+            type.getMethod("setName", String.class).invoke(recording,
+                    RECORDING_NAME);
+            type.getMethod("enable", String.class).invoke(recording,
+                    EVENT_NAME);
+            type.getMethod("setToDisk", boolean.class).invoke(recording, true);
+            if(maxSize > 0) {
+                type.getMethod("setMaxSize", long.class).invoke(recording,
+                        maxSize);
+            }
+            if(maxAge > 0) {
+                Class<?> duration = Class.forName("java.time.Duration");
+                type.getMethod("setMaxAge", duration).invoke(
+                        recording,
+                        duration.getMethod("ofMillis", long.class).invoke(
+                                null, unit.toMillis(maxAge)));
+            }
+            type.getMethod("setDestination", Path.class).invoke(recording,
+                    file.toPath());
+            type.getMethod("start").invoke(recording);
+            current = recording;
+            destination = file;
+            return file;
+        }
+        catch (ReflectiveOperationException e) {
+            throw Throwables.propagate(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Stop the recording that was {@link #start(String, long, long, TimeUnit)
+     * started} and write it to its destination.
+     * 
+     * @return the file to which the recording was written
+     */
+    public static synchronized File stop() {
+        Preconditions.checkState(current != null, "No recording is running");
+        try {
+            Class<?> type = current.getClass();
+            type.getMethod("stop").invoke(current);
+            type.getMethod("close").invoke(current);
+            return destination;
+        }
+        catch (ReflectiveOperationException e) {
+            throw Throwables.propagate(e.getCause() != null ? e.getCause() : e);
+        }
+        finally {
+            current = null;
+            destination = null;
+        }
+    }
+
+    /**
+     * Begin an event for a stage that starts now.
+     * 
+     * @return the event or {@code null} if nothing is recording
+     */
+    @Nullable
+    static Object begin() {
+        MethodHandle newEvent = FlightRecorder.newEvent;
+        if(recording && newEvent != null) {
+            try {
+                Object event = newEvent.invoke();
+                begin.invoke(event);
+                return event;
+            }
+            catch (Throwable t) {
+                return null; // recording must never fail a request
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Commit the {@code event}, which has {@link #end(Object) ended}, with the
+     * {@code route}, {@code stage} and {@code status}.
+     * 
+     * @param event
+     * @param route
+     * @param stage
+     * @param status
+     */
+    static void commit(Object event, String route, String stage, int status) {
+        try {
+            set.invoke(event, ROUTE_FIELD, (Object) route);
+            set.invoke(event, STAGE_FIELD, (Object) stage);
+            set.invoke(event, STATUS_FIELD, (Object) status);
+            commit.invoke(event);
+        }
+        catch (Throwable t) {/* recording must never fail a request */}
+    }
+
+    /**
+     * End the {@code event} now. It is {@link #commit(Object, String, String,
+     * int) committed} later, once the status of the response is known.
+     * 
+     * @param event
+     */
+    static void end(Object event) {
+        try {
+            end.invoke(event);
+        }
+        catch (Throwable t) {/* recording must never fail a request */}
+    }
+
+    /**
+     * Return the {@code jdk.jfr} annotation with the {@code name}.
+     * 
+     * @param name
+     * @return the annotation type
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotation(String name)
+            throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName("jdk.jfr." + name);
+    }
+
+    /**
+     * Listen for recordings starting and stopping, if the JVM has a flight
+     * recorder.
+     * 
+     * @return {@code true} if the JVM has a flight recorder
+     */
+    private static boolean listen() {
+        try {
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            if(!(Boolean) recorder.getMethod("isAvailable").invoke(null)) {
+                return false;
+            }
+            Class<?> listener = Class
+                    .forName("jdk.jfr.FlightRecorderListener");
+            recorder.getMethod("addListener", listener).invoke(
+                    null,
+                    Proxy.newProxyInstance(
+                            FlightRecorder.class.getClassLoader(),
+                            new Class<?>[] { listener },
+                            new InvocationHandler() {
+
+                                @Override
+                                public Object invoke(Object proxy,
+                                        Method method, Object[] args) {
+                                    switch (method.getName()) {
+                                    case "recordingStateChanged":
+                                        refresh();
+                                        return null;
+                                    case "hashCode":
+                                        return System.identityHashCode(proxy);
+                                    case "equals":
+                                        return proxy == args[0];
+                                    case "toString":
+                                        return "Quest recording listener";
+                                    default:
+                                        return null;
+                                    }
+                                }
+
+                            }));
+            return true;
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check whether any recording is running and, if so, make sure that the
+     * Quest event is registered.
+     */
+    private static void refresh() {
+        try {
+            Object recorder = Class.forName("jdk.jfr.FlightRecorder")
+                    .getMethod("getFlightRecorder").invoke(null);
+            boolean running = false;
+            for (Object recording : (List<?>) recorder.getClass()
+                    .getMethod("getRecordings").invoke(recorder)) {
+                if(String.valueOf(
+                        recording.getClass().getMethod("getState")
+                                .invoke(recording)).equals("RUNNING")) {
+                    running = true;
+                    break;
+                }
+            }
+            if(running) {
+                register();
+            }
+            recording = running;
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Could not check the state of the flight recorder", e);
+        }
+    }
+
+    /**
+     * Define and register the Quest event type, if it isn't already.
+     * 
+     * @throws ReflectiveOperationException
+     */
+    private static synchronized void register()
+            throws ReflectiveOperationException {
+        if(newEvent == null) {
+            Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            List<Object> annotations = Arrays.asList(
+                    element.getConstructor(Class.class, Object.class)
+                            .newInstance(annotation("Name"), EVENT_NAME),
+                    element.getConstructor(Class.class, Object.class)
+                            .newInstance(annotation("Label"),
+                                    "Quest Request Stage"),
+                    element.getConstructor(Class.class, Object.class)
+                            .newInstance(annotation("Category"),
+                                    new String[] { "Quest" }));
+            List<Object> fields = Arrays.asList(
+                    descriptor.getConstructor(Class.class, String.class)
+                            .newInstance(String.class, "route"),
+                    descriptor.getConstructor(Class.class, String.class)
+                            .newInstance(String.class, "stage"),
+                    descriptor.getConstructor(Class.class, String.class)
+                            .newInstance(int.class, "status"));
+            Object factory = Class.forName("jdk.jfr.EventFactory")
+                    .getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, fields);
+            factory.getClass().getMethod("register").invoke(factory);
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            begin = lookup.unreflect(event.getMethod("begin"));
+            end = lookup.unreflect(event.getMethod("end"));
+            commit = lookup.unreflect(event.getMethod("commit"));
+            set = lookup.unreflect(event.getMethod("set", int.class,
+                    Object.class));
+            newEvent = lookup.unreflect(
+                    factory.getClass().getMethod("newEvent")).bindTo(factory);
+        }
+    }
+
+    private FlightRecorder() {/* noop */}
+
+}
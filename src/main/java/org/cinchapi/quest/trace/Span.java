@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.trace;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link Span} is a timed unit of work within a {@link Trace}. Spans are
+ * opened automatically around each stage of a request and can also be opened
+ * explicitly to time custom work:
+ * 
+ * <pre>
+ * try (Span span = startSpan(&quot;lookup&quot;)) {
+ *     span.tag(&quot;table&quot;, &quot;users&quot;);
+ *     // do the work
+ * }
+ * </pre>
+ * 
+ * A span is exported as soon as it is {@link #close() closed}. If the request
+ * is neither sampled nor {@link Trace#isRecorded() recorded}, a no-op span is
+ * used so that tracing has no cost.
+ * 
+ * @author jnelson
+ */
+public class Span implements Closeable {
+
+    /**
+     * A {@link Span} that records nothing.
+     */
+    static final Span NOOP = new Span(Trace.NOOP, null, "", Trace.NO_SPAN_ID,
+            null) {
+
+        @Override
+        public void close() {}
+
+        @Override
+        public Span tag(String key, Object value) {
+            return this;
+        }
+
+    };
+
+    /**
+     * The trace to which this span belongs.
+     */
+    private final Trace trace;
+
+    /**
+     * The span within the same {@link #trace} that encloses this one.
+     */
+    @Nullable
+    final Span parent;
+
+    /**
+     * The name of the span.
+     */
+    private final String name;
+
+    /**
+     * The id of this span.
+     */
+    private final String id;
+
+    /**
+     * The id of the span that encloses this one or {@code null} if this is the
+     * root of a trace that did not come from a client.
+     */
+    @Nullable
+    private final String parentId;
+
+    /**
+     * The wall clock time, in milliseconds, at which this span started.
+     */
+    private final long startTime;
+
+    /**
+     * The {@link System#nanoTime()} at which this span started.
+     */
+    private final long startNanos;
+
+    /**
+     * The number of nanoseconds that elapsed between the start and the end of
+     * this span or {@code -1} if it is still open.
+     */
+    private long duration = -1;
+
+    /**
+     * Any tags that describe the span, created lazily.
+     */
+    @Nullable
+    private Map<String, String> tags = null;
+
+    /**
+     * The {@link FlightRecorder} event for this span or {@code null} if the
+     * trace is not recorded.
+     */
+    @Nullable
+    final Object event;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param trace
+     * @param parent
+     * @param name
+     * @param id
+     * @param parentId
+     */
+    Span(Trace trace, @Nullable Span parent, String name, String id,
+            @Nullable String parentId) {
+        this.trace = trace;
+        this.parent = parent;
+        this.name = name;
+        this.id = id;
+        this.parentId = parentId;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.event = trace.isRecorded() ? FlightRecorder.begin() : null;
+    }
+
+    /**
+     * End this span and export it.
+     */
+    @Override
+    public void close() {
+        if(duration < 0) {
+            duration = System.nanoTime() - startNanos;
+            if(event != null) {
+                FlightRecorder.end(event);
+            }
+            trace.end(this);
+        }
+    }
+
+    /**
+     * Return the number of nanoseconds that this span took or {@code -1} if
+     * it is still open.
+     * 
+     * @return the duration
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Return the id of this span.
+     * 
+     * @return the id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Return the name of this span.
+     * 
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the id of the span that encloses this one.
+     * 
+     * @return the parent id or {@code null}
+     */
+    @Nullable
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * Return the wall clock time, in milliseconds, at which this span started.
+     * 
+     * @return the start time
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Return the tags that describe this span.
+     * 
+     * @return the tags
+     */
+    public Map<String, String> getTags() {
+        return tags == null ? Collections.<String, String> emptyMap()
+                : Collections.unmodifiableMap(tags);
+    }
+
+    /**
+     * Return the id of the trace to which this span belongs.
+     * 
+     * @return the trace id
+     */
+    public String getTraceId() {
+        return trace.getId();
+    }
+
+    /**
+     * Describe this span with a {@code key} and {@code value}.
+     * 
+     * @param key
+     * @param value
+     * @return this span
+     */
+    public Span tag(String key, Object value) {
+        if(tags == null) {
+            tags = Maps.newLinkedHashMap();
+        }
+        tags.put(key, String.valueOf(value));
+        return this;
+    }
+
+}
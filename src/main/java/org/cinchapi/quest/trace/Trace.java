@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.trace;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link Trace} records the {@link Span spans} for a single request.
+ * <p>
+ * Each trace has an id that is either generated or propagated from the
+ * client's W3C {@code traceparent} header. A trace that is not sampled still
+ * propagates its id, but hands out no-op spans that record nothing, unless
+ * a {@link FlightRecorder flight recording} is running, in which case its
+ * spans are recorded as flight recorder events instead of being exported.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Trace {
+
+    /**
+     * The id that is used when there is no span to refer to.
+     */
+    static final String NO_SPAN_ID = "0000000000000000";
+
+    /**
+     * A {@link Trace} that is not sampled and has no id.
+     */
+    public static final Trace NOOP = new Trace("00000000000000000000000000000000",
+            null, null, false);
+
+    /**
+     * The id of this trace.
+     */
+    private final String id;
+
+    /**
+     * The id of the client's span that made the request or {@code null} if
+     * this trace did not come from a client.
+     */
+    @Nullable
+    private final String remoteParentId;
+
+    /**
+     * The exporter for the spans in this trace or {@code null} if this trace
+     * is not sampled.
+     */
+    @Nullable
+    private final SpanExporter exporter;
+
+    /**
+     * The innermost span that is open.
+     */
+    @Nullable
+    private volatile Span current = null;
+
+    /**
+     * The first span that was opened, which covers the entire request.
+     */
+    @Nullable
+    private volatile Span root = null;
+
+    /**
+     * The closed spans whose flight recorder events have yet to be
+     * {@link #commit(String, int) committed} or {@code null} if this trace
+     * is not recorded.
+     */
+    @Nullable
+    private final List<Span> recorded;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param id
+     * @param remoteParentId
+     * @param exporter
+     * @param recorded
+     */
+    Trace(String id, @Nullable String remoteParentId,
+            @Nullable SpanExporter exporter, boolean recorded) {
+        this.id = id;
+        this.remoteParentId = remoteParentId;
+        this.exporter = exporter;
+        this.recorded = recorded ? Collections.synchronizedList(Lists
+                .<Span> newArrayList()) : null;
+    }
+
+    /**
+     * Commit the flight recorder events for the spans of this trace that have
+     * closed, tagging them with the {@code route} and the final
+     * {@code status} of the response. This is called once the response has
+     * been written and does nothing if this trace is not recorded.
+     * 
+     * @param route
+     * @param status
+     */
+    public void commit(String route, int status) {
+        if(recorded != null) {
+            synchronized (recorded) {
+                for (Span span : recorded) {
+                    FlightRecorder.commit(span.event, route,
+                            span == root ? "request" : span.getName(),
+                            status);
+                }
+                recorded.clear();
+            }
+        }
+    }
+
+    /**
+     * Return the id of this trace.
+     * 
+     * @return the id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Return the value of the W3C {@code traceparent} header that should be
+     * sent with downstream calls made on behalf of this trace.
+     * 
+     * @return the traceparent header value
+     */
+    public String getTraceparent() {
+        Span span = current;
+        String parentId = span != null ? span.getId()
+                : (remoteParentId != null ? remoteParentId : NO_SPAN_ID);
+        return "00-" + id + "-" + parentId + (isSampled() ? "-01" : "-00");
+    }
+
+    /**
+     * Return {@code true} if the spans in this trace are recorded as
+     * {@link FlightRecorder} events.
+     * 
+     * @return {@code true} if recorded
+     */
+    public boolean isRecorded() {
+        return recorded != null;
+    }
+
+    /**
+     * Return {@code true} if the spans in this trace are exported.
+     * 
+     * @return {@code true} if sampled
+     */
+    public boolean isSampled() {
+        return exporter != null;
+    }
+
+    /**
+     * Open a {@link Span} with the {@code name} that is enclosed by the
+     * current span. The span must be {@link Span#close() closed} once the
+     * work it times is done.
+     * 
+     * @param name
+     * @return the span
+     */
+    public Span startSpan(String name) {
+        if(exporter != null || recorded != null) {
+            Span parent = current;
+            Span span = new Span(this, parent, name, Tracer.newSpanId(),
+                    parent != null ? parent.getId() : remoteParentId);
+            current = span;
+            if(root == null) {
+                root = span;
+            }
+            return span;
+        }
+        else {
+            return Span.NOOP;
+        }
+    }
+
+    /**
+     * Record that the {@code span} has closed.
+     * 
+     * @param span
+     */
+    void end(Span span) {
+        if(current == span) {
+            current = span.parent;
+        }
+        if(recorded != null && span.event != null) {
+            recorded.add(span);
+        }
+        if(exporter != null) {
+            try {
+                exporter.export(span);
+            }
+            catch (RuntimeException e) {/* tracing must never fail a request */}
+        }
+    }
+
+}
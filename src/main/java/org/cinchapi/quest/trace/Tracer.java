@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+/**
+ * The {@link Tracer} decides which requests are traced and where their
+ * {@link Span spans} go.
+ * <p>
+ * Tracing is off until a {@link SpanExporter} is
+ * {@link #setExporter(SpanExporter) set}. After that, a request is traced if
+ * the client's {@code traceparent} header says that it is sampled or, when
+ * there is no such header, with a probability equal to the
+ * {@link #setSampleRate(double) sample rate}. Requests that are not traced
+ * only pay for the sampling decision, unless a {@link FlightRecorder flight
+ * recording} is running.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Tracer {
+
+    /**
+     * The W3C header that carries the trace context.
+     */
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    /**
+     * The format of a version 00 {@code traceparent} header.
+     */
+    private static final Pattern TRACEPARENT = Pattern
+            .compile("00-([0-9a-f]{32})-([0-9a-f]{16})-([0-9a-f]{2})");
+
+    /**
+     * The exporter for sampled spans or {@code null} if tracing is off.
+     */
+    @Nullable
+    private static volatile SpanExporter exporter = null;
+
+    /**
+     * The probability with which a request that has no trace context is
+     * sampled.
+     */
+    private static volatile double sampleRate = 1.0;
+
+    /**
+     * Return the exporter that receives sampled spans or {@code null} if
+     * tracing is off.
+     * 
+     * @return the exporter
+     */
+    @Nullable
+    public static SpanExporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * Set the {@code exporter} that receives sampled spans or {@code null} to
+     * turn tracing off.
+     * 
+     * @param exporter
+     */
+    public static void setExporter(@Nullable SpanExporter exporter) {
+        Tracer.exporter = exporter;
+    }
+
+    /**
+     * Set the probability, between 0 and 1, with which a request that has no
+     * trace context is sampled.
+     * 
+     * @param rate
+     */
+    public static void setSampleRate(double rate) {
+        Preconditions.checkArgument(rate >= 0 && rate <= 1,
+                "The sample rate must be between 0 and 1");
+        Tracer.sampleRate = rate;
+    }
+
+    /**
+     * Start a {@link Trace} for a request that carries the
+     * {@code traceparent} header, if any.
+     * 
+     * @param traceparent
+     * @return the trace
+     */
+    public static Trace start(@Nullable String traceparent) {
+        SpanExporter exporter = Tracer.exporter;
+        boolean recorded = FlightRecorder.isRecording();
+        Matcher matcher = traceparent != null ? TRACEPARENT
+                .matcher(traceparent.trim()) : null;
+        if(matcher != null && matcher.matches()) {
+            boolean sampled = (Integer.parseInt(matcher.group(3), 16) & 1) == 1;
+            return new Trace(matcher.group(1), matcher.group(2),
+                    sampled ? exporter : null, recorded);
+        }
+        else if(exporter != null
+                && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            return new Trace(hex(ThreadLocalRandom.current().nextLong())
+                    + hex(ThreadLocalRandom.current().nextLong()), null,
+                    exporter, recorded);
+        }
+        else if(recorded) {
+            return new Trace(hex(ThreadLocalRandom.current().nextLong())
+                    + hex(ThreadLocalRandom.current().nextLong()), null, null,
+                    true);
+        }
+        else {
+            return Trace.NOOP;
+        }
+    }
+
+    /**
+     * Return a new random span id.
+     * 
+     * @return the span id
+     */
+    static String newSpanId() {
+        return hex(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Return the zero padded hex encoding of {@code value}.
+     * 
+     * @param value
+     * @return the hex string
+     */
+    private static String hex(long value) {
+        return Strings.padStart(Long.toHexString(value), 16, '0');
+    }
+
+    private Tracer() {/* noop */}
+
+}
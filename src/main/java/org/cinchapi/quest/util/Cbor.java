@@ -0,0 +1,657 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Utilities for encoding JSON values as CBOR (RFC 7049), the Concise Binary
+ * Object Representation, and decoding them again.
+ * <p>
+ * Values are streamed directly between a {@link JsonElement} and the bytes,
+ * without going through JSON text. Integers are encoded in the fewest bytes
+ * that hold them, integers that don't fit in a long are encoded as bignums
+ * and other numbers are encoded as single precision floats if that is
+ * lossless and double precision floats otherwise. Byte strings, which JSON
+ * does not have, are decoded as base64 strings.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Cbor {
+
+    /**
+     * The media type for CBOR.
+     */
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    // Major types
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int BYTES = 2;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE = 7;
+
+    // Additional information
+    private static final int INDEFINITE = 31;
+
+    // Simple values
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int UNDEFINED = 0xf7;
+    private static final int HALF = 0xf9;
+    private static final int FLOAT = 0xfa;
+    private static final int DOUBLE = 0xfb;
+    private static final int BREAK = 0xff;
+
+    // Tags
+    private static final int POSITIVE_BIGNUM = 2;
+    private static final int NEGATIVE_BIGNUM = 3;
+
+    /**
+     * The number of bytes of a string that are read at a time once it is
+     * longer than this, so that the memory used grows with the bytes that
+     * actually arrive instead of the length the string claims to have.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The smallest long, as a {@link BigInteger}.
+     */
+    private static final BigInteger MIN_LONG = BigInteger
+            .valueOf(Long.MIN_VALUE);
+
+    /**
+     * The largest long, as a {@link BigInteger}.
+     */
+    private static final BigInteger MAX_LONG = BigInteger
+            .valueOf(Long.MAX_VALUE);
+
+    /**
+     * Read one CBOR encoded value from the {@code in} stream.
+     * 
+     * @param in
+     * @return the value
+     * @throws IOException
+     * @throws JsonParseException if the stream doesn't contain a well formed
+     *             value
+     */
+    public static JsonElement read(InputStream in) throws IOException {
+        JsonElement element = read(in, in.read());
+        if(element == null) {
+            throw new JsonParseException("Unexpected break");
+        }
+        return element;
+    }
+
+    /**
+     * Write the {@code element} to the {@code out} stream as CBOR.
+     * 
+     * @param element
+     * @param out
+     * @throws IOException
+     */
+    public static void write(@Nullable JsonElement element, OutputStream out)
+            throws IOException {
+        if(element == null || element.isJsonNull()) {
+            out.write(NULL);
+        }
+        else if(element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            head(MAP, object.entrySet().size(), out);
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeText(entry.getKey(), out);
+                write(entry.getValue(), out);
+            }
+        }
+        else if(element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            head(ARRAY, array.size(), out);
+            for (JsonElement item : array) {
+                write(item, out);
+            }
+        }
+        else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if(primitive.isBoolean()) {
+                out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+            }
+            else if(primitive.isNumber()) {
+                writeNumber(primitive.getAsNumber(), out);
+            }
+            else {
+                writeText(primitive.getAsString(), out);
+            }
+        }
+    }
+
+    /**
+     * Write the header of an array with {@code size} items to the {@code out}
+     * stream. The items must be {@link #write(JsonElement, OutputStream)
+     * written} next.
+     * 
+     * @param size
+     * @param out
+     * @throws IOException
+     */
+    public static void writeArrayHeader(int size, OutputStream out)
+            throws IOException {
+        head(ARRAY, size, out);
+    }
+
+    /**
+     * Write the header of a map with {@code size} pairs to the {@code out}
+     * stream. Each key and value must be written next.
+     * 
+     * @param size
+     * @param out
+     * @throws IOException
+     */
+    public static void writeMapHeader(int size, OutputStream out)
+            throws IOException {
+        head(MAP, size, out);
+    }
+
+    /**
+     * Write the {@code text} to the {@code out} stream as a CBOR text string.
+     * 
+     * @param text
+     * @param out
+     * @throws IOException
+     */
+    public static void writeText(String text, OutputStream out)
+            throws IOException {
+        head(TEXT, Utf8.encodedLength(text), out);
+        int length = text.length();
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            if(c < 0x80) {
+                out.write(c);
+            }
+            else if(c < 0x800) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out.write(0xf0 | (codePoint >> 18));
+                out.write(0x80 | ((codePoint >> 12) & 0x3f));
+                out.write(0x80 | ((codePoint >> 6) & 0x3f));
+                out.write(0x80 | (codePoint & 0x3f));
+            }
+            else {
+                // A lone surrogate is encoded as is, which matches how
+                // Utf8#encodedLength counts it
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Read {@code length} bytes from the {@code in} stream.
+     * 
+     * @param in
+     * @param length
+     * @return the bytes
+     * @throws IOException
+     */
+    private static byte[] bytes(InputStream in, long length)
+            throws IOException {
+        // A negative length actually exceeds Long#MAX_VALUE
+        if(length < 0 || length > Integer.MAX_VALUE) {
+            throw new JsonParseException("String too long");
+        }
+        byte[] bytes = new byte[(int) Math.min(length, CHUNK_SIZE)];
+        fill(in, bytes, bytes.length);
+        if(length == bytes.length) {
+            return bytes;
+        }
+        ByteArrayOutputStream joined = new ByteArrayOutputStream(
+                CHUNK_SIZE * 2);
+        joined.write(bytes);
+        long remaining = length - bytes.length;
+        while (remaining > 0) {
+            int size = (int) Math.min(remaining, CHUNK_SIZE);
+            remaining -= size;
+            fill(in, bytes, size);
+            joined.write(bytes, 0, size);
+        }
+        return joined.toByteArray();
+    }
+
+    /**
+     * Read exactly {@code length} bytes from the {@code in} stream into the
+     * start of the {@code buffer}.
+     * 
+     * @param in
+     * @param buffer
+     * @param length
+     * @throws IOException
+     */
+    private static void fill(InputStream in, byte[] buffer, int length)
+            throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(buffer, offset, length - offset);
+            if(read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Decode an IEEE 754 half precision float.
+     * 
+     * @param bits
+     * @return the value
+     */
+    private static double half(int bits) {
+        int exponent = (bits >> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        double value;
+        if(exponent == 0) {
+            value = mantissa * Math.pow(2, -24);
+        }
+        else if(exponent == 31) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        }
+        else {
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        }
+        return (bits & 0x8000) != 0 ? -value : value;
+    }
+
+    /**
+     * Write the initial byte of an item with the {@code major} type and the
+     * {@code value} (a length, count or integer), followed by as many bytes
+     * as the value needs.
+     * 
+     * @param major
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    private static void head(int major, long value, OutputStream out)
+            throws IOException {
+        int type = major << 5;
+        if(value >= 0 && value < 24) {
+            out.write(type | (int) value);
+        }
+        else if(value >= 0 && value <= 0xff) {
+            out.write(type | 24);
+            out.write((int) value);
+        }
+        else if(value >= 0 && value <= 0xffff) {
+            out.write(type | 25);
+            writeBytes(value, 2, out);
+        }
+        else if(value >= 0 && value <= 0xffffffffL) {
+            out.write(type | 26);
+            writeBytes(value, 4, out);
+        }
+        else {
+            // A negative value is the bit pattern of an unsigned 64-bit value
+            out.write(type | 27);
+            writeBytes(value, 8, out);
+        }
+    }
+
+    /**
+     * Read the value (a length, count or integer) that follows an initial
+     * byte with the additional {@code info}. The value is unsigned, so a
+     * negative return value actually exceeds {@link Long#MAX_VALUE}.
+     * 
+     * @param in
+     * @param info
+     * @return the value
+     * @throws IOException
+     */
+    private static long readArgument(InputStream in, int info)
+            throws IOException {
+        if(info < 24) {
+            return info;
+        }
+        int size;
+        switch (info) {
+        case 24:
+            size = 1;
+            break;
+        case 25:
+            size = 2;
+            break;
+        case 26:
+            size = 4;
+            break;
+        case 27:
+            size = 8;
+            break;
+        default:
+            throw new JsonParseException("Invalid additional information "
+                    + info);
+        }
+        long value = 0;
+        for (int i = 0; i < size; ++i) {
+            int b = in.read();
+            if(b < 0) {
+                throw new EOFException();
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    /**
+     * Read the value that begins with the {@code initial} byte from the
+     * {@code in} stream.
+     * 
+     * @param in
+     * @param initial
+     * @return the value or {@code null} if the initial byte is a break
+     * @throws IOException
+     */
+    @Nullable
+    private static JsonElement read(InputStream in, int initial)
+            throws IOException {
+        if(initial < 0) {
+            throw new EOFException();
+        }
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+        case UNSIGNED: {
+            long value = readArgument(in, info);
+            return new JsonPrimitive(value >= 0 ? value : unsigned(value));
+        }
+        case NEGATIVE: {
+            long value = readArgument(in, info);
+            return new JsonPrimitive(value >= 0 ? -1 - value : unsigned(value)
+                    .not());
+        }
+        case BYTES:
+            return new JsonPrimitive(BaseEncoding.base64().encode(
+                    readString(in, major, info)));
+        case TEXT:
+            return new JsonPrimitive(new String(readString(in, major, info),
+                    Charsets.UTF_8));
+        case ARRAY: {
+            JsonArray array = new JsonArray();
+            if(info == INDEFINITE) {
+                JsonElement item;
+                while ((item = read(in, in.read())) != null) {
+                    array.add(item);
+                }
+            }
+            else {
+                for (long i = readArgument(in, info); i > 0; --i) {
+                    array.add(read(in));
+                }
+            }
+            return array;
+        }
+        case MAP: {
+            JsonObject object = new JsonObject();
+            if(info == INDEFINITE) {
+                int key;
+                while ((key = in.read()) != BREAK) {
+                    object.add(readKey(in, key), read(in));
+                }
+            }
+            else {
+                for (long i = readArgument(in, info); i > 0; --i) {
+                    object.add(readKey(in, in.read()), read(in));
+                }
+            }
+            return object;
+        }
+        case TAG: {
+            long tag = readArgument(in, info);
+            if(tag == POSITIVE_BIGNUM || tag == NEGATIVE_BIGNUM) {
+                int content = in.read();
+                if(content < 0) {
+                    throw new EOFException();
+                }
+                else if(content >>> 5 != BYTES) {
+                    throw new JsonParseException(
+                            "Bignums must be byte strings");
+                }
+                BigInteger value = new BigInteger(1, readString(in, BYTES,
+                        content & 0x1f));
+                return new JsonPrimitive(tag == POSITIVE_BIGNUM ? value
+                        : value.not());
+            }
+            else {
+                // Any other tag only adds semantics that JSON can't express
+                return read(in);
+            }
+        }
+        default:
+            switch (initial) {
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case NULL:
+            case UNDEFINED:
+                return JsonNull.INSTANCE;
+            case HALF:
+                return new JsonPrimitive(half((int) readArgument(in, 25)));
+            case FLOAT:
+                return new JsonPrimitive(Float.intBitsToFloat((int) readArgument(
+                        in, 26)));
+            case DOUBLE:
+                return new JsonPrimitive(Double.longBitsToDouble(readArgument(
+                        in, 27)));
+            case BREAK:
+                return null;
+            default:
+                throw new JsonParseException("Unsupported simple value "
+                        + (initial & 0x1f));
+            }
+        }
+    }
+
+    /**
+     * Read the key of a map entry that begins with the {@code initial} byte
+     * from the {@code in} stream. JSON only allows text keys, so any other
+     * key is rejected.
+     * 
+     * @param in
+     * @param initial
+     * @return the key
+     * @throws IOException
+     */
+    private static String readKey(InputStream in, int initial)
+            throws IOException {
+        if(initial < 0) {
+            throw new EOFException();
+        }
+        else if(initial >>> 5 != TEXT) {
+            throw new JsonParseException("Map keys must be text strings");
+        }
+        return new String(readString(in, TEXT, initial & 0x1f),
+                Charsets.UTF_8);
+    }
+
+    /**
+     * Read the content of a byte or text string with the {@code major} type,
+     * joining the chunks of an indefinite length string.
+     * 
+     * @param in
+     * @param major
+     * @param info
+     * @return the bytes of the string
+     * @throws IOException
+     */
+    private static byte[] readString(InputStream in, int major, int info)
+            throws IOException {
+        if(info != INDEFINITE) {
+            return bytes(in, readArgument(in, info));
+        }
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        int initial;
+        while ((initial = in.read()) != BREAK) {
+            if(initial < 0) {
+                throw new EOFException();
+            }
+            else if(initial >>> 5 != major) {
+                throw new JsonParseException("Invalid chunk in string");
+            }
+            joined.write(bytes(in, readArgument(in, initial & 0x1f)));
+        }
+        return joined.toByteArray();
+    }
+
+    /**
+     * Return the {@code value} interpreted as an unsigned 64-bit integer.
+     * 
+     * @param value
+     * @return the unsigned value
+     */
+    private static BigInteger unsigned(long value) {
+        return BigInteger.valueOf(value & Long.MAX_VALUE).setBit(63);
+    }
+
+    /**
+     * Write the {@code size} low order bytes of the {@code value}, most
+     * significant first.
+     * 
+     * @param value
+     * @param size
+     * @param out
+     * @throws IOException
+     */
+    private static void writeBytes(long value, int size, OutputStream out)
+            throws IOException {
+        for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xff);
+        }
+    }
+
+    /**
+     * Write the {@code number} to the {@code out} stream.
+     * 
+     * @param number
+     * @param out
+     * @throws IOException
+     */
+    private static void writeNumber(Number number, OutputStream out)
+            throws IOException {
+        if(number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            writeInteger(number.longValue(), out);
+        }
+        else if(number instanceof Double || number instanceof Float) {
+            writeFloat(number.doubleValue(), out);
+        }
+        else {
+            // A BigInteger, BigDecimal or lazily parsed number, which is only
+            // an integer if it is written as one
+            String string = number.toString();
+            if(string.indexOf('.') >= 0 || string.indexOf('e') >= 0
+                    || string.indexOf('E') >= 0) {
+                writeFloat(number.doubleValue(), out);
+                return;
+            }
+            BigInteger integer = new BigInteger(string);
+            if(integer.compareTo(MIN_LONG) >= 0
+                    && integer.compareTo(MAX_LONG) <= 0) {
+                writeInteger(integer.longValue(), out);
+            }
+            else {
+                boolean negative = integer.signum() < 0;
+                head(TAG, negative ? NEGATIVE_BIGNUM : POSITIVE_BIGNUM, out);
+                byte[] magnitude = (negative ? integer.not() : integer)
+                        .toByteArray();
+                int offset = magnitude[0] == 0 ? 1 : 0;
+                head(BYTES, magnitude.length - offset, out);
+                out.write(magnitude, offset, magnitude.length - offset);
+            }
+        }
+    }
+
+    /**
+     * Write the floating point {@code value} in the fewest bytes that hold it
+     * exactly.
+     * 
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    private static void writeFloat(double value, OutputStream out)
+            throws IOException {
+        if((float) value == value || Double.isNaN(value)) {
+            out.write(FLOAT);
+            writeBytes(Float.floatToIntBits((float) value), 4, out);
+        }
+        else {
+            out.write(DOUBLE);
+            writeBytes(Double.doubleToLongBits(value), 8, out);
+        }
+    }
+
+    /**
+     * Write the integer {@code value}.
+     * 
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    private static void writeInteger(long value, OutputStream out)
+            throws IOException {
+        if(value >= 0) {
+            head(UNSIGNED, value, out);
+        }
+        else {
+            head(NEGATIVE, -1 - value, out);
+        }
+    }
+
+    private Cbor() {/* noop */}
+
+}
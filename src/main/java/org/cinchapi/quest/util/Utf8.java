@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.util;
+
+import javax.annotation.Nullable;
+
+/**
+ * Utilities for working with UTF-8 encoded text.
+ * 
+ * @author jnelson
+ */
+public final class Utf8 {
+
+    /**
+     * Return the number of bytes that {@code sequence} occupies when it is
+     * encoded as UTF-8, without actually encoding it.
+     * 
+     * @param sequence
+     * @return the encoded length or {@code 0} if {@code sequence} is
+     *         {@code null}
+     */
+    public static long encodedLength(@Nullable CharSequence sequence) {
+        if(sequence == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < sequence.length(); ++i) {
+            char c = sequence.charAt(i);
+            if(c < 0x80) {
+                length += 1;
+            }
+            else if(c < 0x800) {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c)
+                    && i + 1 < sequence.length()
+                    && Character.isLowSurrogate(sequence.charAt(i + 1))) {
+                length += 4;
+                ++i;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private Utf8() {/* noop */}
+
+}
@@ -16,6 +16,8 @@
  */
 package spark.template;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -77,6 +79,24 @@ public abstract class TemplateRoute extends Route {
          */
         public abstract Object render(Map<String, Object> context);
 
+        /**
+         * Render this template with the specified context directly to the
+         * {@code writer}. By default, the template is rendered and then
+         * written, but subclasses should override this method to avoid
+         * buffering the content.
+         * 
+         * @param context The context with which to render this template
+         * @param writer The writer to which the content is written
+         */
+        public void render(Map<String, Object> context, Writer writer) {
+            try {
+                writer.write(String.valueOf(render(context)));
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
         /**
          * Render this template with an empty context.
          * 
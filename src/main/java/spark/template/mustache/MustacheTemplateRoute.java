@@ -16,13 +16,25 @@
  */
 package spark.template.mustache;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import spark.template.TemplateRoute;
 
@@ -42,8 +54,122 @@ import spark.template.TemplateRoute;
  * </pre>
  */
 public abstract class MustacheTemplateRoute extends TemplateRoute {
+
+    /**
+     * The number of templates that have been looked up across all routes.
+     */
+    private static final AtomicLong lookups = new AtomicLong(0);
+
+    /**
+     * The number of lookups that had to compile a template because the route
+     * had not used it before.
+     */
+    private static final AtomicLong compiles = new AtomicLong(0);
+
+    /**
+     * The total number of nanoseconds spent compiling templates.
+     */
+    private static final AtomicLong compileTime = new AtomicLong(0);
+
+    /**
+     * The number of threads on which template values are resolved unless
+     * {@link #setExecutorThreads(int)} is called.
+     */
+    private static final int DEFAULT_EXECUTOR_THREADS = Runtime.getRuntime()
+            .availableProcessors() * 4;
+
+    /**
+     * The executor on which {@link java.util.concurrent.Callable} values in a
+     * template context are resolved, so that independent values are computed
+     * concurrently instead of one after another. The executor is bounded and
+     * does not queue: once every thread is busy, a value is resolved on the
+     * thread that renders the template, which slows that request down instead
+     * of spawning threads without limit.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS, 60,
+            TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("quest-template-%d").build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Return the executor on which {@link java.util.concurrent.Callable}
+     * values in a template context are resolved.
+     * 
+     * @return the executor
+     */
+    protected static ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    /**
+     * Return the number of lookups that had to compile a template.
+     * 
+     * @return the compile count
+     */
+    public static long getTemplateCompileCount() {
+        return compiles.get();
+    }
+
+    /**
+     * Return the total number of nanoseconds spent compiling templates.
+     * 
+     * @return the compile time
+     */
+    public static long getTemplateCompileTime() {
+        return compileTime.get();
+    }
+
+    /**
+     * Return the number of templates that have been looked up across all
+     * routes. Lookups that did not have to compile are served from the
+     * template cache.
+     * 
+     * @return the lookup count
+     */
+    public static long getTemplateLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * Set the maximum number of threads on which
+     * {@link java.util.concurrent.Callable} values in a template context are
+     * resolved. By default, there are four threads per processor. Values that
+     * are submitted while every thread is busy are resolved on the thread that
+     * renders the template.
+     * 
+     * @param threads
+     */
+    public static void setExecutorThreads(int threads) {
+        Preconditions.checkArgument(threads > 0,
+                "The number of threads must be positive");
+        synchronized (executor) {
+            // The core size can never exceed the maximum size, so the order
+            // of the updates depends on whether the pool grows or shrinks
+            if(threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            }
+            else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
     private final MustacheFactory mustacheFactory;
 
+    /**
+     * The names of the templates that have been compiled by the
+     * {@link #mustacheFactory}, which caches them.
+     */
+    private final Set<String> compiled = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     /**
      * Constructor
      * 
@@ -52,7 +178,9 @@ public abstract class MustacheTemplateRoute extends TemplateRoute {
      */
     protected MustacheTemplateRoute(String path) {
         super(path);
-        mustacheFactory = new DefaultMustacheFactory();
+        DefaultMustacheFactory mustacheFactory = new DefaultMustacheFactory();
+        mustacheFactory.setExecutorService(executor);
+        this.mustacheFactory = mustacheFactory;
     }
 
     /**
@@ -72,7 +200,17 @@ public abstract class MustacheTemplateRoute extends TemplateRoute {
 
     @Override
     public final Template template(String name) {
-        return new MustacheTemplate(mustacheFactory.compile(name));
+        lookups.incrementAndGet();
+        if(compiled.contains(name)) {
+            return new MustacheTemplate(mustacheFactory.compile(name));
+        }
+        long start = System.nanoTime();
+        Mustache mustache = mustacheFactory.compile(name);
+        if(compiled.add(name)) {
+            compiles.incrementAndGet();
+            compileTime.addAndGet(System.nanoTime() - start);
+        }
+        return new MustacheTemplate(mustache);
     }
 
     /**
@@ -88,9 +226,20 @@ public abstract class MustacheTemplateRoute extends TemplateRoute {
         @Override
         public Object render(Map<String, Object> context) {
             StringWriter writer = new StringWriter();
-            mustache.execute(writer, context);
-            writer.flush();
+            render(context, writer);
             return writer;
         }
+
+        @Override
+        public void render(Map<String, Object> context, Writer writer) {
+            try {
+                // Flushing waits for any values that are being resolved
+                // concurrently to be written
+                mustache.execute(writer, context).flush();
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
\ No newline at end of file
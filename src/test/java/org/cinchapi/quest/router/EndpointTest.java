@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Unit tests for {@link Endpoint}.
+ * 
+ * @author jnelson
+ */
+public class EndpointTest {
+
+    /**
+     * The number of times each serialization is repeated when comparing
+     * allocations.
+     */
+    private static final int ITERATIONS = 2000;
+
+    /**
+     * Return a payload that is representative of a real response.
+     * 
+     * @return the payload
+     */
+    private static JsonElement payload() {
+        JsonArray items = new JsonArray();
+        for (int i = 0; i < 50; ++i) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", i);
+            item.addProperty("name", "Item \"" + i + "\" <b>&</b> caf\u00e9");
+            item.addProperty("price", i * 1.25);
+            item.addProperty("available", i % 2 == 0);
+            item.add("notes", JsonNull.INSTANCE);
+            items.add(item);
+        }
+        JsonObject payload = new JsonObject();
+        payload.add("items", items);
+        payload.addProperty("total", 50);
+        return payload;
+    }
+
+    /**
+     * Return the bytes of the response that {@code Endpoint} used to build
+     * by wrapping the {@code payload} in a {@link JsonObject}.
+     * 
+     * @param status
+     * @param payload
+     * @return the encoded response
+     */
+    private static byte[] reference(String status, JsonElement payload) {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", status);
+        response.add("payload", payload);
+        return response.toString().getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * Return the bytes that {@link Endpoint#serialize} produces for the
+     * {@code payload}, releasing the body afterwards.
+     * 
+     * @param prefix
+     * @param payload
+     * @return the encoded response
+     */
+    private static byte[] serialize(byte[] prefix, JsonElement payload) {
+        ResponseBody body = Endpoint.serialize(prefix, payload,
+                Projection.ALL);
+        try {
+            return body.toByteArray();
+        }
+        finally {
+            body.release();
+        }
+    }
+
+    @Test
+    public void testPrefersCborByQuality() {
+        Assert.assertTrue(Endpoint
+                .prefersCbor("application/json;q=0.5, application/cbor"));
+        Assert.assertTrue(Endpoint
+                .prefersCbor("application/cbor, application/json;q=0.9"));
+        Assert.assertFalse(Endpoint
+                .prefersCbor("application/cbor;q=0.5, application/json"));
+        Assert.assertFalse(Endpoint
+                .prefersCbor("application/cbor;q=0, application/json;q=0"));
+        Assert.assertFalse(Endpoint.prefersCbor("application/cbor;q=bad"));
+    }
+
+    @Test
+    public void testPrefersCborBySpecificity() {
+        // The most specific range that matches a type gives its quality,
+        // regardless of the order of the ranges
+        Assert.assertTrue(Endpoint
+                .prefersCbor("application/cbor;q=0.8, */*;q=0.5"));
+        Assert.assertFalse(Endpoint
+                .prefersCbor("application/cbor;q=0.5, */*;q=0.8"));
+        Assert.assertTrue(Endpoint
+                .prefersCbor("*/*;q=0.9, application/*;q=0.1, "
+                        + "application/cbor"));
+        Assert.assertFalse(Endpoint
+                .prefersCbor("application/*, application/cbor;q=0"));
+
+        // At equal quality, a type that is named explicitly wins over one
+        // that only matches a wildcard and JSON wins a tie
+        Assert.assertTrue(Endpoint.prefersCbor("application/cbor, */*"));
+        Assert.assertFalse(Endpoint
+                .prefersCbor("application/json, application/cbor"));
+        Assert.assertFalse(Endpoint
+                .prefersCbor("application/cbor, application/json"));
+    }
+
+    @Test
+    public void testPrefersJsonByDefault() {
+        Assert.assertFalse(Endpoint.prefersCbor(null));
+        Assert.assertFalse(Endpoint.prefersCbor(""));
+        Assert.assertFalse(Endpoint.prefersCbor("*/*"));
+        Assert.assertFalse(Endpoint.prefersCbor("application/json"));
+        Assert.assertTrue(Endpoint.prefersCbor("application/cbor"));
+        Assert.assertTrue(Endpoint.prefersCbor(" Application/CBOR ; q=1"));
+    }
+
+    @Test
+    public void testSerializeAllocatesLessThanJsonObject() {
+        ThreadMeter.setEnabled(true);
+        try {
+            Assume.assumeTrue(ThreadMeter.isAllocationMetered());
+            JsonElement payload = payload();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                // Warm up both paths so that neither is measured while it is
+                // being loaded or compiled
+                Endpoint.serialize(Endpoint.SUCCESS_PREFIX, payload,
+                        Projection.ALL).release();
+                reference("success", payload);
+            }
+            long start = ThreadMeter.allocatedBytes();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                Endpoint.serialize(Endpoint.SUCCESS_PREFIX, payload,
+                        Projection.ALL).release();
+            }
+            long serialized = ThreadMeter.allocatedBytes() - start;
+            start = ThreadMeter.allocatedBytes();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                reference("success", payload);
+            }
+            long wrapped = ThreadMeter.allocatedBytes() - start;
+            System.out.println("Bytes allocated per response: serialize="
+                    + serialized / ITERATIONS + ", JsonObject.toString="
+                    + wrapped / ITERATIONS);
+            Assert.assertTrue(serialized < wrapped);
+        }
+        finally {
+            ThreadMeter.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testSerializeFailureMatchesJsonObject() {
+        JsonElement payload = new JsonPrimitive("Something \"bad\" happened");
+        Assert.assertArrayEquals(reference("failed", payload),
+                serialize(Endpoint.FAILED_PREFIX, payload));
+    }
+
+    @Test
+    public void testSerializeMatchesJsonObject() {
+        for (JsonElement payload : Arrays.asList(payload(), new JsonArray(),
+                new JsonObject(), JsonNull.INSTANCE, new JsonPrimitive(0),
+                new JsonPrimitive(-12.5), new JsonPrimitive(true),
+                new JsonPrimitive(""), new JsonPrimitive(
+                        "\u2028 \t\n \\ / \u0001 \ud83d\ude00 \u00e9"))) {
+            Assert.assertArrayEquals(payload.toString(),
+                    reference("success", payload),
+                    serialize(Endpoint.SUCCESS_PREFIX, payload));
+        }
+    }
+
+    @Test
+    public void testSerializeNullPayloadMatchesJsonNull() {
+        Assert.assertArrayEquals(reference("success", JsonNull.INSTANCE),
+                serialize(Endpoint.SUCCESS_PREFIX, null));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Unit tests for {@link Projection}.
+ * 
+ * @author jnelson
+ */
+public class ProjectionTest {
+
+    /**
+     * The payload that the projections are applied to.
+     */
+    private static final String PAYLOAD = "{\"id\":1,\"name\":\"a\","
+            + "\"items\":[{\"name\":\"x\",\"price\":2,\"history\":[1]},"
+            + "{\"name\":\"y\",\"price\":3,\"history\":[]}],"
+            + "\"a/b\":true,\"c~d\":false}";
+
+    /**
+     * Return the JSON that the projection described by {@code fields} writes
+     * for the {@link #PAYLOAD}.
+     * 
+     * @param fields
+     * @return the projected JSON
+     * @throws IOException
+     */
+    private static String project(String fields) throws IOException {
+        JsonElement payload = new JsonParser().parse(PAYLOAD);
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        Projection.parse(fields).writeJson(payload, writer, new Gson());
+        writer.flush();
+        return out.toString();
+    }
+
+    @Test
+    public void testEmptyIsAll() {
+        Assert.assertSame(Projection.ALL, Projection.parse(null));
+        Assert.assertSame(Projection.ALL, Projection.parse(""));
+        Assert.assertSame(Projection.ALL, Projection.parse(" , "));
+        Assert.assertSame(Projection.ALL, Projection.parse("-"));
+    }
+
+    @Test
+    public void testEscapes() throws IOException {
+        Assert.assertEquals("{\"a/b\":true}", project("a~1b"));
+        Assert.assertEquals("{\"c~d\":false}", project("c~0d"));
+        Assert.assertEquals("{\"id\":1,\"name\":\"a\",\"items\":[{\"name\":"
+                + "\"x\",\"price\":2,\"history\":[1]},{\"name\":\"y\","
+                + "\"price\":3,\"history\":[]}]}", project("-a~1b,-c~0d"));
+        Projection projection = Projection.parse("a~1b,c~0d");
+        Assert.assertTrue(projection.includes("a~1b"));
+        Assert.assertTrue(projection.includes("c~0d"));
+        Assert.assertFalse(projection.includes("a/b"));
+    }
+
+    @Test
+    public void testEscapesAreReplacedInOrder() {
+        // ~01 is ~ followed by 1, not /
+        Projection projection = Projection.parse("~01");
+        Assert.assertTrue(projection.child("~1") != null);
+        Assert.assertTrue(projection.child("/") == null);
+    }
+
+    @Test
+    public void testExclude() throws IOException {
+        Assert.assertEquals("{\"id\":1,\"name\":\"a\",\"items\":[{\"name\":"
+                + "\"x\",\"price\":2},{\"name\":\"y\",\"price\":3}],"
+                + "\"a/b\":true,\"c~d\":false}", project("-items/history"));
+        Projection projection = Projection.parse("-name");
+        Assert.assertFalse(projection.isAll());
+        Assert.assertFalse(projection.includes("name"));
+        Assert.assertTrue(projection.includes("id"));
+        Assert.assertTrue(projection.includes("items/price"));
+    }
+
+    @Test
+    public void testExcludeWithinInclude() throws IOException {
+        // An exclusion wins over the inclusion of an enclosing member,
+        // regardless of the order of the paths
+        Assert.assertEquals("{\"items\":[{\"name\":\"x\",\"price\":2},"
+                + "{\"name\":\"y\",\"price\":3}]}",
+                project("items,-items/history"));
+        Assert.assertEquals(project("items,-items/history"),
+                project("-items/history,items"));
+    }
+
+    @Test
+    public void testExcludeOfIncludedMember() throws IOException {
+        Assert.assertEquals("{}", project("id,-id"));
+        Assert.assertEquals("{\"name\":\"a\"}", project("-id,id,name"));
+    }
+
+    @Test
+    public void testExcludeOutsideIncludeIsIgnored() throws IOException {
+        Assert.assertEquals("{\"id\":1}", project("id,-name"));
+        Assert.assertEquals("{\"id\":1}", project("id,-items/name"));
+    }
+
+    @Test
+    public void testInclude() throws IOException {
+        Assert.assertEquals("{\"id\":1,\"items\":[{\"name\":\"x\"},"
+                + "{\"name\":\"y\"}]}", project("id,items/name"));
+        Projection projection = Projection.parse("id, items/name");
+        Assert.assertTrue(projection.includes("id"));
+        Assert.assertTrue(projection.includes("items"));
+        Assert.assertTrue(projection.includes("items/name"));
+        Assert.assertFalse(projection.includes("items/price"));
+        Assert.assertFalse(projection.includes("name"));
+    }
+
+    @Test
+    public void testIncludeOfEnclosingMemberWins() throws IOException {
+        // Including a member in full makes the paths below it redundant,
+        // regardless of the order of the paths
+        Assert.assertEquals(project("items"), project("items/name,items"));
+        Assert.assertEquals(project("items"), project("items,items/name"));
+        Assert.assertTrue(Projection.parse("items/name,items").includes(
+                "items/price"));
+    }
+
+}
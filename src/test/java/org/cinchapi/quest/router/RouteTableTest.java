@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.router;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Unit tests for {@link RouteTable}.
+ * 
+ * @author jnelson
+ */
+public class RouteTableTest {
+
+    /**
+     * Return an {@link Endpoint} with the {@code path} that serves nothing.
+     * 
+     * @param path
+     * @return the endpoint
+     */
+    private static Endpoint endpoint(String path) {
+        return new Endpoint(path) {
+
+            @Override
+            protected JsonElement serve() throws Exception {
+                return NO_DATA;
+            }
+
+        };
+    }
+
+    /**
+     * Return the entry in the {@code table} for the {@code verb} and the
+     * route {@code path}, without the namespace.
+     * 
+     * @param table
+     * @param verb
+     * @param path
+     * @return the entry
+     */
+    private static RouteTable.Entry entry(RouteTable table, Verb verb,
+            String path) {
+        for (RouteTable.Entry entry : table.entries()) {
+            if(entry.getVerb() == verb
+                    && entry.getPath().endsWith("store/" + path)) {
+                return entry;
+            }
+        }
+        throw new AssertionError("No entry for " + verb + " " + path);
+    }
+
+    /**
+     * Return a table with the routes of the {@link StoreRouter}.
+     * 
+     * @return the table
+     */
+    private static RouteTable table() {
+        Router router = new StoreRouter();
+        router.routes();
+        return RouteTable.compile(Collections.singleton(router));
+    }
+
+    @Test
+    public void testCoversIgnoresEmptySegments() {
+        Assert.assertTrue(RouteTable.covers("/users/", "users"));
+        Assert.assertTrue(RouteTable.covers("users//:id", "/users/:id/"));
+    }
+
+    @Test
+    public void testCoversLiteralPath() {
+        Assert.assertTrue(RouteTable.covers("/users", "/users"));
+        Assert.assertFalse(RouteTable.covers("/users", "/accounts"));
+        Assert.assertFalse(RouteTable.covers("/users", "/users/list"));
+        Assert.assertFalse(RouteTable.covers("/users/list", "/users"));
+    }
+
+    @Test
+    public void testCoversRoot() {
+        Assert.assertTrue(RouteTable.covers("/", "/"));
+        Assert.assertFalse(RouteTable.covers("/", "/users"));
+        Assert.assertTrue(RouteTable.covers("*", "/"));
+    }
+
+    @Test
+    public void testLiteralDoesNotCoverVariable() {
+        Assert.assertFalse(RouteTable.covers("/users/admin", "/users/:id"));
+    }
+
+    @Test
+    public void testMatchFirstEntryWins() {
+        RouteTable table = table();
+        Assert.assertSame(entry(table, Verb.GET, "files/*"),
+                table.match(Verb.GET, "/store/files/a"));
+        Assert.assertSame(entry(table, Verb.GET, "files/*"),
+                table.match(Verb.GET, "/store/files/a/b"));
+        Assert.assertSame(entry(table, Verb.GET, "items/:id/reviews"),
+                table.match(Verb.GET, "/store/items/1/reviews"));
+    }
+
+    @Test
+    public void testMatchNothing() {
+        RouteTable table = table();
+        Assert.assertNull(table.match(Verb.GET, "/store"));
+        Assert.assertNull(table.match(Verb.GET, "/store/items"));
+        Assert.assertNull(table.match(Verb.GET, "/store/items/1/2"));
+        Assert.assertNull(table.match(Verb.GET, "/other/items/1"));
+        Assert.assertNull(table.match(Verb.DELETE, "/store/items/1"));
+    }
+
+    @Test
+    public void testMatchVariableAndWildcardSegments() {
+        RouteTable table = table();
+        Assert.assertSame(entry(table, Verb.GET, "items/:id"),
+                table.match(Verb.GET, "/store/items/1"));
+        Assert.assertSame(entry(table, Verb.POST, "items/:id"),
+                table.match(Verb.POST, "/store/items/1"));
+        Assert.assertSame(entry(table, Verb.GET, "files"),
+                table.match(Verb.GET, "/store/files/"));
+        Assert.assertSame(entry(table, Verb.GET, "*/list"),
+                table.match(Verb.GET, "/store/anything/list"));
+        Assert.assertSame(entry(table, Verb.GET, "docs/*"),
+                table.match(Verb.GET, "/store/docs"));
+    }
+
+    @Test
+    public void testTrailingWildcardCoversRemainingSegments() {
+        Assert.assertTrue(RouteTable.covers("*", "/users/1/posts"));
+        Assert.assertTrue(RouteTable.covers("/users/*", "/users"));
+        Assert.assertTrue(RouteTable.covers("/users/*", "/users/:id/posts"));
+        Assert.assertFalse(RouteTable.covers("/users/*", "/accounts/1"));
+    }
+
+    @Test
+    public void testVariableAndInnerWildcardCoverOneSegment() {
+        Assert.assertTrue(RouteTable.covers("/users/:id", "/users/1"));
+        Assert.assertTrue(RouteTable.covers("/users/:id", "/users/:name"));
+        Assert.assertTrue(RouteTable.covers("/users/*/posts",
+                "/users/1/posts"));
+        Assert.assertFalse(RouteTable.covers("/users/*/posts", "/users/1"));
+        Assert.assertFalse(RouteTable.covers("/users/:id", "/users/1/posts"));
+        Assert.assertFalse(RouteTable.covers("/users/:id", "/users"));
+    }
+
+    /**
+     * A router whose routes overlap in various ways.
+     * 
+     * @author jnelson
+     */
+    public static final class StoreRouter extends Router {
+
+        @Override
+        public void routes() {
+            get(endpoint("files"));
+            get(endpoint("files/*"));
+            get(endpoint("files/:name"));
+            get(endpoint("items/:id"));
+            get(endpoint("items/:id/reviews"));
+            get(endpoint("items/*/reviews"));
+            post(endpoint("items/:id"));
+            get(endpoint("*/list"));
+            get(endpoint("docs/*"));
+        }
+
+    }
+
+}
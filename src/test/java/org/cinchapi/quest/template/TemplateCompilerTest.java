@@ -0,0 +1,342 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.template;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Unit tests for {@link TemplateCompiler} that render the same templates
+ * with the compiled classes and with a {@link DefaultMustacheFactory} and
+ * expect the same output.
+ * 
+ * @author jnelson
+ */
+public class TemplateCompilerTest {
+
+    /**
+     * The templates to compile, indexed by their path within the
+     * {@code templates} directory.
+     */
+    private static final Map<String, String> TEMPLATES = ImmutableMap
+            .<String, String> builder()
+            .put("page.mustache",
+                    "<h1>{{title}}</h1>\n"
+                            + "{{! a comment }}\n"
+                            + "<ul>\n"
+                            + "{{#items}}\n"
+                            + "  <li>{{name}}: {{price}}{{#sale}} (sale)"
+                            + "{{/sale}}</li>\n"
+                            + "{{/items}}\n"
+                            + "{{^items}}\n"
+                            + "  <li>none</li>\n"
+                            + "{{/items}}\n"
+                            + "</ul>\n"
+                            + "{{{raw}}} {{&raw}} {{raw}}\n"
+                            + "{{user.name}} {{#user}}{{name}} in {{title}}"
+                            + "{{/user}}\n"
+                            + "{{> footer}}\n")
+            .put("footer.mustache",
+                    "<footer>{{year}}{{#missing}}x{{/missing}}</footer>\n")
+            .put("standalone.mustache",
+                    "  {{#flag}}\n" + "  yes\n" + "  {{/flag}}\n"
+                            + "  {{^flag}}\n" + "  no\n" + "  {{/flag}}\n"
+                            + "end {{! trailing }}\n")
+            .put("comments.mustache",
+                    "{{! first }}\n" + "a\n" + "  {{! indented }}  \n"
+                            + "b {{! inline }}\n" + "{{! last }}")
+            .put("indented.mustache",
+                    "a\n" + "  {{> footer}}\n" + "{{> footer}}" + "b\n")
+            .put("lambda.mustache", "{{#upper}}hi {{title}}{{/upper}}!")
+            .put("nested/list.mustache",
+                    "{{#names}}[{{.}}]{{/names}}{{^names}}empty{{/names}}")
+            .put("delimiters.mustache", "{{=<% %>=}}<% title %>").build();
+
+    /**
+     * The directory that contains the {@code templates} directory.
+     */
+    private static File root;
+
+    /**
+     * The class loader for the compiled templates.
+     */
+    private static URLClassLoader loader;
+
+    /**
+     * The context class loader of the thread before the compiled templates
+     * were loaded.
+     */
+    private static ClassLoader original;
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        if(original != null) {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+        if(loader != null) {
+            loader.close();
+        }
+        if(root != null) {
+            delete(root);
+        }
+    }
+
+    @BeforeClass
+    public static void compile() throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(javac);
+        root = Files.createTempDir();
+        File templates = new File(root, "templates");
+        for (Map.Entry<String, String> entry : TEMPLATES.entrySet()) {
+            File file = new File(templates, entry.getKey());
+            Files.createParentDirs(file);
+            Files.write(entry.getValue(), file, Charsets.UTF_8);
+        }
+        File output = new File(root, "output");
+        TemplateCompiler.main(templates.getPath(), output.getPath(),
+                "quest.templates.test");
+
+        // Compile the generated sources, as the build would
+        List<String> args = Lists.newArrayList("-d",
+                new File(output, "classes").getPath(), "-cp",
+                System.getProperty("java.class.path"));
+        collect(new File(output, "java"), args);
+        new File(output, "classes").mkdirs();
+        Assert.assertEquals(0,
+                javac.run(null, null, null, args.toArray(new String[0])));
+        loader = new URLClassLoader(new URL[] {
+                new File(output, "classes").toURI().toURL(),
+                new File(output, "resources").toURI().toURL() },
+                TemplateCompilerTest.class.getClassLoader());
+        original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(loader);
+    }
+
+    /**
+     * Add the path of every Java source file under {@code directory} to the
+     * {@code files}.
+     * 
+     * @param directory
+     * @param files
+     */
+    private static void collect(File directory, List<String> files) {
+        for (File file : directory.listFiles()) {
+            if(file.isDirectory()) {
+                collect(file, files);
+            }
+            else if(file.getName().endsWith(".java")) {
+                files.add(file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Return the context for the test templates.
+     * 
+     * @param full {@code true} to fill every list and flag
+     * @return the context
+     */
+    private static Map<String, Object> context(boolean full) {
+        Map<String, Object> context = Maps.newHashMap();
+        context.put("title", "Tom & \"Jerry\" <3 'quotes'");
+        context.put("raw", "<b>bold</b>");
+        context.put("year", 2014);
+        context.put("flag", full);
+        context.put("user", new User("Ann <admin>"));
+        context.put("upper", new Function<String, String>() {
+
+            @Override
+            public String apply(String input) {
+                return input.toUpperCase();
+            }
+
+        });
+        if(full) {
+            context.put("items", Arrays.asList(new Item("pen", 1.5, false),
+                    new Item("ink & paper", 20, true)));
+            context.put("names", new String[] { "a", "<b>" });
+        }
+        else {
+            context.put("items", Collections.emptyList());
+            context.put("names", Collections.emptyList());
+        }
+        return context;
+    }
+
+    /**
+     * Delete the {@code file} and, if it is a directory, everything in it.
+     * 
+     * @param file
+     */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Render the template at {@code path} with the compiled class and with
+     * Mustache and assert that the output is the same.
+     * 
+     * @param path
+     * @throws IOException
+     */
+    private static void assertSameOutput(String path) throws IOException {
+        for (boolean full : new boolean[] { true, false }) {
+            CompiledTemplate compiled = CompiledTemplates.get(path);
+            Assert.assertNotNull(path + " was not compiled", compiled);
+            StringWriter actual = new StringWriter();
+            compiled.render(context(full), actual);
+            StringWriter expected = new StringWriter();
+            new DefaultMustacheFactory(root).compile(path)
+                    .execute(expected, context(full)).flush();
+            Assert.assertEquals(path, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testComments() throws IOException {
+        assertSameOutput("templates/comments.mustache");
+    }
+
+    @Test
+    public void testIndentedPartial() throws IOException {
+        assertSameOutput("templates/indented.mustache");
+    }
+
+    @Test
+    public void testLambda() throws IOException {
+        assertSameOutput("templates/lambda.mustache");
+    }
+
+    @Test
+    public void testNestedDirectory() throws IOException {
+        assertSameOutput("templates/nested/list.mustache");
+    }
+
+    @Test
+    public void testPage() throws IOException {
+        assertSameOutput("templates/page.mustache");
+    }
+
+    @Test
+    public void testPartial() throws IOException {
+        assertSameOutput("templates/footer.mustache");
+    }
+
+    @Test
+    public void testStandaloneTags() throws IOException {
+        assertSameOutput("templates/standalone.mustache");
+    }
+
+    @Test
+    public void testUnsupportedTemplateIsSkipped() {
+        Assert.assertNull(CompiledTemplates
+                .get("templates/delimiters.mustache"));
+    }
+
+    /**
+     * An item in the context, with public fields.
+     * 
+     * @author jnelson
+     */
+    public static final class Item {
+
+        public final String name;
+        public final double price;
+        public final boolean sale;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param name
+         * @param price
+         * @param sale
+         */
+        Item(String name, double price, boolean sale) {
+            this.name = name;
+            this.price = price;
+            this.sale = sale;
+        }
+
+    }
+
+    /**
+     * A user in the context, with a getter.
+     * 
+     * @author jnelson
+     */
+    public static final class User {
+
+        private final String name;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param name
+         */
+        User(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Return the name.
+         * 
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.quest.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Unit tests for {@link Cbor}.
+ * 
+ * @author jnelson
+ */
+public class CborTest {
+
+    /**
+     * Return the {@code bytes} as a byte array.
+     * 
+     * @param bytes
+     * @return the array
+     */
+    private static byte[] bytes(int... bytes) {
+        byte[] array = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; ++i) {
+            array[i] = (byte) bytes[i];
+        }
+        return array;
+    }
+
+    /**
+     * Decode the {@code bytes}.
+     * 
+     * @param bytes
+     * @return the value
+     * @throws IOException
+     */
+    private static JsonElement read(int... bytes) throws IOException {
+        return Cbor.read(new ByteArrayInputStream(bytes(bytes)));
+    }
+
+    /**
+     * Encode the {@code element} and decode it again.
+     * 
+     * @param element
+     * @return the decoded value
+     * @throws IOException
+     */
+    private static JsonElement roundTrip(JsonElement element)
+            throws IOException {
+        return Cbor.read(new ByteArrayInputStream(write(element)));
+    }
+
+    /**
+     * Encode the {@code element}.
+     * 
+     * @param element
+     * @return the bytes
+     * @throws IOException
+     */
+    private static byte[] write(JsonElement element) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Cbor.write(element, out);
+        return out.toByteArray();
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testBignumMustBeByteString() throws IOException {
+        read(0xc2, 0x64, 'A', 'Q', 'I', 'D'); // 2("AQID")
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testBignumMustNotBeArray() throws IOException {
+        read(0xc3, 0x81, 0x01); // 3([1])
+    }
+
+    @Test
+    public void testBignumRoundTrip() throws IOException {
+        BigInteger big = BigInteger.ONE.shiftLeft(64);
+        byte[] encoded = write(new JsonPrimitive(big));
+        Assert.assertArrayEquals(
+                bytes(0xc2, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0), encoded);
+        Assert.assertEquals(big, roundTrip(new JsonPrimitive(big))
+                .getAsBigInteger());
+        BigInteger negative = big.negate().subtract(BigInteger.ONE);
+        Assert.assertArrayEquals(
+                bytes(0xc3, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0),
+                write(new JsonPrimitive(negative)));
+        Assert.assertEquals(negative, roundTrip(new JsonPrimitive(negative))
+                .getAsBigInteger());
+    }
+
+    @Test
+    public void testBignumWithIndefiniteLengthBytes() throws IOException {
+        // 2((_ h'01', h'0000'))
+        Assert.assertEquals(BigInteger.valueOf(0x10000),
+                read(0xc2, 0x5f, 0x41, 0x01, 0x42, 0, 0, 0xff)
+                        .getAsBigInteger());
+    }
+
+    @Test
+    public void testByteStringIsBase64() throws IOException {
+        Assert.assertEquals("AQID", read(0x43, 1, 2, 3).getAsString());
+    }
+
+    @Test
+    public void testDocumentRoundTrip() throws IOException {
+        JsonObject object = new JsonObject();
+        object.addProperty("text", "h\u00e9llo \ud83d\ude00");
+        object.addProperty("small", 23);
+        object.addProperty("byte", 255);
+        object.addProperty("negative", -500);
+        object.addProperty("long", Long.MIN_VALUE);
+        object.addProperty("float", 1.5);
+        object.addProperty("double", 0.1);
+        object.addProperty("true", true);
+        object.addProperty("false", false);
+        object.add("null", JsonNull.INSTANCE);
+        JsonArray array = new JsonArray();
+        array.add(new JsonPrimitive(1));
+        array.add(new JsonArray());
+        array.add(new JsonObject());
+        object.add("array", array);
+        Assert.assertEquals(object, roundTrip(object));
+    }
+
+    @Test
+    public void testEncodesIntegersInFewestBytes() throws IOException {
+        Assert.assertArrayEquals(bytes(0x17), write(new JsonPrimitive(23)));
+        Assert.assertArrayEquals(bytes(0x18, 0x18),
+                write(new JsonPrimitive(24)));
+        Assert.assertArrayEquals(bytes(0x19, 0x01, 0x00),
+                write(new JsonPrimitive(256)));
+        Assert.assertArrayEquals(bytes(0x20), write(new JsonPrimitive(-1)));
+        Assert.assertArrayEquals(bytes(0x39, 0x01, 0xf3),
+                write(new JsonPrimitive(-500)));
+    }
+
+    @Test
+    public void testHalfFloats() throws IOException {
+        Assert.assertEquals(0.0, read(0xf9, 0x00, 0x00).getAsDouble(), 0);
+        Assert.assertEquals(1.0, read(0xf9, 0x3c, 0x00).getAsDouble(), 0);
+        Assert.assertEquals(1.5, read(0xf9, 0x3e, 0x00).getAsDouble(), 0);
+        Assert.assertEquals(-4.0, read(0xf9, 0xc4, 0x00).getAsDouble(), 0);
+        Assert.assertEquals(65504.0, read(0xf9, 0x7b, 0xff).getAsDouble(), 0);
+        Assert.assertEquals(5.960464477539063e-8, read(0xf9, 0x00, 0x01)
+                .getAsDouble(), 0);
+        Assert.assertEquals(Double.POSITIVE_INFINITY, read(0xf9, 0x7c, 0x00)
+                .getAsDouble(), 0);
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, read(0xf9, 0xfc, 0x00)
+                .getAsDouble(), 0);
+        Assert.assertTrue(Double.isNaN(read(0xf9, 0x7e, 0x00).getAsDouble()));
+    }
+
+    @Test
+    public void testIndefiniteLengthArray() throws IOException {
+        JsonArray expected = new JsonArray();
+        expected.add(new JsonPrimitive(1));
+        JsonArray nested = new JsonArray();
+        nested.add(new JsonPrimitive(2));
+        expected.add(nested);
+        // [_ 1, [_ 2]]
+        Assert.assertEquals(expected,
+                read(0x9f, 0x01, 0x9f, 0x02, 0xff, 0xff));
+    }
+
+    @Test
+    public void testIndefiniteLengthMap() throws IOException {
+        JsonObject expected = new JsonObject();
+        expected.addProperty("a", 1);
+        expected.addProperty("bc", "d");
+        // {_ "a": 1, (_ "b", "c"): "d"}
+        Assert.assertEquals(
+                expected,
+                read(0xbf, 0x61, 'a', 0x01, 0x7f, 0x61, 'b', 0x61, 'c', 0xff,
+                        0x61, 'd', 0xff));
+    }
+
+    @Test
+    public void testIndefiniteLengthText() throws IOException {
+        // (_ "he", "llo")
+        Assert.assertEquals("hello",
+                read(0x7f, 0x62, 'h', 'e', 0x63, 'l', 'l', 'o', 0xff)
+                        .getAsString());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testMismatchedChunkIsRejected() throws IOException {
+        read(0x7f, 0x41, 'a', 0xff); // a byte chunk in a text string
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testNonTextKeyIsRejected() throws IOException {
+        read(0xa1, 0x01, 0x02); // {1: 2}
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedValueIsRejected() throws IOException {
+        read(0x82, 0x01); // [1, ...
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testUnexpectedBreakIsRejected() throws IOException {
+        read(0xff);
+    }
+
+    @Test
+    public void testUnsignedBeyondLong() throws IOException {
+        Assert.assertEquals(
+                BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE),
+                read(0x1b, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff)
+                        .getAsBigInteger());
+        Assert.assertEquals(BigInteger.ONE.shiftLeft(64).negate(),
+                read(0x3b, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff)
+                        .getAsBigInteger());
+    }
+
+}